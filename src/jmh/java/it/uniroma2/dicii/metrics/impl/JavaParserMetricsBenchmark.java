@@ -0,0 +1,151 @@
+package it.uniroma2.dicii.metrics.impl;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.CommentsCollection;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the cognitive complexity and comment density computed by {@link JavaParserMetricsExtractor} with their
+ * previous implementations, over the production sources of the analyzed project (BookKeeper by default).
+ * <p>
+ * Sources are parsed once per trial, so that each operation is a metric pass over all the methods of the project,
+ * as done by the extractor for each file. Allocation rates are reported with the {@code gc} profiler
+ * (e.g., {@code gc.alloc.rate.norm}, the bytes allocated per pass).
+ * </p>
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JavaParserMetricsBenchmark {
+
+    private static final String SOURCE_ROOT = "/src/main/java/";
+
+    // Root of the analyzed sources; if empty, the repository configured by the project.repo.path property is used
+    @Param("")
+    private String sourcesPath;
+
+    private final List<ParsedFile> files = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void parseSources() throws IOException {
+        Path root = Paths.get(sourcesPath.isEmpty() ? PropertiesManager.getInstance().getProperty("project.repo.path") : sourcesPath);
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.filter(p -> {
+                String path = p.toString().replace('\\', '/');
+                return path.endsWith(".java") && path.contains(SOURCE_ROOT) && !path.contains("/target/");
+            }).sorted().toList();
+        }
+
+        int methodsCount = 0;
+        for (Path path : paths) {
+            ParseResult<CompilationUnit> result = new JavaParser(StaticJavaParser.getParserConfiguration()).parse(path);
+            if (!result.isSuccessful() || result.getResult().isEmpty()) continue;
+            List<MethodDeclaration> methods = result.getResult().get().findAll(MethodDeclaration.class, m -> m.getBody().isPresent());
+            SortedSet<Comment> comments = result.getCommentsCollection().map(CommentsCollection::getComments).orElse(new TreeSet<>());
+            files.add(new ParsedFile(methods, comments));
+            methodsCount += methods.size();
+        }
+        if (methodsCount == 0) throw new IllegalStateException("No methods found under " + root);
+        log.info("Parsed {} methods of {} files under {}", methodsCount, files.size(), root);
+    }
+
+    @Benchmark
+    public void cognitiveComplexityLegacy(Blackhole blackhole) {
+        for (ParsedFile file : files)
+            for (MethodDeclaration method : file.methods) {
+                LegacyCognitiveComplexityVisitor visitor = new LegacyCognitiveComplexityVisitor();
+                visitor.visit(method, 0);
+                blackhole.consume(visitor.getComplexity());
+            }
+    }
+
+    @Benchmark
+    public void cognitiveComplexity(Blackhole blackhole) {
+        for (ParsedFile file : files) {
+            CognitiveComplexityVisitor visitor = new CognitiveComplexityVisitor();
+            for (MethodDeclaration method : file.methods)
+                blackhole.consume(JavaParserMetricsExtractor.calculateCognitiveComplexity(method, visitor));
+        }
+    }
+
+    @Benchmark
+    public void commentDensityLegacy(Blackhole blackhole) {
+        for (ParsedFile file : files)
+            for (MethodDeclaration method : file.methods)
+                blackhole.consume(calculateLegacyCommentDensity(method));
+    }
+
+    @Benchmark
+    public void commentDensity(Blackhole blackhole) {
+        for (ParsedFile file : files) {
+            CommentIndex comments = new CommentIndex(file.comments);
+            for (MethodDeclaration method : file.methods)
+                blackhole.consume(JavaParserMetricsExtractor.calculateCommentDensity(method, comments));
+        }
+    }
+
+    /**
+     * The comment density as it was computed before {@link CommentIndex}, collecting the comments of each method
+     */
+    private static double calculateLegacyCommentDensity(MethodDeclaration method) {
+        if (method.getBegin().isEmpty() || method.getEnd().isEmpty()) return 0.0;
+
+        int startLine = method.getBegin().get().line;
+        int endLine = method.getEnd().get().line;
+        int totalLines = endLine - startLine + 1;
+
+        if (totalLines == 0) return 0.0;
+
+        Set<Comment> comments = new HashSet<>(method.getAllContainedComments());
+        method.getComment().ifPresent(comments::add);
+
+        int commentLines = comments.stream().mapToInt(c -> {
+            if (c.getBegin().isPresent() && c.getEnd().isPresent()) {
+                return c.getEnd().get().line - c.getBegin().get().line + 1;
+            }
+            return 0;
+        }).sum();
+
+        return (double) commentLines / totalLines;
+    }
+
+    /**
+     * The methods of a parsed file, along with the comments collected by the parser
+     */
+    private static class ParsedFile {
+
+        private final List<MethodDeclaration> methods;
+        private final SortedSet<Comment> comments;
+
+        private ParsedFile(List<MethodDeclaration> methods, SortedSet<Comment> comments) {
+            this.methods = methods;
+            this.comments = comments;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package it.uniroma2.dicii.metrics.impl;
+
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import lombok.Getter;
+
+/**
+ * The cognitive complexity visitor as it was before {@link CognitiveComplexityVisitor}, threading the nesting level
+ * through the visit as a boxed Integer, and created anew for each method. Kept as the baseline of the benchmarks.
+ */
+@Getter
+class LegacyCognitiveComplexityVisitor extends VoidVisitorAdapter<Integer> {
+
+    private int complexity = 0;
+
+    @Override
+    public void visit(IfStmt n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting); // Visit condition
+
+        // The 'then' block gets increased nesting
+        n.getThenStmt().accept(this, nesting + 1);
+
+        // Handle 'else'
+        if (n.getElseStmt().isPresent()) {
+            Statement elseStmt = n.getElseStmt().get();
+
+            // Optimization: "else if" is treated as a single structure (no extra nesting penalty usually)
+            // In JavaParser, "else if" is an IfStmt inside the elseStmt of the parent.
+            if (elseStmt.isIfStmt()) {
+                elseStmt.accept(this, nesting); // Keep same nesting level for "else if"
+            } else {
+                complexity += 1 + nesting; // "else" costs +1 + current nesting
+                elseStmt.accept(this, nesting + 1);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ForStmt n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(ForEachStmt n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(WhileStmt n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(DoStmt n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(CatchClause n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(SwitchEntry n, Integer nesting) {
+        // Cases usually don't increment nesting level in strictly structural views,
+        // but they DO add to complexity (+1 per case)
+        if (n.getLabels().isNonEmpty()) { // Don't count "default"
+            complexity += 1 + nesting;
+        }
+        super.visit(n, nesting + 1);
+    }
+
+    @Override
+    public void visit(BinaryExpr n, Integer nesting) {
+        // Sonar Rule: A sequence of binary operators adds to complexity.
+        // A && B && C => +1
+        // A && B || C => +2 (change of operator)
+
+        boolean isBooleanOp = n.getOperator() == BinaryExpr.Operator.AND || n.getOperator() == BinaryExpr.Operator.OR;
+
+        if (isBooleanOp) {
+            // Check if this is part of an existing sequence in the PARENT
+            boolean isSameAsParent = false;
+            if (n.getParentNode().isPresent() && n.getParentNode().get() instanceof BinaryExpr parent) {
+                if (parent.getOperator() == n.getOperator()) {
+                    isSameAsParent = true;
+                }
+            }
+
+            if (!isSameAsParent) {
+                complexity++;
+            }
+        }
+        super.visit(n, nesting);
+    }
+
+    @Override
+    public void visit(ConditionalExpr n, Integer nesting) {
+        complexity += 1 + nesting;
+        super.visit(n, nesting + 1);
+    }
+}
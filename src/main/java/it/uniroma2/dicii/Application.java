@@ -1,8 +1,14 @@
 package it.uniroma2.dicii;
 
 import it.uniroma2.dicii.analysis.SonarAnalysisExecutor;
+import it.uniroma2.dicii.analysis.SonarAnalysisScheduler;
+import it.uniroma2.dicii.analysis.SonarResultRetriever;
+import it.uniroma2.dicii.analysis.local.LocalSmellAnalyzer;
 import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.build.BuildScheduler;
+import it.uniroma2.dicii.export.DatasetAppender;
 import it.uniroma2.dicii.export.DatasetManager;
+import it.uniroma2.dicii.issueManagement.exceptions.TicketsException;
 import it.uniroma2.dicii.issueManagement.exceptions.VersionsException;
 import it.uniroma2.dicii.issueManagement.model.ResolutionType;
 import it.uniroma2.dicii.issueManagement.model.TicketFilter;
@@ -14,12 +20,17 @@ import it.uniroma2.dicii.issueManagement.ticket.JiraTicketsManager;
 import it.uniroma2.dicii.issueManagement.ticket.TicketsManager;
 import it.uniroma2.dicii.issueManagement.version.JiraVersionsManager;
 import it.uniroma2.dicii.issueManagement.version.VersionsManager;
+import it.uniroma2.dicii.maven.MavenModuleDiscoverer;
+import it.uniroma2.dicii.maven.model.MavenModule;
 import it.uniroma2.dicii.metrics.CompositeMetricsExtractor;
-import it.uniroma2.dicii.metrics.impl.CKMetricsExtractor;
-import it.uniroma2.dicii.metrics.impl.JavaParserMetricsExtractor;
-import it.uniroma2.dicii.metrics.impl.SonarMetricsExtractor;
-import it.uniroma2.dicii.metrics.impl.VCSMetricsExtractor;
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.MetricsExtractorScheduler;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.MetricTable;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.SourceIndex;
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import it.uniroma2.dicii.process.ProcessStatistics;
+import it.uniroma2.dicii.properties.PropertiesManager;
 import it.uniroma2.dicii.vcsManagement.commit.GitCheckoutManager;
 import it.uniroma2.dicii.vcsManagement.commit.GitCommitManager;
 import it.uniroma2.dicii.vcsManagement.exception.CommitException;
@@ -29,11 +40,29 @@ import it.uniroma2.dicii.vcsManagement.tags.GitTagsManager;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class Application {
 
+    // One thread for each extractor (CK, VCS, JavaParser, Sonar)
+    private static final int DEFAULT_EXTRACTORS_THREADS = 4;
+    private static final String STREAMING_MERGE_MODE = "streaming";
+    private static final String LOCAL_SONAR_MODE = "local";
+    // Releases whose Sonar analysis is submitted before the current one is extracted (1 waits for each analysis in turn)
+    private static final int DEFAULT_SONAR_LOOKAHEAD = 1;
+    private static final long DEFAULT_SONAR_TIMEOUT_MINUTES = 30;
+    // Max chars of source contents kept in memory, i.e., about 128 MB for ASCII sources
+    private static final long DEFAULT_SOURCES_CACHE_CHARS = 128L * 1024 * 1024;
+
     private final String projectName;
     private final String repoPath;
     private final String outputPath;
@@ -50,6 +79,11 @@ public class Application {
         log.info("Project name: {}", projectName);
         log.info("Repository path: {}", repoPath);
 
+        ExecutorService extractorsExecutor = null;
+        MetricsExtractorScheduler extractorScheduler = null;
+        SonarAnalysisScheduler sonarScheduler = null;
+        BuildScheduler buildScheduler = null;
+        SonarAnalysisExecutor analysisManager = null;
         try {
             // Gets versions managed on Jira
             VersionsManager versionsManager = new JiraVersionsManager();
@@ -80,55 +114,196 @@ public class Application {
 
             // This object executes `git checkout` at a specific commit
             GitCheckoutManager checkoutManager = new GitCheckoutManager();
-            SonarAnalysisExecutor analysisManager = new SonarAnalysisExecutor(this.repoPath);
+            analysisManager = new SonarAnalysisExecutor(this.repoPath);
             CompositeMetricsExtractor compositeExtractor;
+            // Extractors are discovered as services, and live across all releases
+            SourceStore sourceStore = new SourceStore(getSourcesCacheChars());
+            // In local mode, Sonar rules are checked in-process instead of building and analyzing each release on SonarCloud
+            boolean localSonar = LOCAL_SONAR_MODE.equalsIgnoreCase(PropertiesManager.getInstance().getProperty("sonar.mode"));
+            LocalSmellAnalyzer localAnalyzer = localSonar ? new LocalSmellAnalyzer(this.projectName, sourceStore) : null;
+            // Otherwise, the analyses of the next releases are submitted in advance, so that SonarCloud processes them
+            // while the current release is extracted
+            int sonarLookahead = getSonarLookahead();
+            // Releases may be built concurrently, each in its own worktree, within the CPU and memory budget of the builds
+            int buildSlots = localSonar ? 1 : BuildScheduler.getConfiguredSlots();
+            // Several analyses may be pending at a time only if each release is analyzed on its own branch
+            boolean sonarBranches = !localSonar && Boolean.parseBoolean(PropertiesManager.getInstance().getProperty("sonar.analysis.branches"));
+            if (sonarBranches) {
+                requireSonarBranchSupport();
+            } else if (!localSonar && (sonarLookahead > 1 || buildSlots > 1)) {
+                log.warn("Analyzing several releases at a time requires sonar.analysis.branches=true, analyzing one release at a time");
+                sonarLookahead = 1;
+                buildSlots = 1;
+            }
+            if (buildSlots > 1) {
+                buildScheduler = new BuildScheduler(buildSlots);
+                // Enough releases are submitted in advance to keep all the slots busy
+                sonarLookahead = Math.max(sonarLookahead, buildSlots);
+            }
+            if (!localSonar)
+                sonarScheduler = new SonarAnalysisScheduler(analysisManager, System.getenv("SONAR_PROJECT_KEY"), sonarBranches, getSonarAnalysisTimeout(),
+                        Boolean.parseBoolean(PropertiesManager.getInstance().getProperty("sonar.analysis.incremental")), buildScheduler);
+            List<CompletableFuture<List<SonarAnalysisResult>>> sonarAnalyses = new ArrayList<>();
+            extractorScheduler = MetricsExtractorScheduler.load(new ExtractionRun(this.projectName, Paths.get(this.repoPath), sourceStore));
+            ReleaseSnapshot previousSnapshot = null;
             DatasetManager datasetManager = new DatasetManager(this.outputPath);
             datasetManager.initDataset();
+            // Extractors of the same release run concurrently, unless a single thread is configured
+            extractorsExecutor = buildExtractorsExecutor();
+            // In streaming mode, rows are written as soon as they are complete instead of building the release's table
+            boolean streamingMerge = STREAMING_MERGE_MODE.equalsIgnoreCase(PropertiesManager.getInstance().getProperty("metrics.merge.mode"));
             for (int i = 0; i < tags.size(); i++) {
-                // 1. Checkout to the desired version
-                checkoutManager.checkOutProjectAtCommit(tags.get(i).getAssociatedCommitId());
-
-                // 2. Run Sonar Analysis on SonarCloud
-                List<SonarAnalysisResult> sonarResults = analysisManager.executeAnalysisAtCommit(tags.get(i).getAssociatedCommitId());
+                // 1. Submit the Sonar analyses of the releases within the lookahead, each one at its own checkout
+                // or worktree; submissions block while all the build slots are busy
+                while (sonarScheduler != null && sonarAnalyses.size() < Math.min(tags.size(), i + sonarLookahead)) {
+                    Tag tag = tags.get(sonarAnalyses.size());
+                    if (buildScheduler == null) checkoutManager.checkOutProjectAtCommit(tag.getAssociatedCommitId());
+                    sonarAnalyses.add(sonarScheduler.submit(tag.getAssociatedCommitId(), tag.getTagName()));
+                }
 
-                // 3. Prepare the Composite Extractor
-                compositeExtractor = new CompositeMetricsExtractor();
+                // Checkout to the desired version
+                checkoutManager.checkOutProjectAtCommit(tags.get(i).getAssociatedCommitId());
 
-                // 4. Add the Workers
-                // A. Static Metrics (CK)
-                compositeExtractor.addExtractor(new CKMetricsExtractor(true, Integer.MAX_VALUE, true));
+                // 2. Index the release
+                // Modules are discovered at every release, since they may change between versions
+                List<MavenModule> modules = new MavenModuleDiscoverer(this.repoPath).discoverModules();
+                // The source files are indexed once and shared by all extractors
+                SourceIndex sourceIndex = SourceIndex.build(Paths.get(this.repoPath), modules);
 
-                // B. Process Metrics (VCS)
-                // Requires previous commit for Churn. For the very first commit, previous is null.
-                String previousCommit = (i > 0) ? tags.get(i - 1).getAssociatedCommitId() : null;
-                compositeExtractor.addExtractor(new VCSMetricsExtractor(previousCommit));
+                // 3. Get the Sonar issues, waiting for the analysis on SonarCloud or analyzing locally, and take a snapshot of the release
+                List<SonarAnalysisResult> sonarResults = localSonar
+                        ? localAnalyzer.analyze(sourceIndex.getFiles())
+                        : sonarAnalyses.get(i).join();
+                // Issues are only kept by the snapshots
+                if (!localSonar) sonarAnalyses.set(i, null);
+                ReleaseSnapshot snapshot = new ReleaseSnapshot(tags.get(i).getTagName(), tags.get(i).getAssociatedCommitId(), modules, sourceIndex, sonarResults);
 
-                compositeExtractor.addExtractor(new JavaParserMetricsExtractor());
+                // 4. Prepare the Composite Extractor; each extractor runs separately on every module,
+                // and extractors whose inputs are missing (e.g., Sonar results) are skipped
+                compositeExtractor = extractorScheduler.onRelease(snapshot, previousSnapshot, extractorsExecutor, this::getExtractorTimeout);
 
-                // C. Quality Metrics (Sonar)
-                // Passes the list we just fetched so it can be mapped to methods
-                if (sonarResults != null && !sonarResults.isEmpty()) {
-                    compositeExtractor.addExtractor(new SonarMetricsExtractor(sonarResults));
+                // 5. Add version results to the dataset
+                if (streamingMerge) {
+                    try (DatasetAppender appender = datasetManager.openAppender(tags.get(i).getTagName())) {
+                        compositeExtractor.streamMetrics(sourceIndex.getFiles(), appender::append);
+                    }
                 } else {
-                    log.error("No results were retrieved from SonarCloud. Cannot execute Sonar metrics extraction.");
+                    // Methods are identified by dense ids, interned once per release and shared by all extractors
+                    MetricTable metricTable = new MetricTable();
+                    compositeExtractor.extractMetrics(sourceIndex.getFiles(), metricTable);
+                    datasetManager.appendToDataset(tags.get(i).getTagName(), metricTable);
                 }
-
-                // 5. Add version results to the dataset
-                List<MeasuredMethod> measuredMethods = compositeExtractor.extractMetrics();
-                datasetManager.appendToDataset(tags.get(i).getTagName(), measuredMethods);
+                previousSnapshot = snapshot;
+                sourceStore.logStatistics();
+                ProcessStatistics.getInstance().logStatistics();
                 log.info("Round completed for version {}", tags.get(i).getTagName());
             }
         } catch (VersionsException e) {
             log.error("Error retrieving versions: {}", e.getMessage(), e);
+        } catch (TicketsException e) {
+            log.error("Error retrieving tickets: {}", e.getMessage(), e);
         } catch (CommitException | IOException e) {
             log.error("Error retrieving commits: {}", e.getMessage(), e);
         } catch (TagRetrievalException e) {
             log.error("Error retrieving tags: {}", e.getMessage(), e);
         } finally {
+            if (extractorsExecutor != null) extractorsExecutor.shutdownNow();
+            if (extractorScheduler != null) extractorScheduler.close();
+            if (sonarScheduler != null) sonarScheduler.close();
+            if (buildScheduler != null) buildScheduler.close();
+            // Build containers kept alive for the run are removed
+            if (analysisManager != null) analysisManager.close();
             log.info("Process terminated");
         }
     }
 
+    /**
+     * Builds the executor running the metrics extractors of a release concurrently.
+     * The number of threads is read from the {@code metrics.extractors.threads} property, one per extractor by default.
+     *
+     * @return the executor, or null if extractors must run sequentially
+     */
+    private ExecutorService buildExtractorsExecutor() {
+        String threadsProperty = PropertiesManager.getInstance().getProperty("metrics.extractors.threads");
+        int threads = threadsProperty != null ? Integer.parseInt(threadsProperty.trim()) : DEFAULT_EXTRACTORS_THREADS;
+        if (threads <= 1) return null;
+        AtomicInteger threadsCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "metrics-extractor-" + threadsCount.incrementAndGet());
+            // Threads of timed out extractors must not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the max number of chars of source contents kept in memory from the {@code metrics.sources.cache.chars} property
+     *
+     * @return the max number of cached chars
+     */
+    private long getSourcesCacheChars() {
+        String maxChars = PropertiesManager.getInstance().getProperty("metrics.sources.cache.chars");
+        return maxChars != null ? Long.parseLong(maxChars.trim()) : DEFAULT_SOURCES_CACHE_CHARS;
+    }
+
+    /**
+     * Reads the number of releases whose Sonar analysis is submitted in advance from the {@code sonar.analysis.lookahead} property
+     *
+     * @return the number of releases analyzed in advance, including the current one
+     */
+    private int getSonarLookahead() {
+        String lookahead = PropertiesManager.getInstance().getProperty("sonar.analysis.lookahead");
+        return lookahead != null ? Math.max(1, Integer.parseInt(lookahead.trim())) : DEFAULT_SONAR_LOOKAHEAD;
+    }
+
+    /**
+     * Checks that the Sonar server supports the analysis of branches, so that a run analyzing each release on its own
+     * branch fails at once instead of at every release
+     *
+     * @throws IllegalStateException if the server doesn't support branches
+     */
+    private void requireSonarBranchSupport() {
+        Boolean supported;
+        try {
+            supported = new SonarResultRetriever().retrieveBranchSupport();
+        } catch (IOException e) {
+            log.warn("Unable to check whether the Sonar server supports branches: {}", e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (Boolean.FALSE.equals(supported))
+            throw new IllegalStateException("sonar.analysis.branches requires a Sonar server supporting branch analysis "
+                    + "(e.g., SonarCloud or SonarQube Developer Edition), which the configured server doesn't: "
+                    + "disable it, with sonar.analysis.lookahead and build.concurrency set to 1");
+        if (supported == null) log.warn("Unable to tell whether the Sonar server supports branches, analyzing each release on its own branch");
+    }
+
+    /**
+     * Reads the max time a submitted Sonar analysis may take from the {@code sonar.analysis.timeout.minutes} property
+     *
+     * @return the timeout of each analysis
+     */
+    private Duration getSonarAnalysisTimeout() {
+        String timeout = PropertiesManager.getInstance().getProperty("sonar.analysis.timeout.minutes");
+        return Duration.ofMinutes(timeout != null ? Long.parseLong(timeout.trim()) : DEFAULT_SONAR_TIMEOUT_MINUTES);
+    }
+
+    /**
+     * Reads the timeout of an extractor from the {@code metrics.extractors.<name>.timeout.minutes} property,
+     * falling back to {@code metrics.extractors.timeout.minutes}
+     *
+     * @param extractorName the name of the extractor
+     * @return the timeout, or null if the extractor is unbounded
+     */
+    private Duration getExtractorTimeout(String extractorName) {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String timeout = properties.getProperty("metrics.extractors." + extractorName.toLowerCase(Locale.ROOT) + ".timeout.minutes");
+        if (timeout == null) timeout = properties.getProperty("metrics.extractors.timeout.minutes");
+        return timeout != null ? Duration.ofMinutes(Long.parseLong(timeout.trim())) : null;
+    }
+
     private TicketFilter buildTicketFilter() {
         TicketFilter filter = new TicketFilter();
         filter.setStatuses(List.of(TicketStatus.CLOSED, TicketStatus.RESOLVED));
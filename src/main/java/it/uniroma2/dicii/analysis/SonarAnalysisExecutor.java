@@ -1,24 +1,51 @@
 package it.uniroma2.dicii.analysis;
 
 import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.build.BuildArtifactCache;
+import it.uniroma2.dicii.build.DockerBuildRunner;
+import it.uniroma2.dicii.build.MavenRepositoryCache;
 import it.uniroma2.dicii.jdk.JdkManager;
-import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.maven.PomJavaVersionResolver;
+import it.uniroma2.dicii.process.ProcessResult;
+import it.uniroma2.dicii.process.ProcessRunner;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
-public class SonarAnalysisExecutor {
+public class SonarAnalysisExecutor implements Closeable {
+
+    private static final String SONAR_PLUGIN_VERSION = "3.10.0.2594";
+    // Module that doesn't build, excluded from the builds and the analyses
+    private static final String EXCLUDED_MODULE = "org.apache.bookkeeper.stats:twitter-science-provider";
 
     private final String repoPath;
+    // Created on first use, since identifying the rules takes requests to the server
+    private SonarResultCache resultCache;
+    private final MavenRepositoryCache repositoryCache;
+    private final DockerBuildRunner buildRunner;
+    private final BuildArtifactCache artifactCache;
+    private final PomJavaVersionResolver javaVersionResolver;
 
     public SonarAnalysisExecutor(String repoPath) {
+        this(repoPath, new MavenRepositoryCache());
+    }
+
+    /**
+     * @param repoPath        the path of the working tree to build and analyze
+     * @param repositoryCache the Maven repository of the builds
+     */
+    public SonarAnalysisExecutor(String repoPath, MavenRepositoryCache repositoryCache) {
         this.repoPath = repoPath;
+        this.repositoryCache = repositoryCache;
+        this.buildRunner = new DockerBuildRunner(repoPath, repositoryCache);
+        this.artifactCache = new BuildArtifactCache(repoPath);
+        this.javaVersionResolver = new PomJavaVersionResolver(repoPath);
     }
 
     /**
@@ -32,6 +59,62 @@ public class SonarAnalysisExecutor {
         log.info("--------------------------------------------------");
         log.info("Processing commit {}", commitId);
 
+        // Commits already analyzed with the same scanner configuration are neither built nor analyzed again
+        SonarResultCache resultCache = getResultCache();
+        List<SonarAnalysisResult> cachedResults = resultCache.get(commitId, SonarResultCache.AnalysisMode.FULL);
+        if (cachedResults != null) {
+            log.info("Using {} cached Sonar issues for commit {}", cachedResults.size(), commitId);
+            return cachedResults;
+        }
+
+        String ceTaskId = submitAnalysis(commitId, null);
+        if (ceTaskId == null) {
+            log.error("Could not retrieve analysis Task ID. Skipping issue retrieval.");
+            return null;
+        }
+
+        SonarResultRetriever retriever = new SonarResultRetriever();
+        boolean success = retriever.waitForAnalysisToComplete(ceTaskId);
+
+        if (success) {
+            String projectKey = System.getenv("SONAR_PROJECT_KEY");
+
+            log.info("Retrieving analysis results...");
+            List<SonarAnalysisResult> analysisResults = retriever.retrieveResults(projectKey);
+            if (analysisResults == null) {
+                log.error("Could not retrieve the analysis results.");
+                return null;
+            }
+            log.info("Successfully retrieved {} code smells.", analysisResults.size());
+            resultCache.put(commitId, SonarResultCache.AnalysisMode.FULL, analysisResults);
+            return analysisResults;
+        } else {
+            log.error("Analysis did not complete successfully.");
+        }
+        return null;
+    }
+
+    /**
+     * Builds the checked-out commit and submits its analysis, without waiting for the server to process it
+     *
+     * @param commitId   the ID of the checked-out commit
+     * @param branchName the Sonar branch the analysis is submitted to, or null for the main branch
+     * @return the ID of the Compute Engine task processing the analysis, or null if the submission failed
+     */
+    public String submitAnalysis(String commitId, String branchName) {
+        return submitAnalysis(commitId, branchName, null);
+    }
+
+    /**
+     * Builds the checked-out commit and submits the analysis of some of its files, without waiting for the server
+     * to process it
+     *
+     * @param commitId   the ID of the checked-out commit
+     * @param branchName the Sonar branch the analysis is submitted to, or null for the main branch
+     * @param inclusions the paths of the files to analyze, or null to analyze the whole project
+     * @return the ID of the Compute Engine task processing the analysis, or null if the submission failed
+     */
+    public String submitAnalysis(String commitId, String branchName, List<String> inclusions) {
         // 1. Detect Required Java Version
         String javaVersion = detectJavaVersion();
         log.info("Detected required Java version: {}", javaVersion);
@@ -44,53 +127,77 @@ public class SonarAnalysisExecutor {
             log.info("Using JDK at: {}", jdkPath);
         }
 
-        // 4. Run Analysis with a specific JDK
+        // 3. Run Analysis with a specific JDK, building within the image of the required Java version
         try {
-            // 1. Executes `mvn clean verify` to build the project with a specific Java version
-            executeMavenInstall(jdkPath);
-            // 2. Executes SonarQube analysis via the Maven plugin
-            runSonarAnalysis(commitId);
+            // Executes `mvn clean install` to build the project with a specific Java version
+            executeMavenInstall(commitId, DockerBuildRunner.getImageForVersion(javaVersion));
+            // Executes SonarQube analysis via the Maven plugin
+            runSonarAnalysis(commitId, branchName, inclusions);
             log.info("Analysis submitted for commit {}", commitId);
 
-            // 5. [NEW] Get the Task ID
-            String ceTaskId = extractCeTaskId();
-            if (ceTaskId == null) {
-                log.error("Could not retrieve analysis Task ID. Skipping issue retrieval.");
-                return null;
-            }
-
-            SonarResultRetriever retriever = new SonarResultRetriever();
-            boolean success = retriever.waitForAnalysisToComplete(ceTaskId);
-
-            if (success) {
-                String projectKey = System.getenv("SONAR_PROJECT_KEY");
-
-                log.info("Retrieving analysis results...");
-                List<SonarAnalysisResult> analysisResults = retriever.retrieveResults(projectKey);
-                log.info("Successfully retrieved {} code smells.", analysisResults.size());
-                return analysisResults;
-            } else {
-                log.error("Analysis did not complete successfully.");
-            }
-        } catch (IOException | InterruptedException e) {
+            // 4. Get the Task ID
+            return extractCeTaskId();
+        } catch (IOException e) {
             log.error("Failed to analyze commit {}: {}", commitId, e.getMessage());
+        } catch (InterruptedException e) {
+            log.error("Interrupted while analyzing commit {}", commitId);
             Thread.currentThread().interrupt(); // Restore interrupted status
         }
         return null;
     }
 
     /**
-     * Uses Maven to evaluate the 'maven.compiler.source' property.
-     * This handles inheritance from parent POMs correctly.
+     * @return the cache of the issues retrieved from Sonar, shared with the analyses scheduled asynchronously
+     */
+    synchronized SonarResultCache getResultCache() {
+        if (resultCache == null) resultCache = new SonarResultCache(SONAR_PLUGIN_VERSION, retrieveRules());
+        return resultCache;
+    }
+
+    /**
+     * Identifies the rules the project is analyzed with on the server: its version, and the quality profiles of the
+     * project along with the last update of their rules
+     *
+     * @return the description of the rules, or null if they can't be identified
+     */
+    private String retrieveRules() {
+        SonarResultRetriever retriever = new SonarResultRetriever();
+        try {
+            String serverVersion = retriever.retrieveServerVersion();
+            List<String> profiles = retriever.retrieveQualityProfiles(System.getenv("SONAR_PROJECT_KEY"));
+            log.info("Sonar server version {}, quality profiles {}", serverVersion, profiles);
+            return "server " + serverVersion + "; profiles " + String.join(",", profiles);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to identify the Sonar rules of the project, Sonar results are not cached: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * @return the Maven repository of the builds, from which the repositories of concurrent builds are seeded
+     */
+    MavenRepositoryCache getRepositoryCache() {
+        return repositoryCache;
+    }
+
+    /**
+     * Resolves the Java version from the POMs of the checked-out release, falling back to Maven
+     * to evaluate the 'targetJdk' property if it can't be resolved in-process.
      */
     private String detectJavaVersion() {
+        String resolvedVersion = javaVersionResolver.resolveJavaVersion();
+        if (resolvedVersion != null) {
+            log.info("Resolved Java version {} from pom.xml", resolvedVersion);
+            return resolvedVersion;
+        }
+
         try {
             // 1. Try to read the property
-            ProcessBuilder pb = new ProcessBuilder("mvn", "help:evaluate", "-Dexpression=targetJdk", "-q", "-DforceStdout");
-            log.debug("Executing command: {}", pb.command());
-            pb.directory(new File(repoPath));
-            Process process = pb.start();
-            return extractVersionFromProcessOutput(process);
+            ProcessResult result = new ProcessRunner("Maven", List.of("mvn", "help:evaluate", "-Dexpression=targetJdk", "-q", "-DforceStdout"),
+                    new File(repoPath)).run();
+            return extractVersionFromProcessOutput(result.getOutputTail());
         } catch (Exception e) {
             log.error("Error detecting Java version: {}. Falling back to 1.8 (default)", e.getMessage());
             return "1.8"; // Safe fallback for BookKeeper
@@ -99,25 +206,20 @@ public class SonarAnalysisExecutor {
 
     /**
      * Extracts a version string from the output of a given process. The method reads
-     * the output stream of the process, filters out unwanted lines (e.g., blank lines,
+     * the last output lines of the process, filters out unwanted lines (e.g., blank lines,
      * lines containing specific errors, or lines starting with a bracket), and retrieves
      * the cleaned version string. If no valid version string is found, it returns the
      * default version "1.8".
      *
-     * @param process the process whose output stream will be read to extract the version string
+     * @param output the last output lines of the process, from which the version string is extracted
      * @return the extracted version string, or "1.8" as a default value if no valid string is found
-     * @throws IOException if an I/O error occurs while reading the process output stream
      */
-    private String extractVersionFromProcessOutput(Process process) throws IOException {
+    private String extractVersionFromProcessOutput(List<String> output) {
         String version = "";
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                log.info("Maven Output: {}", line);
-                // Filter out Maven noise and the specific error message
-                if (!line.isBlank() && !line.contains("null object or invalid expression") && !line.startsWith("["))
-                    version = line.trim();
-            }
+        for (String line : output) {
+            // Filter out Maven noise and the specific error message
+            if (!line.isBlank() && !line.contains("null object or invalid expression") && !line.startsWith("["))
+                version = line.trim();
         }
 
         if (version.isEmpty()) {
@@ -145,11 +247,13 @@ public class SonarAnalysisExecutor {
      * </ul>
      * </p>
      *
-     * @param commitId the ID of the commit being analyzed (used for reporting revision to SonarCloud)
+     * @param commitId   the ID of the commit being analyzed (used for reporting revision to SonarCloud)
+     * @param branchName the Sonar branch the analysis is submitted to, or null for the main branch
+     * @param inclusions the paths of the files to analyze, or null to analyze the whole project
      * @throws IOException          if an error occurs during the process execution or if Sonar analysis returns a non-zero exit code.
      * @throws InterruptedException if the current thread is interrupted while waiting for the process to complete.
      */
-    private void runSonarAnalysis(String commitId) throws IOException, InterruptedException {
+    private void runSonarAnalysis(String commitId, String branchName, List<String> inclusions) throws IOException, InterruptedException {
         String sonarToken = System.getenv("SONAR_TOKEN");
         String projectKey = System.getenv("SONAR_PROJECT_KEY");
         String sonarHost = System.getenv("SONAR_HOST_URL");
@@ -159,125 +263,105 @@ public class SonarAnalysisExecutor {
 
         List<String> command = new ArrayList<>();
         command.add("mvn");
-        command.add("org.sonarsource.scanner.maven:sonar-maven-plugin:3.10.0.2594:sonar");
+        command.add("org.sonarsource.scanner.maven:sonar-maven-plugin:" + SONAR_PLUGIN_VERSION + ":sonar");
         command.add("-Dsonar.projectKey=" + projectKey);
         command.add("-Dsonar.host.url=" + sonarHost);
         command.add("-Dsonar.token=" + sonarToken);
         // Explicitly tell SonarCloud which commit revision this is
         command.add("-Dsonar.scm.revision=" + commitId);
+        // The modules of the release are resolved from the repository they were installed into
+        command.addAll(repositoryCache.getHostMavenArguments());
 
         if (sonarOrg != null) {
             command.add("-Dsonar.organization=" + sonarOrg);
         }
 
+        // Analyses of different releases pending at the same time must not overwrite each other's issues
+        if (branchName != null) {
+            command.add("-Dsonar.branch.name=" + branchName);
+        }
+
+        // Incremental analyses only scan the files changed since the previous release
+        if (inclusions != null) {
+            String paths = String.join(",", inclusions);
+            command.add("-Dsonar.inclusions=" + paths);
+            command.add("-Dsonar.test.inclusions=" + paths);
+        }
+
         // This tells Sonar: "Don't even look at this broken module."
         command.add("-pl");
-        command.add("!org.apache.bookkeeper.stats:twitter-science-provider");
-
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.directory(new File(repoPath));
-        pb.redirectErrorStream(true);
+        command.add("!" + EXCLUDED_MODULE);
 
         log.info("Executing Sonar Analysis with System Default JDK");
 
-        Process process = pb.start();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) log.info("[Sonar] {}", line);
-        }
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("Sonar analysis exited with error code: " + exitCode);
-        }
-    }
-
-    /**
-     * Constructs a {@link ProcessBuilder} with the specified commands and optionally configures the environment
-     * to use a specific JDK installation based on the provided JDK home directory.
-     *
-     * @param commands the list of commands to execute, where the first element represents the command and later
-     *                 elements represent arguments to the command
-     * @param jdkHome  the file system path to the JDK installation directory to be used by the process; if null, the
-     *                 system default JDK is used
-     * @return a {@link ProcessBuilder} configured with the specified commands and JDK environment settings
-     */
-    private ProcessBuilder buildProcessFromCommandsWithJdk(List<String> commands, String jdkHome) {
-        ProcessBuilder pb = new ProcessBuilder(commands);
-        pb.directory(new File(repoPath));
-        pb.redirectErrorStream(true);
-
-        if (jdkHome != null) {
-            pb.environment().put("JAVA_HOME", jdkHome);
-            String path = jdkHome + "/bin" + File.pathSeparator + System.getenv("PATH");
-            pb.environment().put("PATH", path);
+        ProcessResult result = new ProcessRunner("Sonar", command, new File(repoPath)).run();
+        if (!result.isSuccessful()) {
+            throw new IOException("Sonar analysis exited with error code: " + result.getExitCode());
         }
-        return pb;
     }
 
     /**
-     * Executes a Maven install build using the specified JDK. The 'install' command is necessary to install
+     * Executes a Maven install build within the given image. The 'install' command is necessary to install
      * project dependencies in the local .m2 directory and let the Sonar scanner find them.
+     * <p>
+     * Builds share a persistent Maven repository; once it is warm, builds run offline first, and are retried online
+     * only if some dependency is missing. The classes of the modules whose sources didn't change since a previous
+     * build are restored from the build cache, and only the other modules are built, along with the modules they
+     * depend on. Since the scanner runs in its own Maven session, resolving the modules of the release from the
+     * repository, the restored modules are then installed too, along with their parents, without compiling them.
+     * </p>
      *
-     * @param jdkHome the file system path to the JDK installation directory to be used;
-     *                if null, the system default JDK is used
+     * @param commitId the ID of the checked-out commit
+     * @param image    the Docker image building the project
      * @throws IOException          if an I/O error occurs during execution
      * @throws InterruptedException if the process is interrupted during execution
      */
-    private void executeMavenInstall(String jdkHome) throws IOException, InterruptedException {
-        List<String> dockerCmd = new ArrayList<>();
-        dockerCmd.add("docker");
-        dockerCmd.add("run");
-        dockerCmd.add("--rm");
-
-        // Run as the current Host User
-        dockerCmd.add("-u");
-        dockerCmd.add(getLinuxUserId());
-
-        // Map Project Directory
-        dockerCmd.add("-v");
-        dockerCmd.add(repoPath + ":/usr/src/mymaven");
-
-        // Map .m2 to a neutral location (/tmp/home)
-        String localM2Path = PropertiesManager.getInstance().getProperty("m2.directory");
-        String containerHome = "/tmp/maven-home"; // A fake home dir inside container
-
-        // [CHANGED] Map settings.xml directly to the fake home
-        // We point Maven to this file explicitly later using -s
-        boolean hasSettings = new java.io.File(localM2Path + "/settings.xml").exists();
-        if (hasSettings) {
-            dockerCmd.add("-v");
-            dockerCmd.add(localM2Path + "/settings.xml:" + containerHome + "/settings.xml");
+    private void executeMavenInstall(String commitId, String image) throws IOException, InterruptedException {
+        BuildArtifactCache.BuildPlan plan = artifactCache.restore(commitId, List.of(EXCLUDED_MODULE));
+        if (!plan.getChangedModules().isEmpty()) {
+            // Skip tests to save time, and build everything EXCEPT the twitter-science-provider
+            List<String> goals = new ArrayList<>(List.of("clean", "install", "-DskipTests", "-pl"));
+            if (plan.getRestoredModules().isEmpty()) {
+                goals.add("!" + EXCLUDED_MODULE);
+            } else {
+                goals.add(String.join(",", plan.getChangedSelectors()) + ",!" + EXCLUDED_MODULE);
+                // Modules the changed ones depend on are built too, so that they compile against the current sources
+                goals.add("-am");
+            }
+            log.info("Executing maven install with image {}", image);
+            runMavenBuild(image, goals);
+            artifactCache.store(plan);
+        } else {
+            log.info("All modules are unchanged, skipping their compilation");
         }
 
-        // Set Working Directory inside Container
-        dockerCmd.add("-w");
-        dockerCmd.add("/usr/src/mymaven");
-
-        // Image and Maven Goal
-        dockerCmd.add("maven:3.6-jdk-8");
-        dockerCmd.add("mvn");
-        dockerCmd.add("clean");
-        dockerCmd.add("install");
-        dockerCmd.add("-DskipTests"); // Skip tests to save time, optional
-
-        // This tells Maven: "Build everything EXCEPT the twitter-science-provider"
-        dockerCmd.add("-pl");
-        dockerCmd.add("!org.apache.bookkeeper.stats:twitter-science-provider");
-
-        ProcessBuilder pb = buildProcessFromCommandsWithJdk(dockerCmd, jdkHome);
-        log.info("Executing maven install with JAVA_HOME={}", jdkHome != null ? jdkHome : "System Default");
-
-        Process process = pb.start();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) log.info("[Maven] {}", line);
+        if (!plan.getRestoredModules().isEmpty()) {
+            // Restored classes are packaged as they are; test classes are still compiled, since modules may depend on
+            // the test jars of others
+            List<String> goals = List.of("install", "-DskipTests", "-Dmaven.main.skip=true",
+                    "-pl", String.join(",", plan.getRestoredSelectors()) + ",!" + EXCLUDED_MODULE, "-am");
+            log.info("Installing {} restored module(s) with image {}", plan.getRestoredModules().size(), image);
+            runMavenBuild(image, goals);
         }
+    }
 
-        int exitCode = process.waitFor();
+    /**
+     * Runs a Maven build, offline first if the repository is warm
+     *
+     * @throws IOException if the build fails
+     */
+    private void runMavenBuild(String image, List<String> goals) throws IOException, InterruptedException {
+        boolean offline = repositoryCache.isWarm();
+        if (offline) log.info("Maven repository is warm, building offline");
+        int exitCode = buildRunner.runMaven(image, offline, goals);
+        if (exitCode != 0 && offline) {
+            log.warn("Offline Maven build exited with error code {}, retrying online to resolve missing dependencies", exitCode);
+            exitCode = buildRunner.runMaven(image, false, goals);
+        }
         if (exitCode != 0) {
             throw new IOException("Maven build exited with error code: " + exitCode);
         }
+        repositoryCache.markWarm();
     }
 
     /**
@@ -306,17 +390,10 @@ public class SonarAnalysisExecutor {
     }
 
     /**
-     * Gets the current user's UID and GID for Docker (e.g., "1000:1000").
-     * This ensures files created by Docker are owned by YOU, not root.
+     * Removes the build containers started for the run
      */
-    private String getLinuxUserId() {
-        try {
-            String uid = new BufferedReader(new InputStreamReader(Runtime.getRuntime().exec("id -u").getInputStream())).readLine();
-            String gid = new BufferedReader(new InputStreamReader(Runtime.getRuntime().exec("id -g").getInputStream())).readLine();
-            return uid + ":" + gid;
-        } catch (IOException e) {
-            log.warn("Could not determine UID/GID, defaulting to current user.");
-            return "1000:1000"; // Safe default for most Linux users
-        }
+    @Override
+    public void close() {
+        buildRunner.close();
     }
-}
\ No newline at end of file
+}
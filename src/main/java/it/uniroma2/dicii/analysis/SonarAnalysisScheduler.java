@@ -0,0 +1,404 @@
+package it.uniroma2.dicii.analysis;
+
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.build.BuildScheduler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Submits the Sonar analyses of several releases back to back, without waiting for the server to process each one.
+ * <p>
+ * Each submission returns a future completed with the issues of the release once its Compute Engine task ends, or
+ * with null if the analysis fails or times out. Pending tasks are polled together through the Compute Engine activity,
+ * with an exponential backoff reset whenever a task is submitted or ends, so that the server-side processing overlaps
+ * with the local work on the following releases.
+ * </p><p>
+ * If branches are enabled, each release is analyzed on its own branch, named after the release, so that several
+ * releases may be pending at a time: issues are searched on the last analysis of a branch, which a later release
+ * would otherwise overwrite. Otherwise, the caller must wait for each analysis before submitting the next one.
+ * </p><p>
+ * In incremental mode, each release after the first one is analyzed only on the files changed since the previous
+ * submitted release, and its issues are merged with the ones of the unchanged files of the previous release, so that
+ * the time spent by the scanner and the server scales with the size of the change. Releases changing too many files,
+ * or whose previous analysis failed, are analyzed in full: if the previous analysis fails once the release is already
+ * submitted, the release is submitted again in full, which needs the worktrees of a {@link BuildScheduler}; otherwise,
+ * releases are only analyzed incrementally once the issues of the previous one are known.
+ * </p><p>
+ * Issues are cached only once known for the whole release, and never after a failed analysis; issues merged from an
+ * incremental analysis are cached apart from the ones of full analyses, and only reused in incremental mode.
+ * </p><p>
+ * If a {@link BuildScheduler} is given, releases are built and scanned in its worktrees, several at a time, each slot
+ * with its own executor; submitting blocks while all slots are busy. Otherwise, releases are built and scanned one at
+ * a time in the main working tree, at the caller's checkout.
+ * </p>
+ */
+@Slf4j
+public class SonarAnalysisScheduler implements Closeable {
+
+    private static final Duration INITIAL_POLL_DELAY = Duration.ofSeconds(2);
+    private static final Duration MAX_POLL_DELAY = Duration.ofMinutes(1);
+    // Max length of the list of changed files passed to the scanner, within the max length of a command argument
+    private static final int MAX_INCLUSIONS_CHARS = 100_000;
+
+    private final SonarAnalysisExecutor analysisExecutor;
+    private final SonarResultRetriever retriever;
+    private final String projectKey;
+    private final boolean branchPerRelease;
+    private final Duration analysisTimeout;
+    private final boolean incremental;
+    // Runs builds concurrently in worktrees, or null if builds run in the main working tree
+    private final BuildScheduler buildScheduler;
+    // Executors building and scanning in the worktrees, by slot
+    private final SonarAnalysisExecutor[] slotExecutors;
+    // Submits again in full the releases whose previous analysis failed, since submitting may block on the build slots
+    private final ExecutorService fallbackExecutor;
+
+    // Analyses waiting for their task to end, by task id
+    private final Map<String, PendingAnalysis> pendingAnalyses = new LinkedHashMap<>();
+    private final ScheduledExecutorService poller;
+    private Duration pollDelay = INITIAL_POLL_DELAY;
+    private boolean pollScheduled;
+
+    // Last submitted release, which the next one is compared to in incremental mode
+    private String previousCommitId;
+    private CompletableFuture<List<SonarAnalysisResult>> previousResults;
+
+    /**
+     * @param analysisExecutor the executor building and submitting the analyses
+     * @param projectKey       the Sonar project key
+     * @param branchPerRelease whether each release is analyzed on its own branch, needed if several may be pending;
+     *                         requires a server supporting branches
+     * @param analysisTimeout  the max time an analysis may wait for its task to end, once submitted
+     * @param incremental      whether releases are analyzed only on the files changed since the previous one
+     * @param buildScheduler   the scheduler running builds concurrently in worktrees, or null to build in the main working tree
+     */
+    public SonarAnalysisScheduler(SonarAnalysisExecutor analysisExecutor, String projectKey, boolean branchPerRelease, Duration analysisTimeout,
+                                  boolean incremental, BuildScheduler buildScheduler) {
+        this.analysisExecutor = analysisExecutor;
+        this.retriever = new SonarResultRetriever();
+        this.projectKey = projectKey;
+        this.branchPerRelease = branchPerRelease;
+        this.analysisTimeout = analysisTimeout;
+        this.incremental = incremental;
+        this.buildScheduler = buildScheduler;
+        this.slotExecutors = new SonarAnalysisExecutor[buildScheduler != null ? buildScheduler.getSlots() : 0];
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sonar-analysis-poller");
+            // A pending poll must not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fallbackExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "sonar-analysis-fallback");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits the analysis of a release, building it first; without a build scheduler, the release must be checked
+     * out, and the working tree may change as soon as this method returns.
+     *
+     * @param commitId    the id of the commit of the release
+     * @param releaseName the name of the release, naming its branch if each release has its own
+     * @return the future issues of the release, completed with null if the analysis fails
+     */
+    public CompletableFuture<List<SonarAnalysisResult>> submit(String commitId, String releaseName) {
+        CompletableFuture<List<SonarAnalysisResult>> results = submitAnalysis(commitId, releaseName);
+        previousCommitId = commitId;
+        previousResults = results;
+        return results;
+    }
+
+    private CompletableFuture<List<SonarAnalysisResult>> submitAnalysis(String commitId, String releaseName) {
+        log.info("--------------------------------------------------");
+        log.info("Submitting analysis of release {} (commit {})", releaseName, commitId);
+
+        // Commits already analyzed with the same scanner configuration are neither built nor analyzed again
+        List<SonarAnalysisResult> cachedResults = getCachedResults(commitId);
+        if (cachedResults != null) {
+            log.info("Using {} cached Sonar issues for commit {}", cachedResults.size(), commitId);
+            return CompletableFuture.completedFuture(cachedResults);
+        }
+
+        SonarChangeSet changeSet = incremental ? getChangeSet(commitId) : null;
+        if (changeSet == null) return submitFullAnalysis(commitId, releaseName);
+
+        CompletableFuture<List<SonarAnalysisResult>> previous = previousResults;
+        if (changeSet.getInclusions().isEmpty()) {
+            log.info("No files changed since the previous release, carrying forward its issues");
+            return completeIncrementalAnalysis(commitId, releaseName, previous, previousIssues -> previousIssues);
+        }
+
+        log.info("Analyzing {} files changed since the previous release", changeSet.getInclusions().size());
+        return submitToBuild(commitId, releaseName, changeSet.getInclusions()).thenCompose(newIssues -> {
+            if (newIssues == null) return CompletableFuture.completedFuture(null);
+            // The analysis of the previous release may still be pending, if several are submitted in advance
+            return completeIncrementalAnalysis(commitId, releaseName, previous, previousIssues -> {
+                List<SonarAnalysisResult> merged = changeSet.merge(previousIssues, newIssues);
+                log.info("Merged the issues of release {} with the ones of unchanged files: {} code smells", releaseName, merged.size());
+                return merged;
+            });
+        });
+    }
+
+    /**
+     * @return the cached issues of a commit, from a full analysis or, in incremental mode, from an incremental one
+     */
+    private List<SonarAnalysisResult> getCachedResults(String commitId) {
+        SonarResultCache resultCache = analysisExecutor.getResultCache();
+        List<SonarAnalysisResult> cachedResults = resultCache.get(commitId, SonarResultCache.AnalysisMode.FULL);
+        if (cachedResults == null && incremental) cachedResults = resultCache.get(commitId, SonarResultCache.AnalysisMode.INCREMENTAL);
+        return cachedResults;
+    }
+
+    /**
+     * Submits the analysis of the whole project at a release, caching its issues once retrieved
+     */
+    private CompletableFuture<List<SonarAnalysisResult>> submitFullAnalysis(String commitId, String releaseName) {
+        return submitToBuild(commitId, releaseName, null).thenApply(issues -> {
+            if (issues != null) analysisExecutor.getResultCache().put(commitId, SonarResultCache.AnalysisMode.FULL, issues);
+            return issues;
+        });
+    }
+
+    /**
+     * Completes the issues of a release analyzed incrementally once the issues of the previous release are known,
+     * submitting the release again in full if the previous analysis failed
+     *
+     * @param previous the future issues of the previous release
+     * @param merger   the function merging the issues of the previous release with the ones of the changed files
+     * @return the future issues of the release
+     */
+    private CompletableFuture<List<SonarAnalysisResult>> completeIncrementalAnalysis(String commitId, String releaseName,
+                                                                                    CompletableFuture<List<SonarAnalysisResult>> previous,
+                                                                                    Function<List<SonarAnalysisResult>, List<SonarAnalysisResult>> merger) {
+        return previous.thenCompose(previousIssues -> {
+            if (previousIssues == null) {
+                log.warn("Analysis of the release before {} failed, its issues can't be carried forward: analyzing it in full", releaseName);
+                return resubmitFullAnalysis(commitId, releaseName);
+            }
+            List<SonarAnalysisResult> issues = merger.apply(previousIssues);
+            analysisExecutor.getResultCache().put(commitId, SonarResultCache.AnalysisMode.INCREMENTAL, issues);
+            return CompletableFuture.completedFuture(issues);
+        });
+    }
+
+    /**
+     * Submits again the analysis of the whole project at a release, out of the thread completing the previous analysis
+     */
+    private CompletableFuture<List<SonarAnalysisResult>> resubmitFullAnalysis(String commitId, String releaseName) {
+        CompletableFuture<List<SonarAnalysisResult>> results = new CompletableFuture<>();
+        try {
+            fallbackExecutor.execute(() -> submitFullAnalysis(commitId, releaseName).whenComplete((issues, e) -> results.complete(issues)));
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime
+            results.complete(null);
+        }
+        return results;
+    }
+
+    /**
+     * Builds a release and submits its analysis, in the main working tree or in a worktree
+     *
+     * @param inclusions the paths of the files to analyze, or null to analyze the whole project
+     * @return the future issues found by the analysis, completed with null if it fails
+     */
+    private CompletableFuture<List<SonarAnalysisResult>> submitToBuild(String commitId, String releaseName, List<String> inclusions) {
+        String branchName = branchPerRelease ? releaseName : null;
+        if (buildScheduler == null) {
+            String ceTaskId = analysisExecutor.submitAnalysis(commitId, branchName, inclusions);
+            return track(ceTaskId, new PendingAnalysis(branchName, releaseName));
+        }
+
+        CompletableFuture<String> ceTaskId;
+        try {
+            ceTaskId = buildScheduler.submit(commitId, slot -> getSlotExecutor(slot).submitAnalysis(commitId, branchName, inclusions));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(null);
+        } catch (RejectedExecutionException e) {
+            log.error("Failed to build release {}: the build scheduler is closed", releaseName);
+            return CompletableFuture.completedFuture(null);
+        }
+        return ceTaskId
+                .exceptionally(e -> {
+                    log.error("Failed to build release {}: {}", releaseName, e.getMessage());
+                    return null;
+                })
+                .thenCompose(id -> track(id, new PendingAnalysis(branchName, releaseName)));
+    }
+
+    /**
+     * Waits for the task of a submitted analysis to end
+     *
+     * @param ceTaskId the id of the task, or null if the submission failed
+     * @param analysis the submitted analysis
+     * @return the future issues of the release
+     */
+    private CompletableFuture<List<SonarAnalysisResult>> track(String ceTaskId, PendingAnalysis analysis) {
+        if (ceTaskId == null) {
+            log.error("Could not retrieve analysis Task ID of release {}. Skipping issue retrieval.", analysis.releaseName);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        analysis.deadline = System.nanoTime() + analysisTimeout.toNanos();
+        synchronized (this) {
+            pendingAnalyses.put(ceTaskId, analysis);
+            // A new task may end soon, even if the previous ones were slow
+            pollDelay = INITIAL_POLL_DELAY;
+            schedulePoll();
+        }
+        return analysis.results;
+    }
+
+    /**
+     * Fails all the pending analyses and stops polling
+     */
+    @Override
+    public void close() {
+        poller.shutdownNow();
+        fallbackExecutor.shutdownNow();
+        synchronized (this) {
+            for (PendingAnalysis analysis : pendingAnalyses.values()) analysis.results.complete(null);
+            pendingAnalyses.clear();
+            for (SonarAnalysisExecutor executor : slotExecutors) if (executor != null) executor.close();
+        }
+    }
+
+    /**
+     * @return the executor building and scanning in the worktree of a slot, with the Maven repository of the slot
+     */
+    private SonarAnalysisExecutor getSlotExecutor(BuildScheduler.BuildSlot slot) {
+        synchronized (this) {
+            if (slotExecutors[slot.getIndex()] != null) return slotExecutors[slot.getIndex()];
+        }
+        // A slot runs one build at a time, so its executor is created once; seeding its repository may take a while,
+        // and must not block the polls
+        SonarAnalysisExecutor executor = new SonarAnalysisExecutor(slot.getWorktree().toString(),
+                analysisExecutor.getRepositoryCache().forSlot(slot.getIndex()));
+        synchronized (this) {
+            slotExecutors[slot.getIndex()] = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * Computes the files changed since the previous submitted release
+     *
+     * @return the changed files, or null if the release must be analyzed in full
+     */
+    private SonarChangeSet getChangeSet(String commitId) {
+        // Issues can't be carried forward from a failed analysis
+        if (previousResults == null || (previousResults.isDone() && previousResults.join() == null)) return null;
+        // The main working tree moves on to the next releases, so a release couldn't be analyzed again in full there
+        if (buildScheduler == null && !previousResults.isDone()) {
+            log.info("The previous release is still being analyzed, analyzing the whole project");
+            return null;
+        }
+        try {
+            SonarChangeSet changeSet = SonarChangeSet.between(previousCommitId, commitId);
+            if (String.join(",", changeSet.getInclusions()).length() <= MAX_INCLUSIONS_CHARS) return changeSet;
+            log.info("Too many files changed since the previous release, analyzing the whole project");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to compute the files changed since the previous release, analyzing the whole project: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private synchronized void schedulePoll() {
+        if (pollScheduled || pendingAnalyses.isEmpty() || poller.isShutdown()) return;
+        pollScheduled = true;
+        poller.schedule(this::poll, pollDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks all the pending tasks with a single request, and completes the analyses whose task ended
+     */
+    private void poll() {
+        synchronized (this) {
+            pollScheduled = false;
+        }
+
+        Map<String, String> statuses;
+        try {
+            statuses = retriever.retrieveTaskStatuses(projectKey);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to check the status of the pending analyses (will retry): {}", e.getMessage());
+            statuses = Map.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Tasks that ended are removed first, so that results are retrieved without holding the lock
+        List<PendingAnalysis> succeeded = new ArrayList<>();
+        boolean anyEnded = false;
+        synchronized (this) {
+            Iterator<Map.Entry<String, PendingAnalysis>> iterator = pendingAnalyses.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, PendingAnalysis> entry = iterator.next();
+                PendingAnalysis analysis = entry.getValue();
+                String status = statuses.get(entry.getKey());
+                if ("SUCCESS".equals(status)) {
+                    succeeded.add(analysis);
+                } else if ("FAILED".equals(status) || "CANCELED".equals(status)) {
+                    log.error("Analysis of release {} failed or was canceled (task {})", analysis.releaseName, entry.getKey());
+                    analysis.results.complete(null);
+                } else if (System.nanoTime() > analysis.deadline) {
+                    log.error("Analysis of release {} timed out after {} minutes (task {})", analysis.releaseName, analysisTimeout.toMinutes(), entry.getKey());
+                    analysis.results.complete(null);
+                } else {
+                    continue;
+                }
+                iterator.remove();
+                anyEnded = true;
+            }
+        }
+
+        for (PendingAnalysis analysis : succeeded) {
+            log.info("Retrieving analysis results of release {}...", analysis.releaseName);
+            List<SonarAnalysisResult> analysisResults = retriever.retrieveResults(projectKey, analysis.branchName);
+            if (analysisResults == null) log.error("Could not retrieve the analysis results of release {}.", analysis.releaseName);
+            else log.info("Successfully retrieved {} code smells for release {}.", analysisResults.size(), analysis.releaseName);
+            analysis.results.complete(analysisResults);
+        }
+
+        synchronized (this) {
+            if (anyEnded) pollDelay = INITIAL_POLL_DELAY;
+            else pollDelay = pollDelay.multipliedBy(2).compareTo(MAX_POLL_DELAY) > 0 ? MAX_POLL_DELAY : pollDelay.multipliedBy(2);
+            if (!pendingAnalyses.isEmpty())
+                log.info("{} analyses pending, next check in {} seconds", pendingAnalyses.size(), pollDelay.toSeconds());
+            schedulePoll();
+        }
+    }
+
+    private static class PendingAnalysis {
+        private final String branchName;
+        private final String releaseName;
+        // Deadline in System.nanoTime() terms, set once submitted
+        private long deadline;
+        // Issues found by the analysis, completed with null if it fails
+        private final CompletableFuture<List<SonarAnalysisResult>> results = new CompletableFuture<>();
+
+        private PendingAnalysis(String branchName, String releaseName) {
+            this.branchName = branchName;
+            this.releaseName = releaseName;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package it.uniroma2.dicii.analysis;
+
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.vcsManagement.tree.GitTreeManager;
+import lombok.Getter;
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files changed between two releases, scoping the incremental Sonar analysis of the newer one.
+ * <p>
+ * Only the files added or modified since the previous release are analyzed; the issues of the other files are
+ * carried forward from the previous release, since their content, and hence their lines, is identical.
+ * </p>
+ */
+@Getter
+public class SonarChangeSet {
+
+    // Paths of the files to analyze, added or modified in the newer release
+    private final List<String> inclusions;
+    // Paths whose issues in the previous release are not carried forward, as modified, renamed or deleted
+    private final Set<String> changedPaths;
+
+    private SonarChangeSet(List<String> inclusions, Set<String> changedPaths) {
+        this.inclusions = inclusions;
+        this.changedPaths = changedPaths;
+    }
+
+    /**
+     * Computes the files changed between two commits
+     *
+     * @param previousCommitId the id of the commit of the previous release
+     * @param commitId         the id of the commit of the analyzed release
+     * @return the changed files
+     * @throws IOException if the commits can't be compared
+     */
+    public static SonarChangeSet between(String previousCommitId, String commitId) throws IOException {
+        List<String> inclusions = new ArrayList<>();
+        Set<String> changedPaths = new HashSet<>();
+        try (GitTreeManager treeManager = new GitTreeManager()) {
+            for (DiffEntry entry : treeManager.getChanges(previousCommitId, commitId)) {
+                if (entry.getChangeType() != DiffEntry.ChangeType.ADD) changedPaths.add(entry.getOldPath());
+                if (entry.getChangeType() != DiffEntry.ChangeType.DELETE) {
+                    changedPaths.add(entry.getNewPath());
+                    inclusions.add(entry.getNewPath());
+                }
+            }
+        }
+        return new SonarChangeSet(inclusions, changedPaths);
+    }
+
+    /**
+     * Merges the issues of the analyzed files with the ones of the unchanged files in the previous release
+     *
+     * @param previousIssues the issues of the previous release
+     * @param newIssues      the issues found by the incremental analysis
+     * @return the issues of the whole release
+     */
+    public List<SonarAnalysisResult> merge(List<SonarAnalysisResult> previousIssues, List<SonarAnalysisResult> newIssues) {
+        List<SonarAnalysisResult> issues = new ArrayList<>(previousIssues.size() + newIssues.size());
+        for (SonarAnalysisResult issue : previousIssues)
+            if (!changedPaths.contains(getPath(issue))) issues.add(issue);
+        // Issues of files out of the scope are dropped, in case the server still reports them
+        for (SonarAnalysisResult issue : newIssues)
+            if (changedPaths.contains(getPath(issue))) issues.add(issue);
+        return issues;
+    }
+
+    /**
+     * @return the path of the file of an issue, whose component is "projectKey:path"
+     */
+    private static String getPath(SonarAnalysisResult issue) {
+        String component = issue.getComponent();
+        return component != null ? component.substring(component.lastIndexOf(':') + 1) : "";
+    }
+}
@@ -0,0 +1,148 @@
+package it.uniroma2.dicii.analysis;
+
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Issues of a release indexed by file, so that the issues within a range of lines are found by binary search.
+ * Only code smells and bugs are indexed; each file's issues are kept as a line-sorted primitive array, together with
+ * the kind of each issue (i.e., the severity of code smells, or {@link #BUG}).
+ */
+@Slf4j
+public class SonarIssueIndex {
+
+    // Kinds of the indexed issues, i.e., the severity of code smells, or bug
+    public static final int BLOCKER = 0;
+    public static final int CRITICAL = 1;
+    public static final int MAJOR = 2;
+    public static final int MINOR = 3;
+    public static final int INFO = 4;
+    public static final int BUG = 5;
+    public static final int KINDS = 6;
+
+    // Issues by path of the file, relative to the repository root
+    private final Map<String, FileIssues> issuesByPath;
+
+    private SonarIssueIndex(Map<String, FileIssues> issuesByPath) {
+        this.issuesByPath = issuesByPath;
+    }
+
+    /**
+     * Indexes the issues by the path of their component.
+     * Sonar components look like "projectKey:module/src/main/java/com/example/MyClass.java", so the path is what
+     * follows the last ':'.
+     *
+     * @param issues the issues of a release
+     * @return the index of the issues
+     */
+    public static SonarIssueIndex build(List<SonarAnalysisResult> issues) {
+        // Lines and kinds of each file, packed as line << 3 | kind so that sorting them sorts by line
+        Map<String, long[]> packedByPath = new HashMap<>();
+        Map<String, Integer> countByPath = new HashMap<>();
+        for (SonarAnalysisResult issue : issues) {
+            String path = normalizePath(issue.getComponent());
+            long[] packed = packedByPath.computeIfAbsent(path, p -> new long[8]);
+            // Files having only issues of other types are still indexed, with no issues
+            int kind = getKind(issue);
+            if (kind < 0) {
+                countByPath.putIfAbsent(path, 0);
+                continue;
+            }
+            int count = countByPath.merge(path, 1, Integer::sum);
+            if (count > packed.length) packedByPath.put(path, packed = Arrays.copyOf(packed, packed.length * 2));
+            packed[count - 1] = ((long) issue.getLine() << 3) | kind;
+        }
+
+        Map<String, FileIssues> issuesByPath = new HashMap<>(packedByPath.size() * 2);
+        packedByPath.forEach((path, packed) -> {
+            int count = countByPath.get(path);
+            Arrays.sort(packed, 0, count);
+            int[] lines = new int[count];
+            byte[] kinds = new byte[count];
+            for (int i = 0; i < count; i++) {
+                lines[i] = (int) (packed[i] >> 3);
+                kinds[i] = (byte) (packed[i] & 0x7);
+            }
+            issuesByPath.put(path, new FileIssues(lines, kinds));
+        });
+        return new SonarIssueIndex(issuesByPath);
+    }
+
+    /**
+     * @param relativePath the path of a file, relative to the repository root
+     * @return whether the file has any issue, including the ones not indexed
+     */
+    public boolean hasIssues(String relativePath) {
+        return issuesByPath.containsKey(relativePath);
+    }
+
+    /**
+     * Counts the issues of a file within a range of lines, by kind
+     *
+     * @param relativePath the path of the file, relative to the repository root
+     * @param startLine    the first line of the range
+     * @param endLine      the last line of the range, inclusive
+     * @param counts       the array receiving the number of issues of each kind, indexed by kind; it is reset first
+     */
+    public void countIssues(String relativePath, int startLine, int endLine, int[] counts) {
+        Arrays.fill(counts, 0);
+        FileIssues fileIssues = issuesByPath.get(relativePath);
+        if (fileIssues == null) return;
+        int end = lowerBound(fileIssues.lines, endLine + 1);
+        for (int i = lowerBound(fileIssues.lines, startLine); i < end; i++) counts[fileIssues.kinds[i]]++;
+    }
+
+    /**
+     * @return the index of the first line greater than or equal to the given one
+     */
+    private static int lowerBound(int[] lines, int line) {
+        int low = 0;
+        int high = lines.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lines[mid] < line) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static String normalizePath(String component) {
+        return component.substring(component.lastIndexOf(':') + 1).replace('\\', '/');
+    }
+
+    /**
+     * @return the kind of the issue, or -1 if it is neither a code smell nor a bug
+     */
+    private static int getKind(SonarAnalysisResult issue) {
+        if ("BUG".equals(issue.getType())) return BUG;
+        if (!"CODE_SMELL".equals(issue.getType())) return -1;
+        // Severities: BLOCKER, CRITICAL, MAJOR, MINOR, INFO
+        return switch (issue.getSeverity().toUpperCase(Locale.ROOT)) {
+            case "BLOCKER" -> BLOCKER;
+            case "CRITICAL" -> CRITICAL;
+            case "MAJOR" -> MAJOR;
+            case "MINOR" -> MINOR;
+            case "INFO" -> INFO;
+            default -> {
+                log.warn("Unknown Sonar smell severity: {}. Skipping.", issue.getSeverity());
+                yield -1;
+            }
+        };
+    }
+
+    private static class FileIssues {
+        private final int[] lines;
+        private final byte[] kinds;
+
+        private FileIssues(int[] lines, byte[] kinds) {
+            this.lines = lines;
+            this.kinds = kinds;
+        }
+    }
+}
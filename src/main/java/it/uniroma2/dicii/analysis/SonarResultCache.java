@@ -0,0 +1,190 @@
+package it.uniroma2.dicii.analysis;
+
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.cache.CacheManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists the issues retrieved from Sonar across runs, so that a release already analyzed with the same
+ * scanner configuration is neither built nor analyzed again.
+ * <p>
+ * Issues are keyed by commit id, analysis mode, scanner plugin version and rules, i.e., the server version and the
+ * quality profiles of the project along with the last update of their rules, and stored in a
+ * gzip-compressed binary file per commit and mode, where the strings shared by many issues (e.g., rules, components,
+ * messages) are written once. Issues merged from an incremental analysis are kept apart from the ones of a full
+ * analysis, so that they are only reused by runs analyzing releases incrementally.
+ * </p>
+ */
+@Slf4j
+public class SonarResultCache {
+
+    private static final int MAGIC = 0x534f4e52;
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path cacheDirectory;
+    private final String pluginVersion;
+    private final String rules;
+    // Hash of the scanner configuration, part of the file names
+    private final String configurationHash;
+
+    /**
+     * @param pluginVersion the version of the Sonar scanner plugin
+     * @param rules         the description of the rules the project is analyzed with, or null if they can't be
+     *                      identified, in which case nothing is cached
+     */
+    public SonarResultCache(String pluginVersion, String rules) {
+        this.cacheDirectory = rules != null ? CacheManager.getCacheDirectory("sonar") : null;
+        this.pluginVersion = pluginVersion;
+        this.rules = rules;
+        this.configurationHash = hash(pluginVersion + "\n" + rules);
+    }
+
+    /**
+     * How the cached issues of a release were obtained
+     */
+    public enum AnalysisMode {
+        // Issues of an analysis of the whole project
+        FULL,
+        // Issues of an analysis of the files changed since the previous release, merged with the previous ones
+        INCREMENTAL
+    }
+
+    /**
+     * Retrieves the issues of a commit analyzed with the same scanner configuration
+     *
+     * @param commitId the id of the analyzed commit
+     * @param mode     how the issues were obtained
+     * @return the cached issues, or null if the commit is not cached
+     */
+    public List<SonarAnalysisResult> get(String commitId, AnalysisMode mode) {
+        Path file = getCacheFile(commitId, mode);
+        if (file == null || !Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            // Guards against hash collisions
+            if (!readString(in).equals(commitId) || !readString(in).equals(mode.name())
+                    || !readString(in).equals(pluginVersion) || !readString(in).equals(rules))
+                return null;
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) strings[i] = readString(in);
+
+            int count = in.readInt();
+            List<SonarAnalysisResult> issues = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                String rule = strings[in.readInt()];
+                String severity = strings[in.readInt()];
+                String component = strings[in.readInt()];
+                int line = in.readInt();
+                String message = strings[in.readInt()];
+                String type = strings[in.readInt()];
+                issues.add(new SonarAnalysisResult(key, rule, severity, component, line, message, type));
+            }
+            return issues;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read cached Sonar results {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the issues of a commit, replacing any previous ones obtained the same way
+     *
+     * @param commitId the id of the analyzed commit
+     * @param mode     how the issues were obtained
+     * @param issues   the issues retrieved from Sonar
+     */
+    public void put(String commitId, AnalysisMode mode, List<SonarAnalysisResult> issues) {
+        Path file = getCacheFile(commitId, mode);
+        if (file == null) return;
+
+        // Strings shared by many issues are written once, and referenced by index
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (SonarAnalysisResult issue : issues) {
+            for (String s : new String[]{issue.getRule(), issue.getSeverity(), issue.getComponent(), issue.getMessage(), issue.getType()})
+                stringIds.computeIfAbsent(s, k -> {
+                    strings.add(k);
+                    return strings.size() - 1;
+                });
+        }
+
+        // Written to a temporary file first, so that an interrupted run can't leave a truncated entry
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, commitId);
+                writeString(out, mode.name());
+                writeString(out, pluginVersion);
+                writeString(out, rules);
+
+                out.writeInt(strings.size());
+                for (String s : strings) writeString(out, s);
+
+                out.writeInt(issues.size());
+                for (SonarAnalysisResult issue : issues) {
+                    writeString(out, issue.getKey());
+                    out.writeInt(stringIds.get(issue.getRule()));
+                    out.writeInt(stringIds.get(issue.getSeverity()));
+                    out.writeInt(stringIds.get(issue.getComponent()));
+                    out.writeInt(issue.getLine());
+                    out.writeInt(stringIds.get(issue.getMessage()));
+                    out.writeInt(stringIds.get(issue.getType()));
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Cached {} Sonar issues of commit {} ({} analysis)", issues.size(), commitId, mode.name().toLowerCase());
+        } catch (IOException e) {
+            log.warn("Unable to cache Sonar results of commit {}: {}", commitId, e.getMessage());
+        }
+    }
+
+    private Path getCacheFile(String commitId, AnalysisMode mode) {
+        if (cacheDirectory == null) return null;
+        return cacheDirectory.resolve(commitId + "-" + mode.name().toLowerCase() + "-" + configurationHash + ".bin.gz");
+    }
+
+    // Strings are written as length-prefixed UTF-8, since messages may exceed the limit of writeUTF
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String hash(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
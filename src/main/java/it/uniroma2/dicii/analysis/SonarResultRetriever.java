@@ -1,70 +1,161 @@
 package it.uniroma2.dicii.analysis;
 
 import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.http.HttpClientManager;
+import it.uniroma2.dicii.properties.PropertiesManager;
 import lombok.extern.slf4j.Slf4j;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Retrieves the results of the analyses from SonarCloud.
+ * Requests go through the shared HTTP client, so that connections are reused and throttled requests are retried,
+ * and responses are parsed while being read.
+ */
 @Slf4j
 public class SonarResultRetriever {
 
     private static final int PAGE_SIZE = 500;
+    // Sonar doesn't return more than 10000 issues for a single search
+    private static final int MAX_RESULTS = 10000;
+    private static final int DEFAULT_PARALLELISM = 4;
+    // Most recent tasks checked at each poll of the Compute Engine activity
+    private static final int ACTIVITY_PAGE_SIZE = 100;
 
     /**
-     * Retrieve code smells from SonarCloud for a specific project and branch/revision.
+     * Retrieve code smells from SonarCloud for a specific project, on its main branch.
      *
      * @param projectKey The SonarCloud project key
-     * @return List of code smells
+     * @return List of code smells, or null if they can't be retrieved
      */
     public List<SonarAnalysisResult> retrieveResults(String projectKey) {
+        return retrieveResults(projectKey, null);
+    }
+
+    /**
+     * Retrieve code smells from SonarCloud for a specific project and branch.
+     * The first page is fetched to know the number of issues, then the remaining pages are fetched concurrently;
+     * the number of concurrent requests is read from the {@code sonar.retriever.parallelism} property.
+     *
+     * @param projectKey The SonarCloud project key
+     * @param branchName The analyzed branch, or null for the main branch
+     * @return List of code smells, or null if they can't be retrieved, so that a failed retrieval is never taken for
+     * an analysis without issues
+     */
+    public List<SonarAnalysisResult> retrieveResults(String projectKey, String branchName) {
         List<SonarAnalysisResult> allIssues = new ArrayList<>();
         String sonarToken = System.getenv("SONAR_TOKEN");
-        String sonarHost = System.getenv("SONAR_HOST_URL");
-        if (sonarHost == null || sonarHost.isBlank()) sonarHost = "https://sonarcloud.io";
-
-        int page = 1;
-        int total;
+        String sonarHost = getSonarHost();
 
         try {
-            do {
-                // Construct URL: Filter by impactSoftwareQualities=MAINTAINABILITY (i.e., code smells only) and the specific branch
-                String urlStr = String.format("%s/api/issues/search?componentKeys=%s&ps=%d&p=%d&impactSoftwareQualities=MAINTAINABILITY,RELIABILITY&resolved=false", sonarHost, projectKey, PAGE_SIZE, page);
+            JSONObject firstPage = sendRequest(buildSearchUrl(sonarHost, projectKey, branchName, 1), sonarToken);
+            if (!firstPage.has("issues")) {
+                log.error("Error retrieving issues: unexpected response {}", firstPage);
+                return null;
+            }
+            int total = firstPage.getInt("total");
+            if (total > MAX_RESULTS)
+                log.warn("Project {} has {} issues, only the first {} can be retrieved", projectKey, total, MAX_RESULTS);
+            int pages = (int) Math.ceil((double) Math.min(total, MAX_RESULTS) / PAGE_SIZE);
 
-                JSONObject response = sendRequest(urlStr, sonarToken);
+            // Pages are collected in order, so that issues are returned in the same order as the server's
+            List<List<SonarAnalysisResult>> pageIssues = new ArrayList<>(pages);
+            pageIssues.add(parseIssues(firstPage));
+            if (pages > 1) pageIssues.addAll(fetchPages(sonarHost, projectKey, branchName, sonarToken, pages));
+            pageIssues.forEach(allIssues::addAll);
+            log.info("Fetched {} pages ({} issues)", pages, allIssues.size());
+        } catch (IOException e) {
+            log.error("Error retrieving issues: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            log.error("Interrupted while retrieving issues");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        return allIssues;
+    }
 
-                if (!response.has("issues")) break;
+    /**
+     * Fetches the pages following the first one with bounded parallelism
+     *
+     * @return the issues of each page, from the second to the last one
+     * @throws IOException if any page can't be fetched
+     */
+    private List<List<SonarAnalysisResult>> fetchPages(String sonarHost, String projectKey, String branchName, String sonarToken, int pages) throws IOException, InterruptedException {
+        int parallelism = Math.min(getParallelism(), pages - 1);
+        AtomicInteger fetchedPages = new AtomicInteger(1);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "sonar-retriever");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<SonarAnalysisResult>>> futures = new ArrayList<>(pages - 1);
+            for (int page = 2; page <= pages; page++) {
+                String urlStr = buildSearchUrl(sonarHost, projectKey, branchName, page);
+                futures.add(executor.submit(() -> {
+                    List<SonarAnalysisResult> issues = parseIssues(sendRequest(urlStr, sonarToken));
+                    log.debug("Fetched page {}/{}", fetchedPages.incrementAndGet(), pages);
+                    return issues;
+                }));
+            }
 
-                JSONArray issuesArray = response.getJSONArray("issues");
-                total = response.getInt("total");
+            List<List<SonarAnalysisResult>> results = new ArrayList<>(pages - 1);
+            for (Future<List<SonarAnalysisResult>> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                for (int i = 0; i < issuesArray.length(); i++) {
-                    JSONObject issueObj = issuesArray.getJSONObject(i);
+    /**
+     * Builds the URL of a page of issues.
+     * Filters by impactSoftwareQualities=MAINTAINABILITY,RELIABILITY (i.e., code smells and bugs); neither facets nor
+     * additional fields are requested, since only the fields of the issues themselves are mapped.
+     */
+    private static String buildSearchUrl(String sonarHost, String projectKey, String branchName, int page) {
+        String urlStr = String.format("%s/api/issues/search?componentKeys=%s&ps=%d&p=%d&impactSoftwareQualities=MAINTAINABILITY,RELIABILITY&resolved=false", sonarHost, projectKey, PAGE_SIZE, page);
+        return branchName != null ? urlStr + "&branch=" + URLEncoder.encode(branchName, StandardCharsets.UTF_8) : urlStr;
+    }
 
-                    // Handle cases where 'line' might be missing (file-level smells)
-                    int line = issueObj.has("line") ? issueObj.getInt("line") : -1;
+    private static List<SonarAnalysisResult> parseIssues(JSONObject response) {
+        JSONArray issuesArray = response.getJSONArray("issues");
+        List<SonarAnalysisResult> issues = new ArrayList<>(issuesArray.length());
+        for (int i = 0; i < issuesArray.length(); i++) {
+            JSONObject issueObj = issuesArray.getJSONObject(i);
 
-                    allIssues.add(new SonarAnalysisResult(issueObj.getString("key"), issueObj.getString("rule"), issueObj.getString("severity"), issueObj.getString("component"), line, issueObj.getString("message"), issueObj.getString("type")));
-                }
-                log.info("Fetched page {}/{} ({} issues so far)", page, (int) Math.ceil((double) total / PAGE_SIZE), allIssues.size());
-                page++;
-            } while (allIssues.size() < total);
+            // Handle cases where 'line' might be missing (file-level smells)
+            int line = issueObj.has("line") ? issueObj.getInt("line") : -1;
 
-        } catch (IOException e) {
-            log.error("Error retrieving issues: {}", e.getMessage());
+            issues.add(new SonarAnalysisResult(issueObj.getString("key"), issueObj.getString("rule"), issueObj.getString("severity"), issueObj.getString("component"), line, issueObj.getString("message"), issueObj.getString("type")));
         }
-
-        return allIssues;
+        return issues;
     }
 
     /**
@@ -74,28 +165,22 @@ public class SonarResultRetriever {
      * @param urlStr The URL to send the request to.
      * @param token  The token used for basic authentication.
      * @return The response from the server as a JSONObject.
-     * @throws IOException If an I/O error occurs while sending the request or reading the response.
+     * @throws IOException          If an I/O error occurs while sending the request or reading the response.
+     * @throws InterruptedException If interrupted while waiting for the response.
      */
-    private JSONObject sendRequest(String urlStr, String token) throws IOException {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-
+    private JSONObject sendRequest(String urlStr, String token) throws IOException, InterruptedException {
         // Basic Auth: Token is the username, password is empty
         String auth = token + ":";
         String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-        conn.setRequestProperty("Authorization", "Basic " + encodedAuth);
-
-        if (conn.getResponseCode() != 200) {
-            throw new IOException("HTTP " + conn.getResponseCode() + " for URL: " + urlStr);
-        }
-
-        StringBuilder content = new StringBuilder();
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = in.readLine()) != null) content.append(line);
+        try {
+            return HttpClientManager.getInstance().get(urlStr, Map.of("Authorization", "Basic " + encodedAuth), body -> {
+                try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+                    return new JSONObject(new JSONTokener(reader));
+                }
+            });
+        } catch (InterruptedIOException e) {
+            throw new InterruptedException(e.getMessage());
         }
-        return new JSONObject(content.toString());
     }
 
     /**
@@ -106,8 +191,7 @@ public class SonarResultRetriever {
      */
     public boolean waitForAnalysisToComplete(String ceTaskId) {
         String sonarToken = System.getenv("SONAR_TOKEN");
-        String sonarHost = System.getenv("SONAR_HOST_URL");
-        if (sonarHost == null || sonarHost.isBlank()) sonarHost = "https://sonarcloud.io";
+        String sonarHost = getSonarHost();
 
         String urlStr = String.format("%s/api/ce/task?id=%s", sonarHost, ceTaskId);
         log.info("Polling Analysis Status: {}", urlStr);
@@ -134,6 +218,9 @@ public class SonarResultRetriever {
                 }
             } catch (IOException e) {
                 log.warn("Failed to check task status (will retry): {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
 
             try {
@@ -147,4 +234,97 @@ public class SonarResultRetriever {
         log.error("Analysis timed out after 5 minutes.");
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Retrieves the status of the most recent Compute Engine tasks of a project, so that several pending analyses
+     * are checked with a single request.
+     *
+     * @param projectKey The SonarCloud project key
+     * @return the status of each task (e.g., PENDING, IN_PROGRESS, SUCCESS, FAILED, CANCELED) by task ID
+     * @throws IOException          If the activity can't be retrieved.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public Map<String, String> retrieveTaskStatuses(String projectKey) throws IOException, InterruptedException {
+        String urlStr = String.format("%s/api/ce/activity?component=%s&status=PENDING,IN_PROGRESS,SUCCESS,FAILED,CANCELED&ps=%d", getSonarHost(), projectKey, ACTIVITY_PAGE_SIZE);
+        JSONObject response = sendRequest(urlStr, System.getenv("SONAR_TOKEN"));
+
+        Map<String, String> statuses = new HashMap<>();
+        JSONArray tasks = response.optJSONArray("tasks");
+        if (tasks == null) return statuses;
+        for (int i = 0; i < tasks.length(); i++) {
+            JSONObject task = tasks.getJSONObject(i);
+            statuses.put(task.getString("id"), task.getString("status"));
+        }
+        return statuses;
+    }
+
+    /**
+     * Retrieves the quality profiles a project is analyzed with, one for each language, or the default ones if the
+     * project doesn't exist yet on the server
+     *
+     * @param projectKey The SonarCloud project key
+     * @return each profile as language:key@rulesUpdatedAt, sorted, so that a change of the profiles or of their
+     * rules is told apart
+     * @throws IOException          If the profiles can't be retrieved.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public List<String> retrieveQualityProfiles(String projectKey) throws IOException, InterruptedException {
+        String sonarOrg = System.getenv("SONAR_ORG");
+        String urlStr = getSonarHost() + "/api/qualityprofiles/search?"
+                + (sonarOrg != null ? "organization=" + URLEncoder.encode(sonarOrg, StandardCharsets.UTF_8) + "&" : "");
+        JSONObject response;
+        try {
+            response = sendRequest(urlStr + "project=" + URLEncoder.encode(projectKey, StandardCharsets.UTF_8), System.getenv("SONAR_TOKEN"));
+        } catch (IOException e) {
+            log.info("Unable to retrieve the quality profiles of project {}, using the default ones: {}", projectKey, e.getMessage());
+            response = sendRequest(urlStr + "defaults=true", System.getenv("SONAR_TOKEN"));
+        }
+
+        List<String> profiles = new ArrayList<>();
+        JSONArray profilesArray = response.getJSONArray("profiles");
+        for (int i = 0; i < profilesArray.length(); i++) {
+            JSONObject profile = profilesArray.getJSONObject(i);
+            profiles.add(profile.getString("language") + ":" + profile.getString("key") + "@" + profile.optString("rulesUpdatedAt"));
+        }
+        if (profiles.isEmpty()) throw new IOException("No quality profiles found for project " + projectKey);
+        profiles.sort(null);
+        return profiles;
+    }
+
+    /**
+     * Retrieves the version of the server, whose analyzers may find different issues with the same rules
+     *
+     * @return the version, or null if the server doesn't tell
+     * @throws IOException          If the version can't be retrieved.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public String retrieveServerVersion() throws IOException, InterruptedException {
+        return sendRequest(getSonarHost() + "/api/navigation/global", System.getenv("SONAR_TOKEN")).optString("version", null);
+    }
+
+    /**
+     * Checks whether the server supports the analysis of branches other than the main one, from the global
+     * navigation of the server (its branchesEnabled flag, or else its edition).
+     *
+     * @return whether branches are supported, or null if the server doesn't tell
+     * @throws IOException          If the navigation can't be retrieved.
+     * @throws InterruptedException If interrupted while waiting for the response.
+     */
+    public Boolean retrieveBranchSupport() throws IOException, InterruptedException {
+        JSONObject response = sendRequest(getSonarHost() + "/api/navigation/global", System.getenv("SONAR_TOKEN"));
+        if (response.has("branchesEnabled")) return response.getBoolean("branchesEnabled");
+        // Branches are only available from the Developer Edition on
+        if (response.has("edition")) return !"community".equalsIgnoreCase(response.getString("edition"));
+        return null;
+    }
+
+    private static String getSonarHost() {
+        String sonarHost = System.getenv("SONAR_HOST_URL");
+        return sonarHost == null || sonarHost.isBlank() ? "https://sonarcloud.io" : sonarHost;
+    }
+
+    private static int getParallelism() {
+        String parallelism = PropertiesManager.getInstance().getProperty("sonar.retriever.parallelism");
+        return parallelism != null ? Math.max(1, Integer.parseInt(parallelism.trim())) : DEFAULT_PARALLELISM;
+    }
+}
@@ -0,0 +1,51 @@
+package it.uniroma2.dicii.analysis.local;
+
+import com.github.javaparser.ast.Node;
+import it.uniroma2.dicii.analysis.local.rule.LocalRule;
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the issues raised by the local rules on a single file, in the same shape as the ones retrieved from Sonar
+ */
+public class LocalIssueCollector {
+
+    // Sonar component of the file (e.g., projectKey:module/src/main/java/com/example/MyClass.java)
+    private final String component;
+    @Getter
+    private final List<SonarAnalysisResult> issues = new ArrayList<>();
+
+    /**
+     * @param component the Sonar component of the analyzed file
+     */
+    public LocalIssueCollector(String component) {
+        this.component = component;
+    }
+
+    /**
+     * Raises an issue on the first line of a node
+     *
+     * @param rule    the violated rule
+     * @param node    the node violating the rule
+     * @param message the description of the issue
+     */
+    public void report(LocalRule rule, Node node, String message) {
+        report(rule, node.getBegin().map(p -> p.line).orElse(-1), message);
+    }
+
+    /**
+     * Raises an issue on a line
+     *
+     * @param rule    the violated rule
+     * @param line    the line of the issue, or -1 for file-level issues
+     * @param message the description of the issue
+     */
+    public void report(LocalRule rule, int line, String message) {
+        // Keys only need to be unique within the analysis, as Sonar issue keys
+        String key = component + ":" + rule.getKey() + ":" + line + ":" + issues.size();
+        issues.add(new SonarAnalysisResult(key, rule.getKey(), rule.getSeverity(), component, line, message, rule.getType()));
+    }
+}
@@ -0,0 +1,142 @@
+package it.uniroma2.dicii.analysis.local;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import it.uniroma2.dicii.analysis.local.rule.BooleanLiteralRule;
+import it.uniroma2.dicii.analysis.local.rule.CollapsibleIfRule;
+import it.uniroma2.dicii.analysis.local.rule.EmptyBlockRule;
+import it.uniroma2.dicii.analysis.local.rule.EmptyMethodRule;
+import it.uniroma2.dicii.analysis.local.rule.GenericExceptionRule;
+import it.uniroma2.dicii.analysis.local.rule.IdenticalOperandsRule;
+import it.uniroma2.dicii.analysis.local.rule.InterruptedExceptionRule;
+import it.uniroma2.dicii.analysis.local.rule.JumpInFinallyRule;
+import it.uniroma2.dicii.analysis.local.rule.LocalRule;
+import it.uniroma2.dicii.analysis.local.rule.NestingDepthRule;
+import it.uniroma2.dicii.analysis.local.rule.PrintStackTraceRule;
+import it.uniroma2.dicii.analysis.local.rule.SelfAssignmentRule;
+import it.uniroma2.dicii.analysis.local.rule.StandardOutputRule;
+import it.uniroma2.dicii.analysis.local.rule.StringEqualityRule;
+import it.uniroma2.dicii.analysis.local.rule.TodoCommentRule;
+import it.uniroma2.dicii.analysis.local.rule.TooManyParametersRule;
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline alternative to the Sonar analysis, checking the most common Sonar maintainability and reliability rules
+ * in-process, as JavaParser visitors. Issues have the same shape as the ones retrieved from Sonar, so that they can
+ * be used by the Sonar metrics extractor in the same way.
+ * <p>
+ * Files are analyzed in parallel, and the issues of each file are cached by blob id, so that only the files changed
+ * since the previous release are analyzed again.
+ * </p>
+ */
+@Slf4j
+public class LocalSmellAnalyzer {
+
+    private final String projectKey;
+    private final SourceStore sourceStore;
+
+    // Issues by blob id and path of the analyzed files
+    private final Map<String, List<SonarAnalysisResult>> issuesByBlob = new ConcurrentHashMap<>();
+
+    /**
+     * @param projectKey  the key prefixed to the component of each issue
+     * @param sourceStore the store the source files are read from
+     */
+    public LocalSmellAnalyzer(String projectKey, SourceStore sourceStore) {
+        this.projectKey = projectKey;
+        this.sourceStore = sourceStore;
+    }
+
+    /**
+     * Builds a new instance of each supported rule; since rules keep state while visiting, each file needs its own rules
+     *
+     * @return the rules checked on a file
+     */
+    public static List<LocalRule> createRules() {
+        return List.of(
+                new EmptyBlockRule(),
+                new CollapsibleIfRule(),
+                new TooManyParametersRule(),
+                new EmptyMethodRule(),
+                new StandardOutputRule(),
+                new PrintStackTraceRule(),
+                new GenericExceptionRule(),
+                new TodoCommentRule(),
+                new NestingDepthRule(),
+                new BooleanLiteralRule(),
+                new StringEqualityRule(),
+                new SelfAssignmentRule(),
+                new IdenticalOperandsRule(),
+                new JumpInFinallyRule(),
+                new InterruptedExceptionRule());
+    }
+
+    /**
+     * Analyzes the source files of a release
+     *
+     * @param files the files to analyze
+     * @return the issues found in the files
+     */
+    public List<SonarAnalysisResult> analyze(List<SourceFile> files) {
+        // Issues of files no longer present are dropped
+        Set<String> currentKeys = new HashSet<>();
+        for (SourceFile file : files) if (file.getBlobId() != null) currentKeys.add(buildCacheKey(file));
+        issuesByBlob.keySet().retainAll(currentKeys);
+
+        AtomicInteger analyzedFiles = new AtomicInteger();
+        List<SonarAnalysisResult> issues = files.parallelStream()
+                .flatMap(file -> {
+                    List<SonarAnalysisResult> cachedIssues = file.getBlobId() != null ? issuesByBlob.get(buildCacheKey(file)) : null;
+                    if (cachedIssues != null) return cachedIssues.stream();
+                    analyzedFiles.incrementAndGet();
+                    List<SonarAnalysisResult> fileIssues = analyzeFile(file);
+                    if (file.getBlobId() != null) issuesByBlob.put(buildCacheKey(file), fileIssues);
+                    return fileIssues.stream();
+                })
+                .toList();
+
+        log.info("Local analysis found {} issues, analyzing {} of {} files", issues.size(), analyzedFiles.get(), files.size());
+        return issues;
+    }
+
+    /**
+     * Checks all rules on a file
+     *
+     * @param file the file to analyze
+     * @return the issues found in the file, or an empty list if the file can't be parsed
+     */
+    private List<SonarAnalysisResult> analyzeFile(SourceFile file) {
+        try {
+            ParseResult<CompilationUnit> result = new JavaParser(StaticJavaParser.getParserConfiguration()).parse(sourceStore.read(file));
+            if (!result.isSuccessful() || result.getResult().isEmpty()) {
+                log.warn("Error parsing file {}: {}", file.getRelativePath(), result.getProblems());
+                return Collections.emptyList();
+            }
+            CompilationUnit cu = result.getResult().get();
+            LocalIssueCollector collector = new LocalIssueCollector(projectKey + ":" + file.getRelativePath());
+            for (LocalRule rule : createRules()) rule.check(cu, collector);
+            return collector.getIssues();
+        } catch (IOException e) {
+            log.warn("Error reading file {}: {}", file.getRelativePath(), e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static String buildCacheKey(SourceFile file) {
+        return file.getBlobId() + ":" + file.getRelativePath();
+    }
+}
@@ -0,0 +1,39 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.BooleanLiteralExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1125 - Boolean literals should not be redundant
+ */
+public class BooleanLiteralRule extends LocalRule {
+
+    public BooleanLiteralRule() {
+        super("java:S1125", "MINOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(BinaryExpr binary, LocalIssueCollector collector) {
+        super.visit(binary, collector);
+        switch (binary.getOperator()) {
+            case EQUALS:
+            case NOT_EQUALS:
+            case AND:
+            case OR:
+                if (binary.getLeft() instanceof BooleanLiteralExpr || binary.getRight() instanceof BooleanLiteralExpr)
+                    collector.report(this, binary, "Remove the unnecessary boolean literal.");
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void visit(UnaryExpr unary, LocalIssueCollector collector) {
+        super.visit(unary, collector);
+        if (unary.getOperator() == UnaryExpr.Operator.LOGICAL_COMPLEMENT && unary.getExpression() instanceof BooleanLiteralExpr)
+            collector.report(this, unary, "Remove the unnecessary boolean literal.");
+    }
+}
@@ -0,0 +1,30 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1066 - Mergeable "if" statements should be combined
+ */
+public class CollapsibleIfRule extends LocalRule {
+
+    public CollapsibleIfRule() {
+        super("java:S1066", "MAJOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(IfStmt ifStmt, LocalIssueCollector collector) {
+        super.visit(ifStmt, collector);
+        if (ifStmt.hasElseBranch()) return;
+        Statement then = ifStmt.getThenStmt();
+        if (then instanceof BlockStmt) {
+            BlockStmt block = (BlockStmt) then;
+            if (block.getStatements().size() != 1) return;
+            then = block.getStatement(0);
+        }
+        if (then instanceof IfStmt && !((IfStmt) then).hasElseBranch())
+            collector.report(this, then, "Merge this if statement with the enclosing one.");
+    }
+}
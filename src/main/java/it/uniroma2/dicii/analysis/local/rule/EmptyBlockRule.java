@@ -0,0 +1,27 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.CatchClause;
+import com.github.javaparser.ast.stmt.Statement;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S108 - Nested blocks of code should not be left empty.
+ * Blocks containing a comment are considered intentionally empty, as well as method and lambda bodies.
+ */
+public class EmptyBlockRule extends LocalRule {
+
+    public EmptyBlockRule() {
+        super("java:S108", "MAJOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(BlockStmt block, LocalIssueCollector collector) {
+        super.visit(block, collector);
+        if (!block.getStatements().isEmpty() || !block.getAllContainedComments().isEmpty()) return;
+        Node parent = block.getParentNode().orElse(null);
+        if (parent instanceof Statement || parent instanceof CatchClause)
+            collector.report(this, block, "Either remove or fill this block of code.");
+    }
+}
@@ -0,0 +1,24 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1186 - Methods should not be empty.
+ * Methods whose body contains a comment explaining why they are empty are not reported.
+ */
+public class EmptyMethodRule extends LocalRule {
+
+    public EmptyMethodRule() {
+        super("java:S1186", "CRITICAL", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(MethodDeclaration method, LocalIssueCollector collector) {
+        super.visit(method, collector);
+        BlockStmt body = method.getBody().orElse(null);
+        if (body != null && body.getStatements().isEmpty() && body.getAllContainedComments().isEmpty())
+            collector.report(this, method.getName(), "Add a nested comment explaining why this method is empty, throw an UnsupportedOperationException or complete the implementation.");
+    }
+}
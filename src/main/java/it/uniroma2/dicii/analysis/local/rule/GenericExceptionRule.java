@@ -0,0 +1,45 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.ThrowStmt;
+import com.github.javaparser.ast.type.ReferenceType;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * java:S112 - Generic exceptions should never be thrown.
+ * Overriding methods are not reported for their throws clause, as it is inherited.
+ */
+public class GenericExceptionRule extends LocalRule {
+
+    private static final Set<String> GENERIC_EXCEPTIONS = new HashSet<>(Arrays.asList(
+            "Exception", "RuntimeException", "Throwable", "Error",
+            "java.lang.Exception", "java.lang.RuntimeException", "java.lang.Throwable", "java.lang.Error"));
+
+    public GenericExceptionRule() {
+        super("java:S112", "MAJOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(ThrowStmt throwStmt, LocalIssueCollector collector) {
+        super.visit(throwStmt, collector);
+        if (!(throwStmt.getExpression() instanceof ObjectCreationExpr)) return;
+        String type = ((ObjectCreationExpr) throwStmt.getExpression()).getType().getNameWithScope();
+        if (GENERIC_EXCEPTIONS.contains(type))
+            collector.report(this, throwStmt, "Define and throw a dedicated exception instead of using a generic one.");
+    }
+
+    @Override
+    public void visit(MethodDeclaration method, LocalIssueCollector collector) {
+        super.visit(method, collector);
+        if (method.isAnnotationPresent("Override")) return;
+        for (ReferenceType thrown : method.getThrownExceptions()) {
+            if (thrown.isClassOrInterfaceType() && GENERIC_EXCEPTIONS.contains(thrown.asClassOrInterfaceType().getNameWithScope()))
+                collector.report(this, thrown, "Define and throw a dedicated exception instead of using a generic one.");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.LiteralExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * java:S1764 - Identical expressions should not be used on both sides of a binary operator.
+ * Operators where identical operands are legitimate (e.g., "+", "*", "<<") and literal operands are not reported.
+ */
+public class IdenticalOperandsRule extends LocalRule {
+
+    private static final Set<BinaryExpr.Operator> OPERATORS = EnumSet.of(
+            BinaryExpr.Operator.EQUALS, BinaryExpr.Operator.NOT_EQUALS,
+            BinaryExpr.Operator.LESS, BinaryExpr.Operator.LESS_EQUALS,
+            BinaryExpr.Operator.GREATER, BinaryExpr.Operator.GREATER_EQUALS,
+            BinaryExpr.Operator.AND, BinaryExpr.Operator.OR,
+            BinaryExpr.Operator.BINARY_AND, BinaryExpr.Operator.BINARY_OR, BinaryExpr.Operator.XOR,
+            BinaryExpr.Operator.MINUS, BinaryExpr.Operator.DIVIDE, BinaryExpr.Operator.REMAINDER);
+
+    public IdenticalOperandsRule() {
+        super("java:S1764", "MAJOR", BUG);
+    }
+
+    @Override
+    public void visit(BinaryExpr binary, LocalIssueCollector collector) {
+        super.visit(binary, collector);
+        if (!OPERATORS.contains(binary.getOperator()) || binary.getLeft() instanceof LiteralExpr) return;
+        if (binary.getLeft().equals(binary.getRight()))
+            collector.report(this, binary, "Correct one of the identical sub-expressions on both sides of operator \"" + binary.getOperator().asString() + "\".");
+    }
+}
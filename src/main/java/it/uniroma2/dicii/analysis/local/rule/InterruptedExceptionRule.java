@@ -0,0 +1,37 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.stmt.CatchClause;
+import com.github.javaparser.ast.stmt.ThrowStmt;
+import com.github.javaparser.ast.type.Type;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S2142 - "InterruptedException" should not be ignored.
+ * A catch block is compliant if it re-interrupts the current thread or throws an exception.
+ */
+public class InterruptedExceptionRule extends LocalRule {
+
+    public InterruptedExceptionRule() {
+        super("java:S2142", "MAJOR", BUG);
+    }
+
+    @Override
+    public void visit(CatchClause catchClause, LocalIssueCollector collector) {
+        super.visit(catchClause, collector);
+        Type caught = catchClause.getParameter().getType();
+        boolean catchesInterrupted = caught.isUnionType()
+                ? caught.asUnionType().getElements().stream().anyMatch(t -> isInterruptedException(t.asString()))
+                : isInterruptedException(caught.asString());
+        if (!catchesInterrupted) return;
+
+        boolean handled = !catchClause.getBody().findAll(ThrowStmt.class).isEmpty()
+                || catchClause.getBody().findAll(MethodCallExpr.class).stream().anyMatch(call -> call.getNameAsString().equals("interrupt"));
+        if (!handled)
+            collector.report(this, catchClause.getParameter(), "Either re-interrupt this method or rethrow the \"InterruptedException\" that can be caught here.");
+    }
+
+    private static boolean isInterruptedException(String type) {
+        return type.equals("InterruptedException") || type.equals("java.lang.InterruptedException");
+    }
+}
@@ -0,0 +1,49 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.ThrowStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1143 - Jump statements should not occur in "finally" blocks.
+ * Only "return" and "throw" are detected, as they always leave the "finally" block.
+ */
+public class JumpInFinallyRule extends LocalRule {
+
+    public JumpInFinallyRule() {
+        super("java:S1143", "CRITICAL", BUG);
+    }
+
+    @Override
+    public void visit(ReturnStmt returnStmt, LocalIssueCollector collector) {
+        super.visit(returnStmt, collector);
+        if (isInFinally(returnStmt)) collector.report(this, returnStmt, "Remove this return statement from this finally block.");
+    }
+
+    @Override
+    public void visit(ThrowStmt throwStmt, LocalIssueCollector collector) {
+        super.visit(throwStmt, collector);
+        if (isInFinally(throwStmt)) collector.report(this, throwStmt, "Remove this throw statement from this finally block.");
+    }
+
+    /**
+     * @return whether the statement is within a finally block, without leaving the enclosing method
+     */
+    private static boolean isInFinally(Node statement) {
+        Node child = statement;
+        Node parent = statement.getParentNode().orElse(null);
+        while (parent != null && !(parent instanceof LambdaExpr || parent instanceof ObjectCreationExpr || parent instanceof TypeDeclaration)) {
+            Node block = child;
+            if (parent instanceof TryStmt && ((TryStmt) parent).getFinallyBlock().filter(f -> f == block).isPresent())
+                return true;
+            child = parent;
+            parent = parent.getParentNode().orElse(null);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,41 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+import lombok.Getter;
+
+/**
+ * A Sonar rule checked locally by visiting the AST of a file.
+ * Rules keep the key, severity and type of the Sonar rule they implement, so that their issues are counted
+ * as the ones retrieved from Sonar. Rules may keep state while visiting, so each instance checks one file at a time.
+ */
+@Getter
+public abstract class LocalRule extends VoidVisitorAdapter<LocalIssueCollector> {
+
+    public static final String CODE_SMELL = "CODE_SMELL";
+    public static final String BUG = "BUG";
+
+    // Key of the Sonar rule (e.g., java:S108)
+    private final String key;
+    // Sonar severity: BLOCKER, CRITICAL, MAJOR, MINOR or INFO
+    private final String severity;
+    // Sonar type: CODE_SMELL or BUG
+    private final String type;
+
+    protected LocalRule(String key, String severity, String type) {
+        this.key = key;
+        this.severity = severity;
+        this.type = type;
+    }
+
+    /**
+     * Checks the rule on a file
+     *
+     * @param cu        the AST of the file
+     * @param collector the collector of the file's issues
+     */
+    public void check(CompilationUnit cu, LocalIssueCollector collector) {
+        cu.accept(this, collector);
+    }
+}
@@ -0,0 +1,100 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.DoStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.SwitchStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S134 - Control flow statements "if", "for", "while", "switch" and "try" should not be nested too deeply.
+ * "else if" chains count as a single level, and nesting restarts within lambdas and anonymous classes.
+ */
+public class NestingDepthRule extends LocalRule {
+
+    // Default threshold of the Sonar rule
+    private static final int MAX_DEPTH = 3;
+
+    private int depth;
+
+    public NestingDepthRule() {
+        super("java:S134", "CRITICAL", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(IfStmt ifStmt, LocalIssueCollector collector) {
+        boolean elseIf = ifStmt.getParentNode().filter(p -> p instanceof IfStmt && ((IfStmt) p).getElseStmt().filter(e -> e == ifStmt).isPresent()).isPresent();
+        if (elseIf) super.visit(ifStmt, collector);
+        else visitNested(ifStmt, collector, () -> super.visit(ifStmt, collector));
+    }
+
+    @Override
+    public void visit(ForStmt forStmt, LocalIssueCollector collector) {
+        visitNested(forStmt, collector, () -> super.visit(forStmt, collector));
+    }
+
+    @Override
+    public void visit(ForEachStmt forEachStmt, LocalIssueCollector collector) {
+        visitNested(forEachStmt, collector, () -> super.visit(forEachStmt, collector));
+    }
+
+    @Override
+    public void visit(WhileStmt whileStmt, LocalIssueCollector collector) {
+        visitNested(whileStmt, collector, () -> super.visit(whileStmt, collector));
+    }
+
+    @Override
+    public void visit(DoStmt doStmt, LocalIssueCollector collector) {
+        visitNested(doStmt, collector, () -> super.visit(doStmt, collector));
+    }
+
+    @Override
+    public void visit(SwitchStmt switchStmt, LocalIssueCollector collector) {
+        visitNested(switchStmt, collector, () -> super.visit(switchStmt, collector));
+    }
+
+    @Override
+    public void visit(TryStmt tryStmt, LocalIssueCollector collector) {
+        // try-with-resources only declares resources, and is not counted
+        if (!tryStmt.getResources().isEmpty() && tryStmt.getCatchClauses().isEmpty() && !tryStmt.getFinallyBlock().isPresent())
+            super.visit(tryStmt, collector);
+        else visitNested(tryStmt, collector, () -> super.visit(tryStmt, collector));
+    }
+
+    @Override
+    public void visit(LambdaExpr lambda, LocalIssueCollector collector) {
+        visitDetached(() -> super.visit(lambda, collector));
+    }
+
+    @Override
+    public void visit(ObjectCreationExpr creation, LocalIssueCollector collector) {
+        visitDetached(() -> super.visit(creation, collector));
+    }
+
+    private void visitNested(Node statement, LocalIssueCollector collector, Runnable visit) {
+        depth++;
+        if (depth == MAX_DEPTH + 1)
+            collector.report(this, statement, "Refactor this code to not nest more than " + MAX_DEPTH + " if/for/while/switch/try statements.");
+        try {
+            visit.run();
+        } finally {
+            depth--;
+        }
+    }
+
+    private void visitDetached(Runnable visit) {
+        int outerDepth = depth;
+        depth = 0;
+        try {
+            visit.run();
+        } finally {
+            depth = outerDepth;
+        }
+    }
+}
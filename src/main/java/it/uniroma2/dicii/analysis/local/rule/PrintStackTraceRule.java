@@ -0,0 +1,21 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1148 - Throwable.printStackTrace(...) should not be called
+ */
+public class PrintStackTraceRule extends LocalRule {
+
+    public PrintStackTraceRule() {
+        super("java:S1148", "MINOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(MethodCallExpr call, LocalIssueCollector collector) {
+        super.visit(call, collector);
+        if (call.getNameAsString().equals("printStackTrace") && call.getArguments().isEmpty() && call.getScope().isPresent())
+            collector.report(this, call, "Use a logger to log this exception.");
+    }
+}
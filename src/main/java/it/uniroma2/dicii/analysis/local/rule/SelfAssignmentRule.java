@@ -0,0 +1,21 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.AssignExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S1656 - Variables should not be self-assigned
+ */
+public class SelfAssignmentRule extends LocalRule {
+
+    public SelfAssignmentRule() {
+        super("java:S1656", "MAJOR", BUG);
+    }
+
+    @Override
+    public void visit(AssignExpr assign, LocalIssueCollector collector) {
+        super.visit(assign, collector);
+        if (assign.getOperator() == AssignExpr.Operator.ASSIGN && assign.getTarget().equals(assign.getValue()))
+            collector.report(this, assign, "Remove or correct this useless self-assignment.");
+    }
+}
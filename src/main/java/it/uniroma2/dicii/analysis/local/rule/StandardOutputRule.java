@@ -0,0 +1,24 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S106 - Standard outputs should not be used directly to log anything
+ */
+public class StandardOutputRule extends LocalRule {
+
+    public StandardOutputRule() {
+        super("java:S106", "MAJOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(FieldAccessExpr access, LocalIssueCollector collector) {
+        super.visit(access, collector);
+        String field = access.getNameAsString();
+        if ((field.equals("out") || field.equals("err")) && access.getScope() instanceof NameExpr
+                && ((NameExpr) access.getScope()).getNameAsString().equals("System"))
+            collector.report(this, access, "Replace this use of System." + field + " by a logger.");
+    }
+}
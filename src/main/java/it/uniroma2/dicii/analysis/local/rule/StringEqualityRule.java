@@ -0,0 +1,24 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S4973 - Strings and boxed types should be compared using "equals()".
+ * Without type resolution, only comparisons with a string literal are detected.
+ */
+public class StringEqualityRule extends LocalRule {
+
+    public StringEqualityRule() {
+        super("java:S4973", "MAJOR", BUG);
+    }
+
+    @Override
+    public void visit(BinaryExpr binary, LocalIssueCollector collector) {
+        super.visit(binary, collector);
+        if (binary.getOperator() != BinaryExpr.Operator.EQUALS && binary.getOperator() != BinaryExpr.Operator.NOT_EQUALS) return;
+        if (binary.getLeft() instanceof StringLiteralExpr || binary.getRight() instanceof StringLiteralExpr)
+            collector.report(this, binary, "Strings and Boxed types should be compared using \"equals()\".");
+    }
+}
@@ -0,0 +1,32 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.comments.Comment;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * java:S1135 - Track uses of "TODO" tags
+ */
+public class TodoCommentRule extends LocalRule {
+
+    private static final Pattern TODO = Pattern.compile("(^|[^\\p{L}])TODO($|[^\\p{L}])");
+
+    public TodoCommentRule() {
+        super("java:S1135", "INFO", CODE_SMELL);
+    }
+
+    @Override
+    public void check(CompilationUnit cu, LocalIssueCollector collector) {
+        // Comments are not visited as part of the AST, and the same comment may be returned more than once
+        Set<Comment> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Comment comment : cu.getAllComments()) {
+            if (checked.add(comment) && TODO.matcher(comment.getContent()).find())
+                collector.report(this, comment, "Complete the task associated to this TODO comment.");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package it.uniroma2.dicii.analysis.local.rule;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import it.uniroma2.dicii.analysis.local.LocalIssueCollector;
+
+/**
+ * java:S107 - Methods should not have too many parameters
+ */
+public class TooManyParametersRule extends LocalRule {
+
+    // Default threshold of the Sonar rule
+    private static final int MAX_PARAMETERS = 7;
+
+    public TooManyParametersRule() {
+        super("java:S107", "MAJOR", CODE_SMELL);
+    }
+
+    @Override
+    public void visit(MethodDeclaration method, LocalIssueCollector collector) {
+        check(method, collector);
+        super.visit(method, collector);
+    }
+
+    @Override
+    public void visit(ConstructorDeclaration constructor, LocalIssueCollector collector) {
+        check(constructor, collector);
+        super.visit(constructor, collector);
+    }
+
+    private void check(CallableDeclaration<?> callable, LocalIssueCollector collector) {
+        int parameters = callable.getParameters().size();
+        if (parameters > MAX_PARAMETERS)
+            collector.report(this, callable.getName(), "Method has " + parameters + " parameters, which is greater than " + MAX_PARAMETERS + " authorized.");
+    }
+}
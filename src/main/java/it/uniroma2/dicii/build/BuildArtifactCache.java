@@ -0,0 +1,312 @@
+package it.uniroma2.dicii.build;
+
+import it.uniroma2.dicii.cache.CacheManager;
+import it.uniroma2.dicii.maven.MavenModuleDiscoverer;
+import it.uniroma2.dicii.maven.model.MavenModule;
+import it.uniroma2.dicii.vcsManagement.tree.GitTreeManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the compiled classes of each module across releases and runs, so that only the modules whose sources changed
+ * are built again.
+ * <p>
+ * Classes are keyed by the Git tree id of the module's {@code src/main} directory together with the content of the
+ * module's and root POMs, where the version of the project is normalized, since it changes at every release even for
+ * identical builds. Before a build, the classes of unchanged modules are restored into their {@code target/classes}
+ * directory, where the Sonar scanner finds them as binaries, and the remaining modules are built; after a successful
+ * build, the classes of the built modules are stored. Modules excluded from the builds are left out of the plan, since
+ * their classes would never be stored.
+ * </p><p>
+ * The classes of a module are reused even if a module it depends on changed: compiled code may differ only for
+ * inlined constants, which doesn't affect the issues found by the scanner.
+ * </p>
+ */
+@Slf4j
+public class BuildArtifactCache {
+
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String SOURCE_DIRECTORY = "src/main";
+    private static final String CLASSES_DIRECTORY = "target/classes";
+
+    private final Path repoPath;
+    private final Path cacheDirectory;
+
+    /**
+     * @param repoPath the path of the repository to build
+     */
+    public BuildArtifactCache(String repoPath) {
+        this.repoPath = Path.of(repoPath).toAbsolutePath().normalize();
+        this.cacheDirectory = CacheManager.getCacheDirectory("build");
+    }
+
+    /**
+     * Restores the classes of the modules of the checked-out release that are cached, and plans the build of the others
+     *
+     * @param commitId        the id of the checked-out commit
+     * @param excludedModules the modules excluded from the builds, as groupId:artifactId selectors
+     * @return the plan of the build, with the modules left to build
+     */
+    public BuildPlan restore(String commitId, Collection<String> excludedModules) {
+        Set<String> excludedArtifactIds = new HashSet<>();
+        for (String selector : excludedModules) excludedArtifactIds.add(selector.substring(selector.indexOf(':') + 1));
+        List<MavenModule> modules = new ArrayList<>();
+        for (MavenModule module : new MavenModuleDiscoverer(repoPath.toString()).discoverModules()) {
+            if (excludedArtifactIds.contains(readArtifactId(module.getPath().resolve(POM_FILE_NAME)))) continue;
+            modules.add(module);
+        }
+        Map<MavenModule, String> keys = computeKeys(commitId, modules);
+        List<MavenModule> restoredModules = new ArrayList<>();
+        List<MavenModule> changedModules = new ArrayList<>();
+        for (MavenModule module : modules) {
+            String key = keys.get(module);
+            Path cachedClasses = key != null && cacheDirectory != null ? cacheDirectory.resolve(key) : null;
+            if (cachedClasses != null && Files.isDirectory(cachedClasses) && restoreClasses(module, cachedClasses)) restoredModules.add(module);
+            else changedModules.add(module);
+        }
+
+        log.info("Restored cached classes of {} module(s), {} module(s) to build", restoredModules.size(), changedModules.size());
+        return new BuildPlan(restoredModules, changedModules, keys);
+    }
+
+    /**
+     * Stores the classes of the modules built by a successful build
+     *
+     * @param plan the plan of the build
+     */
+    public void store(BuildPlan plan) {
+        if (cacheDirectory == null) return;
+        int stored = 0;
+        for (MavenModule module : plan.getChangedModules()) {
+            String key = plan.keys.get(module);
+            Path classes = module.getPath().resolve(CLASSES_DIRECTORY);
+            if (key == null || !Files.isDirectory(classes) || Files.isDirectory(cacheDirectory.resolve(key))) continue;
+
+            // Classes are copied to a temporary directory first, so that a partially stored entry is never restored
+            Path tmpDirectory = cacheDirectory.resolve(key + "." + UUID.randomUUID() + ".tmp");
+            try {
+                copyDirectory(classes, tmpDirectory);
+                Files.move(tmpDirectory, cacheDirectory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+                stored++;
+            } catch (IOException e) {
+                log.warn("Unable to cache the classes of module {}: {}", module.getName(), e.getMessage());
+                deleteDirectory(tmpDirectory);
+            }
+        }
+        log.info("Cached classes of {} built module(s)", stored);
+    }
+
+    /**
+     * Computes the cache key of each module of the checked-out release
+     *
+     * @param commitId the id of the checked-out commit
+     * @param modules  the modules of the release
+     * @return the keys by module; modules whose sources can't be identified have no key
+     */
+    private Map<MavenModule, String> computeKeys(String commitId, List<MavenModule> modules) {
+        Map<MavenModule, String> keys = new LinkedHashMap<>();
+        try {
+            String projectVersion = readProjectVersion(repoPath.resolve(POM_FILE_NAME));
+            String rootPom = normalizePom(repoPath.resolve(POM_FILE_NAME), projectVersion);
+            try (GitTreeManager treeManager = new GitTreeManager()) {
+                for (MavenModule module : modules) {
+                    String sourcePath = module.getRelativePath().isEmpty() ? SOURCE_DIRECTORY : module.getRelativePath() + "/" + SOURCE_DIRECTORY;
+                    String treeId = treeManager.getObjectIdAtCommit(commitId, sourcePath);
+                    Path modulePom = module.getPath().resolve(POM_FILE_NAME);
+                    if (treeId == null || rootPom == null || !Files.isRegularFile(modulePom)) continue;
+                    keys.put(module, hash(module.getRelativePath(), treeId, normalizePom(modulePom, projectVersion), rootPom));
+                }
+            }
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Unable to identify the sources of the modules, building all of them: {}", e.getMessage());
+        }
+        return keys;
+    }
+
+    private boolean restoreClasses(MavenModule module, Path cachedClasses) {
+        Path classes = module.getPath().resolve(CLASSES_DIRECTORY);
+        try {
+            // Classes left by the build of another release are replaced
+            deleteDirectory(classes);
+            copyDirectory(cachedClasses, classes);
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to restore the cached classes of module {}: {}", module.getName(), e.getMessage());
+            deleteDirectory(classes);
+            return false;
+        }
+    }
+
+    /**
+     * Reads a POM, replacing the version of the project with a placeholder
+     */
+    private static String normalizePom(Path pom, String projectVersion) throws IOException {
+        String content = Files.readString(pom, StandardCharsets.UTF_8);
+        return projectVersion != null ? content.replace(">" + projectVersion + "<", ">${project.version}<") : content;
+    }
+
+    /**
+     * Reads the artifactId declared by a POM
+     *
+     * @return the artifactId, or null if the POM can't be read
+     */
+    private static String readArtifactId(Path pom) {
+        if (!Files.isRegularFile(pom)) return null;
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream in = Files.newInputStream(pom)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2 && reader.getLocalName().equals("artifactId")) return reader.getElementText().trim();
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Unable to read the artifactId of {}: {}", pom, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reads the version of the project declared by the root POM, or inherited from its parent
+     */
+    private static String readProjectVersion(Path pom) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream in = Files.newInputStream(pom)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String parentVersion = null;
+            int depth = 0;
+            boolean inParent = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2 && reader.getLocalName().equals("parent")) inParent = true;
+                    else if (depth == 2 && reader.getLocalName().equals("version")) return reader.getElementText().trim();
+                    else if (depth == 3 && inParent && reader.getLocalName().equals("version")) parentVersion = reader.getElementText().trim();
+                    // getElementText() consumes the end of the element
+                    if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) depth--;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 2) inParent = false;
+                    depth--;
+                }
+            }
+            return parentVersion;
+        }
+    }
+
+    private static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    log.debug("Unable to delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Unable to delete {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * The modules of a release whose classes were restored, and the ones left to build
+     */
+    @Getter
+    public static class BuildPlan {
+        private final List<MavenModule> restoredModules;
+        private final List<MavenModule> changedModules;
+        // Cache keys by module
+        private final Map<MavenModule, String> keys;
+
+        private BuildPlan(List<MavenModule> restoredModules, List<MavenModule> changedModules, Map<MavenModule, String> keys) {
+            this.restoredModules = restoredModules;
+            this.changedModules = changedModules;
+            this.keys = keys;
+        }
+
+        /**
+         * @return the -pl selectors of the modules left to build
+         */
+        public List<String> getChangedSelectors() {
+            return toSelectors(changedModules);
+        }
+
+        /**
+         * @return the -pl selectors of the modules whose classes were restored
+         */
+        public List<String> getRestoredSelectors() {
+            return toSelectors(restoredModules);
+        }
+
+        private static List<String> toSelectors(List<MavenModule> modules) {
+            List<String> selectors = new ArrayList<>();
+            for (MavenModule module : modules) selectors.add(module.getRelativePath().isEmpty() ? "." : module.getRelativePath());
+            return selectors;
+        }
+    }
+}
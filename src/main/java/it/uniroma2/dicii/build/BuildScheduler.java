@@ -0,0 +1,170 @@
+package it.uniroma2.dicii.build;
+
+import it.uniroma2.dicii.cache.CacheManager;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.vcsManagement.commit.GitWorktreeManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the builds of several releases concurrently, each one in its own worktree.
+ * <p>
+ * Builds run in slots, whose number is bounded by the CPU and memory budget of the machine: each build is granted
+ * {@code build.cpus} CPUs and {@code build.memory.mb} MB of memory (enforced on the build containers), out of a budget
+ * of {@code build.budget.cpus} CPUs (all the available ones by default) and {@code build.budget.memory.mb} MB (three
+ * quarters of the physical memory by default). The {@code build.concurrency} property caps the number of slots, or lets
+ * the budget decide if {@code auto}.
+ * </p><p>
+ * Each slot owns a worktree of the repository, checked out at the commit of each build it runs, so that builds
+ * neither wait for nor touch the main working tree. Submitting a build blocks while all slots are busy, applying
+ * backpressure to the stages submitting builds.
+ * </p>
+ */
+@Slf4j
+public class BuildScheduler implements Closeable {
+
+    private static final int DEFAULT_BUILD_CPUS = 2;
+    private static final long DEFAULT_BUILD_MEMORY_MB = 4096;
+
+    // Slots free to run a build
+    private final BlockingQueue<BuildSlot> freeSlots;
+    private final ExecutorService executor;
+    private final GitWorktreeManager worktreeManager = new GitWorktreeManager();
+    @Getter
+    private final int slots;
+
+    /**
+     * @param slots the max number of concurrent builds
+     */
+    public BuildScheduler(int slots) {
+        this.slots = Math.max(1, slots);
+        this.freeSlots = new ArrayBlockingQueue<>(this.slots);
+        Path worktreesDirectory = CacheManager.getCacheDirectory("worktrees");
+        if (worktreesDirectory == null) worktreesDirectory = Path.of(System.getProperty("java.io.tmpdir"), "isw2-worktrees");
+        for (int i = 0; i < this.slots; i++) freeSlots.add(new BuildSlot(i, worktreesDirectory.resolve("slot-" + i)));
+
+        AtomicInteger threadsCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.slots, r -> {
+            Thread thread = new Thread(r, "build-slot-" + threadsCount.incrementAndGet());
+            // Builds in progress must not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Running up to {} builds concurrently", this.slots);
+    }
+
+    /**
+     * Reads the number of concurrent builds from the {@code build.concurrency} property, bounded by the CPU and memory
+     * budget of the builds
+     *
+     * @return the number of build slots, 1 if builds must run in the main working tree one at a time
+     */
+    public static int getConfiguredSlots() {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String concurrency = properties.getProperty("build.concurrency");
+        if (concurrency == null || concurrency.isBlank()) return 1;
+
+        int budgetSlots = (int) Math.max(1, Math.min(getBudgetCpus() / getBuildCpus(), getBudgetMemoryMb() / getBuildMemoryMb()));
+        if ("auto".equalsIgnoreCase(concurrency.trim())) return budgetSlots;
+        return Math.max(1, Math.min(Integer.parseInt(concurrency.trim()), budgetSlots));
+    }
+
+    /**
+     * @return the CPUs granted to each build
+     */
+    public static int getBuildCpus() {
+        String cpus = PropertiesManager.getInstance().getProperty("build.cpus");
+        return cpus != null ? Integer.parseInt(cpus.trim()) : DEFAULT_BUILD_CPUS;
+    }
+
+    /**
+     * @return the memory granted to each build, in MB
+     */
+    public static long getBuildMemoryMb() {
+        String memory = PropertiesManager.getInstance().getProperty("build.memory.mb");
+        return memory != null ? Long.parseLong(memory.trim()) : DEFAULT_BUILD_MEMORY_MB;
+    }
+
+    private static int getBudgetCpus() {
+        String cpus = PropertiesManager.getInstance().getProperty("build.budget.cpus");
+        return cpus != null ? Integer.parseInt(cpus.trim()) : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static long getBudgetMemoryMb() {
+        String memory = PropertiesManager.getInstance().getProperty("build.budget.memory.mb");
+        if (memory != null) return Long.parseLong(memory.trim());
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os)
+            return os.getTotalMemorySize() * 3 / 4 / (1024 * 1024);
+        return getBuildMemoryMb();
+    }
+
+    /**
+     * Runs a build in the first free slot, with its worktree checked out at the given commit;
+     * blocks while all slots are busy
+     *
+     * @param commitId the id of the commit to build
+     * @param task     the build, run in the slot
+     * @return the future result of the build, completed exceptionally if the worktree can't be checked out or the build fails
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public <T> CompletableFuture<T> submit(String commitId, BuildTask<T> task) throws InterruptedException {
+        BuildSlot slot = freeSlots.take();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    worktreeManager.checkOutWorktreeAtCommit(slot.getWorktree(), commitId);
+                    result.complete(task.run(slot));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    freeSlots.add(slot);
+                }
+            });
+        } catch (RuntimeException e) {
+            freeSlots.add(slot);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Stops the running builds
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A build of a slot
+     */
+    @FunctionalInterface
+    public interface BuildTask<T> {
+        T run(BuildSlot slot) throws Exception;
+    }
+
+    /**
+     * A slot running one build at a time in its own worktree
+     */
+    @Getter
+    public static class BuildSlot {
+        private final int index;
+        private final Path worktree;
+
+        private BuildSlot(int index, Path worktree) {
+            this.index = index;
+            this.worktree = worktree;
+        }
+    }
+}
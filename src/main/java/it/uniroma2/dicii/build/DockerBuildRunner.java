@@ -0,0 +1,254 @@
+package it.uniroma2.dicii.build;
+
+import it.uniroma2.dicii.process.ProcessResult;
+import it.uniroma2.dicii.process.ProcessRunner;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs Maven builds of the analyzed repository within Docker containers.
+ * <p>
+ * By default, each build runs in a throwaway container ({@code docker run --rm}). If the {@code build.runner}
+ * property is {@code container}, a container is started for each build image the first time it is needed and kept
+ * alive for the whole run, and builds are executed in it through {@code docker exec}, so that container startup is
+ * paid once. The Maven command is read from the {@code build.maven.command} property, so that a resident Maven daemon
+ * (e.g., {@code mvnd}) can be used with images providing it, reusing a warm JVM and loaded plugins across builds.
+ * </p><p>
+ * The repository is mounted into the containers, so that checkouts on the host are seen by the running containers.
+ * Containers of builds that time out are removed, since killing the Docker client doesn't stop them. If builds run
+ * concurrently (see {@link BuildScheduler}), each container is limited to the CPUs and memory granted to a build.
+ * </p>
+ */
+@Slf4j
+public class DockerBuildRunner implements Closeable {
+
+    public static final String DEFAULT_IMAGE = "maven:3.6-jdk-8";
+    private static final String CONTAINER_MODE = "container";
+    private static final String DEFAULT_MAVEN_COMMAND = "mvn";
+    private static final String CONTAINER_HOME = "/tmp/maven-home"; // A fake home dir inside container
+    private static final String CONTAINER_WORKDIR = "/usr/src/mymaven";
+
+    private final String repoPath;
+    private final MavenRepositoryCache repositoryCache;
+    private final boolean longLived;
+    private final String mavenCommand;
+    private final String userId;
+    // docker run arguments limiting the resources of the build containers
+    private final List<String> resourceArguments;
+
+    // Running containers by image
+    private final Map<String, String> containers = new ConcurrentHashMap<>();
+
+    /**
+     * @param repoPath        the path of the repository to build
+     * @param repositoryCache the Maven repository shared by the builds
+     */
+    public DockerBuildRunner(String repoPath, MavenRepositoryCache repositoryCache) {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        this.repoPath = repoPath;
+        this.repositoryCache = repositoryCache;
+        this.longLived = CONTAINER_MODE.equalsIgnoreCase(properties.getProperty("build.runner"));
+        String command = properties.getProperty("build.maven.command");
+        this.mavenCommand = command != null && !command.isBlank() ? command.trim() : DEFAULT_MAVEN_COMMAND;
+        this.userId = getLinuxUserId();
+        this.resourceArguments = BuildScheduler.getConfiguredSlots() > 1
+                ? List.of("--cpus", String.valueOf(BuildScheduler.getBuildCpus()), "--memory", BuildScheduler.getBuildMemoryMb() + "m")
+                : List.of();
+    }
+
+    /**
+     * Resolves the build image of a Java version from the {@code build.image.<version>} property, falling back to
+     * {@code build.image} and then to {@link #DEFAULT_IMAGE}
+     *
+     * @param javaVersion the Java version required by the release (e.g., 1.8, 11)
+     * @return the image building the release
+     */
+    public static String getImageForVersion(String javaVersion) {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String image = javaVersion != null ? properties.getProperty("build.image." + javaVersion.trim()) : null;
+        if (image == null) image = properties.getProperty("build.image");
+        return image != null && !image.isBlank() ? image.trim() : DEFAULT_IMAGE;
+    }
+
+    /**
+     * Runs Maven with the given arguments at the root of the repository
+     *
+     * @param image     the build image
+     * @param offline   whether Maven must not access remote repositories
+     * @param arguments the goals and options of the build
+     * @return the exit code of the build
+     * @throws IOException          if the build can't be started
+     * @throws InterruptedException if interrupted while waiting for the build
+     */
+    public int runMaven(String image, boolean offline, List<String> arguments) throws IOException, InterruptedException {
+        List<String> mavenCmd = new ArrayList<>();
+        mavenCmd.add(mavenCommand);
+        // We point Maven to the mounted settings.xml explicitly
+        if (getSettingsFile() != null) {
+            mavenCmd.add("-s");
+            mavenCmd.add(CONTAINER_HOME + "/settings.xml");
+        }
+        mavenCmd.addAll(repositoryCache.getMavenArguments(offline));
+        mavenCmd.addAll(arguments);
+
+        if (!longLived) {
+            String container = newContainerName();
+            List<String> dockerCmd = new ArrayList<>(List.of("docker", "run", "--rm", "--name", container));
+            dockerCmd.addAll(getContainerArguments());
+            dockerCmd.add(image);
+            dockerCmd.addAll(mavenCmd);
+            ProcessResult result = execute(dockerCmd);
+            if (result.isTimedOut() || result.isCancelled()) removeContainer(container);
+            return result.getExitCode();
+        }
+
+        String container = getContainer(image);
+        ProcessResult result = execute(buildExecCommand(container, mavenCmd));
+        if (result.isTimedOut() || result.isCancelled()) {
+            // The build may still be running within the container, which is replaced by the next build
+            containers.remove(image, container);
+            removeContainer(container);
+        } else if (!result.isSuccessful() && !isRunning(container)) {
+            // The container stopped (e.g., killed or out of memory), so the build is retried in a new one
+            log.warn("Build container {} is not running anymore, restarting it", container);
+            containers.remove(image, container);
+            result = execute(buildExecCommand(getContainer(image), mavenCmd));
+        }
+        return result.getExitCode();
+    }
+
+    /**
+     * Removes the containers started for the run
+     */
+    @Override
+    public void close() {
+        for (String container : containers.values()) {
+            if (!removeContainer(container)) break;
+        }
+        containers.clear();
+    }
+
+    /**
+     * Removes a container, killing it if running
+     *
+     * @return false if interrupted
+     */
+    private boolean removeContainer(String container) {
+        try {
+            new ProcessBuilder("docker", "rm", "-f", container).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor();
+            log.info("Removed build container {}", container);
+        } catch (IOException e) {
+            log.warn("Unable to remove build container {}: {}", container, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the running container of an image, starting it if needed
+     */
+    private synchronized String getContainer(String image) throws IOException, InterruptedException {
+        String container = containers.get(image);
+        if (container != null) return container;
+
+        container = newContainerName();
+        List<String> dockerCmd = new ArrayList<>(List.of("docker", "run", "-d", "--name", container));
+        dockerCmd.addAll(getContainerArguments());
+        // Keeps the container alive until it is removed
+        dockerCmd.addAll(List.of(image, "sleep", "infinity"));
+        ProcessResult result = new ProcessRunner("Docker", dockerCmd, new File(repoPath)).run();
+        if (!result.isSuccessful()) throw new IOException("Unable to start build container for image " + image + ", exit code: " + result.getExitCode());
+
+        log.info("Started build container {} for image {}", container, image);
+        containers.put(image, container);
+        return container;
+    }
+
+    private static String newContainerName() {
+        return "isw2-build-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private List<String> buildExecCommand(String container, List<String> mavenCmd) {
+        List<String> dockerCmd = new ArrayList<>(List.of("docker", "exec", "-u", userId, "-w", CONTAINER_WORKDIR, container));
+        dockerCmd.addAll(mavenCmd);
+        return dockerCmd;
+    }
+
+    /**
+     * @return the arguments of docker run mounting the repository, the settings and the Maven repository
+     */
+    private List<String> getContainerArguments() {
+        List<String> arguments = new ArrayList<>();
+        // Run as the current Host User
+        arguments.add("-u");
+        arguments.add(userId);
+        arguments.addAll(resourceArguments);
+
+        // Map Project Directory
+        arguments.add("-v");
+        arguments.add(repoPath + ":" + CONTAINER_WORKDIR);
+
+        // Map settings.xml directly to the fake home
+        File settingsFile = getSettingsFile();
+        if (settingsFile != null) {
+            arguments.add("-v");
+            arguments.add(settingsFile.getPath() + ":" + CONTAINER_HOME + "/settings.xml");
+        }
+
+        // Map the Maven repository shared by all builds, so that dependencies are resolved only once
+        arguments.addAll(repositoryCache.getDockerArguments());
+
+        // Set Working Directory inside Container
+        arguments.add("-w");
+        arguments.add(CONTAINER_WORKDIR);
+        return arguments;
+    }
+
+    private File getSettingsFile() {
+        String localM2Path = PropertiesManager.getInstance().getProperty("m2.directory");
+        File settingsFile = new File(localM2Path + "/settings.xml");
+        return settingsFile.exists() ? settingsFile : null;
+    }
+
+    private boolean isRunning(String container) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("docker", "inspect", "-f", "{{.State.Running}}", container).redirectErrorStream(true).start();
+        String output;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            output = reader.readLine();
+        }
+        return process.waitFor() == 0 && "true".equals(output != null ? output.trim() : null);
+    }
+
+    private ProcessResult execute(List<String> command) throws IOException, InterruptedException {
+        return new ProcessRunner("Maven", command, new File(repoPath)).run();
+    }
+
+    /**
+     * Gets the current user's UID and GID for Docker (e.g., "1000:1000").
+     * This ensures files created by Docker are owned by YOU, not root.
+     */
+    private static String getLinuxUserId() {
+        try {
+            String uid = new BufferedReader(new InputStreamReader(Runtime.getRuntime().exec("id -u").getInputStream())).readLine();
+            String gid = new BufferedReader(new InputStreamReader(Runtime.getRuntime().exec("id -g").getInputStream())).readLine();
+            return uid + ":" + gid;
+        } catch (IOException e) {
+            log.warn("Could not determine UID/GID, defaulting to current user.");
+            return "1000:1000"; // Safe default for most Linux users
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package it.uniroma2.dicii.build;
+
+import it.uniroma2.dicii.cache.CacheManager;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * The Maven repository shared by the containerized builds of all releases, across runs.
+ * <p>
+ * The repository is either a host directory, read from the {@code m2.repository} property or defaulting to the
+ * {@code repository} directory within {@code m2.directory}, or a Docker named volume if the property is not an
+ * absolute path. Once a build succeeded online, the repository is considered warm, and the following builds run
+ * offline, so that dependencies are neither downloaded nor checked for updates; builds needing new dependencies
+ * fail offline, and are expected to be retried online.
+ * </p><p>
+ * Builds running concurrently (see {@link BuildScheduler}) each use the repository of their slot, since Maven doesn't
+ * lock the local repository: concurrent installs would write the same metadata files. The repository of a slot is
+ * kept across runs next to the shared one, from which it is seeded the first time, if the shared one is a host
+ * directory; repositories of slots in Docker volumes start empty.
+ * </p>
+ */
+@Slf4j
+public class MavenRepositoryCache {
+
+    // Path of the repository within the containers
+    public static final String CONTAINER_REPOSITORY = "/tmp/maven-home/.m2/repository";
+
+    // Host directory or volume name mounted as the repository
+    @Getter
+    private final String source;
+    // Marks the repository as warm, across runs
+    private final Path warmMarker;
+    private boolean warm;
+
+    public MavenRepositoryCache() {
+        this(getConfiguredRepository());
+    }
+
+    private MavenRepositoryCache(String source) {
+        this.source = source;
+
+        if (isHostDirectory()) {
+            try {
+                Files.createDirectories(Paths.get(source));
+            } catch (IOException e) {
+                log.warn("Unable to create Maven repository {}: {}", source, e.getMessage());
+            }
+        }
+
+        Path markerDirectory = CacheManager.getCacheDirectory("maven");
+        this.warmMarker = markerDirectory != null
+                ? markerDirectory.resolve(UUID.nameUUIDFromBytes(source.getBytes(StandardCharsets.UTF_8)) + ".warm") : null;
+        this.warm = warmMarker != null && Files.exists(warmMarker);
+        log.info("Using Maven repository {} ({})", source, warm ? "warm, building offline" : "cold, building online");
+    }
+
+    private static String getConfiguredRepository() {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String repository = properties.getProperty("m2.repository");
+        if (repository == null || repository.isBlank()) {
+            String m2Directory = properties.getProperty("m2.directory");
+            Path cacheDirectory = CacheManager.getCacheDirectory("m2");
+            repository = m2Directory != null ? Paths.get(m2Directory, "repository").toString()
+                    : cacheDirectory != null ? cacheDirectory.resolve("repository").toString() : "isw2-m2-repository";
+        }
+        return repository.trim();
+    }
+
+    /**
+     * Returns the repository of a build slot, seeding it from this one the first time
+     *
+     * @param index the index of the slot
+     * @return the repository used by the builds of the slot
+     */
+    public MavenRepositoryCache forSlot(int index) {
+        if (!isHostDirectory()) {
+            log.info("Maven repository {} is a volume, the builds of slot {} start with an empty one", source, index);
+            return new MavenRepositoryCache(source + "-slot-" + index);
+        }
+
+        Path sharedRepository = Paths.get(source);
+        Path slotRepository = sharedRepository.resolveSibling(sharedRepository.getFileName() + "-slot-" + index);
+        boolean seeded = false;
+        if (!Files.isDirectory(slotRepository)) {
+            // Copied to a temporary directory first, so that an interrupted copy is never taken for a seeded repository
+            Path tmpRepository = slotRepository.resolveSibling(slotRepository.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try {
+                log.info("Seeding the Maven repository of slot {} from {}", index, source);
+                copyDirectory(sharedRepository, tmpRepository);
+                Files.move(tmpRepository, slotRepository, StandardCopyOption.ATOMIC_MOVE);
+                seeded = true;
+            } catch (IOException e) {
+                log.warn("Unable to seed the Maven repository of slot {}, its builds start with an empty one: {}", index, e.getMessage());
+                deleteDirectory(tmpRepository);
+            }
+        }
+
+        MavenRepositoryCache slotCache = new MavenRepositoryCache(slotRepository.toString());
+        if (seeded && isWarm()) slotCache.markWarm();
+        return slotCache;
+    }
+
+    /**
+     * @return the docker run arguments mounting the repository into the container
+     */
+    public List<String> getDockerArguments() {
+        return List.of("-v", source + ":" + CONTAINER_REPOSITORY);
+    }
+
+    /**
+     * @param offline whether Maven must not access remote repositories
+     * @return the Maven arguments using the mounted repository
+     */
+    public List<String> getMavenArguments(boolean offline) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-Dmaven.repo.local=" + CONTAINER_REPOSITORY);
+        if (offline) arguments.add("-o");
+        return arguments;
+    }
+
+    /**
+     * @return the Maven arguments of a build running on the host (e.g., the Sonar scanner) using the same repository
+     * as the containers, or none if the repository is a Docker volume
+     */
+    public List<String> getHostMavenArguments() {
+        return isHostDirectory() ? List.of("-Dmaven.repo.local=" + source) : List.of();
+    }
+
+    /**
+     * @return whether all the dependencies of a previous build were resolved, so that builds may run offline
+     */
+    public synchronized boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Marks the repository as warm, after a successful build
+     */
+    public synchronized void markWarm() {
+        if (warm) return;
+        warm = true;
+        if (warmMarker == null) return;
+        try {
+            Files.writeString(warmMarker, source);
+        } catch (IOException e) {
+            log.warn("Unable to mark Maven repository {} as warm: {}", source, e.getMessage());
+        }
+    }
+
+    private boolean isHostDirectory() {
+        return Paths.get(source).isAbsolute();
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    log.debug("Unable to delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Unable to delete {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package it.uniroma2.dicii.cache;
+
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Slf4j
+public class CacheManager {
+
+    private static final String DEFAULT_CACHE_DIRECTORY = System.getProperty("java.io.tmpdir") + "/isw2-cache";
+
+    /**
+     * Resolves (and creates, if missing) the directory of a named cache.
+     * All caches persisting across runs live under the directory configured by the {@code project.cache.directory}
+     * property; if the property is not set, a directory within the system temporary directory is used.
+     *
+     * @param cacheName the name of the cache, used as sub-directory name
+     * @return the cache directory, or null if it can't be created
+     */
+    public static Path getCacheDirectory(String cacheName) {
+        String baseDirectory = PropertiesManager.getInstance().getProperty("project.cache.directory");
+        if (baseDirectory == null || baseDirectory.isBlank()) baseDirectory = DEFAULT_CACHE_DIRECTORY;
+
+        Path cacheDirectory = Paths.get(baseDirectory, cacheName);
+        try {
+            Files.createDirectories(cacheDirectory);
+            return cacheDirectory;
+        } catch (IOException e) {
+            log.warn("Unable to create cache directory {}: {}", cacheDirectory, e.getMessage());
+            return null;
+        }
+    }
+
+}
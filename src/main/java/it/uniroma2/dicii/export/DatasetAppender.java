@@ -0,0 +1,55 @@
+package it.uniroma2.dicii.export;
+
+import it.uniroma2.dicii.metrics.impl.MethodNameGenerator;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Appends the rows of a release to the dataset one at a time, as soon as their records are complete.
+ * If a write fails, the error is logged and the following rows are discarded.
+ */
+@Slf4j
+public class DatasetAppender implements Closeable {
+
+    private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+    private final String version;
+    private final BufferedWriter writer;
+    private final StringBuilder row;
+    private int rowsCount;
+    private boolean failed;
+
+    DatasetAppender(String version, BufferedWriter writer) {
+        this.version = version;
+        this.writer = writer;
+        this.row = new StringBuilder();
+    }
+
+    public void append(MethodRecord methodRecord) {
+        if (failed) return;
+        row.setLength(0);
+        row.append(version).append(',').append(MethodNameGenerator.generateMethodName(methodRecord.getQualifiedName(), methodRecord.getStartLine()));
+        for (MetricColumn column : COLUMNS) {
+            row.append(',');
+            DatasetManager.appendValue(row, column, methodRecord.getInt(column), methodRecord.getDouble(column));
+        }
+        try {
+            writer.append(row).append('\n');
+            rowsCount++;
+        } catch (IOException e) {
+            log.error("Error while exporting dataset: {}", e.getMessage());
+            failed = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        log.info("Dataset updated successfully ({} rows written)", rowsCount);
+    }
+}
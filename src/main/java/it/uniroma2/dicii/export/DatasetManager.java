@@ -1,16 +1,21 @@
 package it.uniroma2.dicii.export;
 
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.MethodSymbolTable;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.MetricTable;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class DatasetManager {
 
-    private static final String HEADER = "version,method,CyC,CoC,MND,JD,SLOC,NP,CD,FI,FO,CH,PD,DC,BS,HS,MS,LS,IS,buggy";
+    private static final MetricColumn[] COLUMNS = MetricColumn.values();
+    private static final String HEADER = "version,method," + Arrays.stream(COLUMNS).map(MetricColumn::getLabel).collect(Collectors.joining(","));
 
     private final String datasetPath;
 
@@ -26,14 +31,51 @@ public class DatasetManager {
         }
     }
 
-    public void appendToDataset(String version, List<MeasuredMethod> measuredMethods) {
-        try (FileWriter fileWriter = new FileWriter(datasetPath, true)) {
-            for (MeasuredMethod method : measuredMethods)
-                fileWriter.append(version).append(",").append(method.toCsvRow()).append("\n");
-            log.info("Dataset updated successfully ({} rows written)", measuredMethods.size());
+    /**
+     * Appends the rows of a release to the dataset, in method id order
+     *
+     * @param version the name of the release
+     * @param table   the metrics measured in the release
+     */
+    public void appendToDataset(String version, MetricTable table) {
+        MethodSymbolTable symbols = table.getSymbols();
+        StringBuilder row = new StringBuilder();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(datasetPath, true))) {
+            for (int id = table.nextRow(0); id >= 0; id = table.nextRow(id + 1)) {
+                row.setLength(0);
+                row.append(version).append(',').append(symbols.getMethodName(id));
+                for (MetricColumn column : COLUMNS) {
+                    row.append(',');
+                    appendValue(row, column, table.getInt(column, id), table.getDouble(column, id));
+                }
+                writer.append(row).append('\n');
+            }
+            log.info("Dataset updated successfully ({} rows written)", table.getRowCount());
         } catch (IOException e) {
             log.error("Error while exporting dataset: {}", e.getMessage());
         }
     }
 
+    /**
+     * Opens an appender writing the rows of a release one at a time, so that rows don't need to be kept in memory
+     *
+     * @param version the name of the release
+     * @return the appender, to be closed once all rows are written
+     * @throws IOException if the dataset can't be opened
+     */
+    public DatasetAppender openAppender(String version) throws IOException {
+        return new DatasetAppender(version, new BufferedWriter(new FileWriter(datasetPath, true)));
+    }
+
+    /**
+     * Appends the value of a column to a dataset row, according to the column type
+     */
+    static void appendValue(StringBuilder row, MetricColumn column, int intValue, double doubleValue) {
+        switch (column.getType()) {
+            case INT -> row.append(intValue);
+            case DOUBLE -> row.append(doubleValue);
+            case BOOLEAN -> row.append(intValue != 0 ? '1' : '0');
+        }
+    }
+
 }
@@ -0,0 +1,217 @@
+package it.uniroma2.dicii.http;
+
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The HTTP client shared by all the requests to remote services (e.g., Jira and SonarCloud).
+ * <p>
+ * A single client keeps connections alive across requests, and responses are compressed with gzip. Concurrent
+ * requests to the same host are bounded by the {@code http.host.<host>.concurrency} property, falling back to
+ * {@code http.host.concurrency}, so that parallel retrievals don't trigger rate limits. Requests failing because of
+ * I/O errors, throttling (429) or unavailable servers (502, 503, 504) are retried up to {@code http.retries} times,
+ * waiting as requested by the {@code Retry-After} header, or with an exponential backoff with jitter otherwise.
+ * </p>
+ */
+@Slf4j
+public class HttpClientManager {
+
+    private static final int DEFAULT_HOST_CONCURRENCY = 4;
+    private static final int DEFAULT_RETRIES = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    // Longest wait requested by a Retry-After header that is honored
+    private static final long MAX_RETRY_AFTER_MILLIS = 300_000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(1);
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 502, 503, 504);
+
+    private static HttpClientManager instance;
+
+    private final HttpClient client;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final int retries;
+
+    private HttpClientManager() {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        String retriesProperty = PropertiesManager.getInstance().getProperty("http.retries");
+        this.retries = retriesProperty != null ? Math.max(0, Integer.parseInt(retriesProperty.trim())) : DEFAULT_RETRIES;
+    }
+
+    public static synchronized HttpClientManager getInstance() {
+        if (instance == null) {
+            instance = new HttpClientManager();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Sends a GET request and parses its response while it is read, retrying on transient failures
+     *
+     * @param url     the URL of the request
+     * @param headers the headers of the request (e.g., Authorization)
+     * @param parser  the parser of the (decompressed) body of a successful response
+     * @return the parsed response
+     * @throws IOException if the request fails, its status is not successful, or the body can't be read, once retries
+     *                     are exhausted, or if the URL is not valid or the body can't be parsed (e.g., malformed JSON)
+     */
+    public <T> T get(String url, Map<String, String> headers, ResponseParser<T> parser) throws IOException {
+        URI uri = toUri(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+        Semaphore permits = hostPermits.computeIfAbsent(String.valueOf(uri.getHost()), host -> new Semaphore(getHostConcurrency(host)));
+
+        try {
+            for (int attempt = 0; ; attempt++) {
+                long delayMillis;
+                permits.acquire();
+                try {
+                    HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                    try (InputStream body = response.body()) {
+                        int status = response.statusCode();
+                        if (status >= 200 && status < 300) return parse(parser, decode(response, body), url);
+                        if (!RETRYABLE_STATUSES.contains(status) || attempt >= retries)
+                            throw new HttpStatusException("HTTP " + status + " for URL: " + url);
+                        delayMillis = getRetryAfterMillis(response, attempt);
+                        log.warn("HTTP {} for URL {}, retrying in {} ms ({}/{})", status, url, delayMillis, attempt + 1, retries);
+                    }
+                } catch (HttpStatusException | ResponseParseException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (attempt >= retries) throw e;
+                    delayMillis = getBackoffMillis(attempt);
+                    log.warn("Request to {} failed ({}), retrying in {} ms ({}/{})", url, e.getMessage(), delayMillis, attempt + 1, retries);
+                } finally {
+                    permits.release();
+                }
+                // Permits are released while waiting, so that other requests to the host may proceed
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + url);
+        }
+    }
+
+    /**
+     * Parses a URL, which must already be encoded by the caller
+     */
+    private static URI toUri(String url) throws IOException {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+    }
+
+    /**
+     * Parses the body of a successful response; bodies the parser rejects with an unchecked exception
+     * (e.g., a JSONException) are not retried, since the same body would be rejected again
+     */
+    private static <T> T parse(ResponseParser<T> parser, InputStream body, String url) throws IOException {
+        try {
+            return parser.parse(body);
+        } catch (RuntimeException e) {
+            throw new ResponseParseException("Unable to parse the response of URL: " + url, e);
+        }
+    }
+
+    /**
+     * Decompresses the body of a response, since the client doesn't do it by itself
+     */
+    private static InputStream decode(HttpResponse<?> response, InputStream body) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding").filter("gzip"::equalsIgnoreCase).isPresent();
+        return gzip ? new GZIPInputStream(body) : body;
+    }
+
+    /**
+     * @return the wait requested by the Retry-After header (in seconds or as a date), or the backoff if missing
+     */
+    private static long getRetryAfterMillis(HttpResponse<?> response, int attempt) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+        if (retryAfter == null) return getBackoffMillis(attempt);
+        try {
+            long millis = Long.parseLong(retryAfter.trim()) * 1000;
+            return Math.min(Math.max(0, millis), MAX_RETRY_AFTER_MILLIS);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                long millis = Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis();
+                return Math.min(Math.max(0, millis), MAX_RETRY_AFTER_MILLIS);
+            } catch (DateTimeParseException ex) {
+                return getBackoffMillis(attempt);
+            }
+        }
+    }
+
+    /**
+     * @return an exponential backoff with full jitter, so that concurrent retries don't hit the host at once
+     */
+    private static long getBackoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(INITIAL_BACKOFF_MILLIS / 2, cap + 1);
+    }
+
+    private static int getHostConcurrency(String host) {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String concurrency = properties.getProperty("http.host." + host + ".concurrency");
+        if (concurrency == null) concurrency = properties.getProperty("http.host.concurrency");
+        return concurrency != null ? Math.max(1, Integer.parseInt(concurrency.trim())) : DEFAULT_HOST_CONCURRENCY;
+    }
+
+    /**
+     * Parses the body of a response while it is read
+     */
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    /**
+     * A response whose status is not successful, once retries are exhausted
+     */
+    private static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private HttpStatusException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A successful response whose body can't be parsed
+     */
+    private static class ResponseParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private ResponseParseException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
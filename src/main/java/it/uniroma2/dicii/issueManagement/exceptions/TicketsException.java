@@ -0,0 +1,13 @@
+package it.uniroma2.dicii.issueManagement.exceptions;
+
+public class TicketsException extends Exception {
+
+    public TicketsException(String message) {
+        super(message);
+    }
+
+    public TicketsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -1,5 +1,6 @@
 package it.uniroma2.dicii.issueManagement.ticket;
 
+import it.uniroma2.dicii.issueManagement.exceptions.TicketsException;
 import it.uniroma2.dicii.issueManagement.model.*;
 import it.uniroma2.dicii.issueManagement.utils.JSONUtils;
 import it.uniroma2.dicii.issueManagement.version.VersionsManager;
@@ -10,19 +11,26 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 public class JiraTicketsManager implements TicketsManager {
 
     private static final DateTimeFormatter formatter = new DateTimeFormatterBuilder().appendPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").appendOffset("+HHMM", "Z").toFormatter();
     private static final int PAGE_SIZE = 100;
+    // Fields of the issues parsed into tickets, the only ones retrieved along with those required by the filter
+    private static final List<String> TICKET_FIELDS = List.of("key", "created", "resolutiondate", "updated", "issuetype",
+            "status", "assignee", "resolution", "versions", "fixVersions");
 
     private final String projectName;
     private final String baseUrl;
@@ -50,49 +58,50 @@ public class JiraTicketsManager implements TicketsManager {
     }
 
     @Override
-    public void retrieveTickets() {
+    public void retrieveTickets() throws TicketsException {
         this.retrieveTickets(new TicketFilter());
     }
 
     /**
-     * Retrieves all tickets corresponding to the filter
+     * Retrieves all tickets corresponding to the filter.
+     * Tickets are added only once all pages are retrieved, so that a failed retrieval never leaves a partial list.
      *
      * @param ticketFilter the ticket's filter
+     * @throws TicketsException if a page can't be retrieved, or its tickets can't be parsed
      */
     @Override
-    public void retrieveTickets(TicketFilter ticketFilter) {
+    public void retrieveTickets(TicketFilter ticketFilter) throws TicketsException {
         int i = 0, j, total = 1;
         String baseUrl = buildUrlFromFilter(ticketFilter);
         String url;
+        List<Ticket> retrievedTickets = new ArrayList<>();
         // Get JSON API for closed bugs w/ AV in the project
         log.info("Retrieving tickets");
         do {
             //Only gets a max of 100 at a time, so must do this multiple times if bugs > 100
-            url = String.format(baseUrl, i, PAGE_SIZE);
+            url = baseUrl + "&startAt=" + i + "&maxResults=" + PAGE_SIZE;
+            // Tickets are parsed while the page is read, without building the JSON of the whole page
+            List<Ticket> pageTickets = new ArrayList<>();
             JSONObject json;
             try {
-                json = jsonUtils.readJsonFromUrl(url);
+                json = jsonUtils.readJsonFromUrl(url, "issues", this::getTicketFromJson, pageTickets);
+                // Set the total number of issues found
+                if (json.getInt("total") != total) total = json.getInt("total");
             } catch (IOException e) {
-                log.error("Unable to retrieve tickets IDs: {}", e.getMessage());
-                return;
+                throw new TicketsException("Unable to retrieve tickets from " + url, e);
+            } catch (RuntimeException e) {
+                throw new TicketsException("Unable to parse tickets retrieved from " + url, e);
             }
 
-            // Retrieves the "issues" array
-            JSONArray issues = json.getJSONArray("issues");
-
-            // Set the total number of issues found
-            if (json.getInt("total") != total) total = json.getInt("total");
-
-            // For each retrieved issue, adds a ticket to the list
-            for (j = 0; j < issues.length(); j++) {
-                // Iterate through each ticket
-                JSONObject ticketJson = issues.getJSONObject(j);
-                tickets.add(getTicketFromJson(ticketJson));
-            }
+            retrievedTickets.addAll(pageTickets);
+            j = pageTickets.size();
+            // A page with no issues would otherwise never end the retrieval
+            if (j == 0) break;
             i += j;
         } while (i < total);
 
-        log.info("Successfully retrieved {} ticket out of {} issues", tickets.size(), total);
+        tickets.addAll(retrievedTickets);
+        log.info("Successfully retrieved {} ticket out of {} issues", retrievedTickets.size(), total);
     }
 
     @Override
@@ -234,45 +243,51 @@ public class JiraTicketsManager implements TicketsManager {
      * Builds a URL to query the Jira REST API according to some filters
      *
      * @param ticketFilter the filter with fields
-     * @return the URL with filters set
+     * @return the URL with filters set, to which the page parameters are appended
      */
     private String buildUrlFromFilter(TicketFilter ticketFilter) {
-        StringBuilder url = new StringBuilder(baseUrl + "/search?jql=project=\"" + projectName + "\"");
+        StringBuilder jql = new StringBuilder("project=\"" + projectName + "\"");
 
         if (ticketFilter.getStatuses() != null && !ticketFilter.getStatuses().isEmpty()) {
-            url.append("AND(");
+            jql.append("AND(");
             boolean first = true;
             for (TicketStatus status : ticketFilter.getStatuses()) {
-                if (!first) url.append("OR");
-                url.append("\"status\"=\"").append(status.getStatus()).append("\"");
+                if (!first) jql.append("OR");
+                jql.append("\"status\"=\"").append(status.getStatus()).append("\"");
                 first = false;
             }
-            url.append(")");
+            jql.append(")");
         }
 
         if (ticketFilter.getTypes() != null && !ticketFilter.getTypes().isEmpty()) {
-            url.append("AND(");
+            jql.append("AND(");
             boolean first = true;
             for (TicketType type : ticketFilter.getTypes()) {
-                if (!first) url.append("OR");
-                url.append("\"issueType\"=\"").append(type).append("\"");
+                if (!first) jql.append("OR");
+                jql.append("\"issueType\"=\"").append(type).append("\"");
                 first = false;
             }
-            url.append(")");
+            jql.append(")");
         }
 
         if (ticketFilter.getResolutions() != null && !ticketFilter.getResolutions().isEmpty()) {
-            url.append("AND(");
+            jql.append("AND(");
             boolean first = true;
             for (ResolutionType type : ticketFilter.getResolutions()) {
-                if (!first) url.append("OR");
-                url.append("\"resolution\"=\"").append(type).append("\"");
+                if (!first) jql.append("OR");
+                jql.append("\"resolution\"=\"").append(type).append("\"");
                 first = false;
             }
-            url.append(")");
+            jql.append(")");
         }
 
-        url.append("&startAt=%d&maxResults=%d");
+        // The query is encoded, since it contains characters not allowed in URLs (e.g., quotes)
+        StringBuilder url = new StringBuilder(baseUrl + "/search?jql=" + URLEncoder.encode(jql.toString(), StandardCharsets.UTF_8));
+
+        // Only the fields parsed into tickets are retrieved, instead of full issues (e.g., descriptions and comments)
+        Set<String> fields = new LinkedHashSet<>(TICKET_FIELDS);
+        if (ticketFilter.getFields() != null) fields.addAll(ticketFilter.getFields());
+        url.append("&fields=").append(URLEncoder.encode(String.join(",", fields), StandardCharsets.UTF_8));
 
         return url.toString();
     }
@@ -1,5 +1,6 @@
 package it.uniroma2.dicii.issueManagement.ticket;
 
+import it.uniroma2.dicii.issueManagement.exceptions.TicketsException;
 import it.uniroma2.dicii.issueManagement.model.Ticket;
 import it.uniroma2.dicii.issueManagement.model.TicketFilter;
 
@@ -14,15 +15,18 @@ public interface TicketsManager {
 
     /**
      * Retrieves all project tickets
+     *
+     * @throws TicketsException if the tickets can't be retrieved
      */
-    void retrieveTickets();
+    void retrieveTickets() throws TicketsException;
 
     /**
      * Retrieves all project tickets corresponding to the filter
      *
      * @param ticketFilter the ticket's filter
+     * @throws TicketsException if the tickets can't be retrieved
      */
-    void retrieveTickets(TicketFilter ticketFilter);
+    void retrieveTickets(TicketFilter ticketFilter) throws TicketsException;
 
     /**
      * Removes all tickets with no commits associated with them.
@@ -1,60 +1,128 @@
 package it.uniroma2.dicii.issueManagement.utils;
 
+import it.uniroma2.dicii.http.HttpClientManager;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.*;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class JSONUtils {
 
     /**
-     * Given the URL of a REST API, retrieves the JSON response from the API and returns it as a JSONObject
+     * Given the URL of a REST API, retrieves the JSON response from the API and returns it as a JSONObject.
+     * Requests go through the shared HTTP client, and responses are parsed while being read.
      *
      * @param url   the URL of the REST API
      * @return      the response from the API
-     * @throws IOException      in case of errors while reading the response
-     * @throws JSONException    in case of errors while parsing the response
+     * @throws IOException  in case of errors while reading or parsing the response (e.g., malformed JSON)
      */
-    public JSONObject readJsonFromUrl(String url) throws IOException, JSONException {
-        try (InputStream is = new URL(url).openStream()) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            String jsonText = readAll(rd);
-            return new JSONObject(jsonText);
-        }
+    public JSONObject readJsonFromUrl(String url) throws IOException {
+        return HttpClientManager.getInstance().get(url, Map.of(), body -> new JSONObject(new JSONTokener(toReader(body))));
     }
 
     /**
-     * Given the URL of a REST API, retrieves the JSON response from the API and returns it as a JSONArray
+     * Given the URL of a REST API, retrieves the JSON response from the API and returns it as a JSONArray.
+     * Requests go through the shared HTTP client, and responses are parsed while being read.
      *
      * @param url   the URL of the REST API
      * @return      the response from the API
-     * @throws IOException      in case of errors while reading the response
-     * @throws JSONException    in case of errors while parsing the response
+     * @throws IOException  in case of errors while reading or parsing the response (e.g., malformed JSON)
      */
-    public JSONArray readJsonArrayFromUrl(String url) throws IOException, JSONException {
-        try (InputStream is = new URL(url).openStream()) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            String jsonText = readAll(rd);
-            return new JSONArray(jsonText);
-        }
+    public JSONArray readJsonArrayFromUrl(String url) throws IOException {
+        return HttpClientManager.getInstance().get(url, Map.of(), body -> new JSONArray(new JSONTokener(toReader(body))));
     }
 
     /**
-     * Reads all content from a reader
+     * Given the URL of a REST API, retrieves the JSON object returned by the API, mapping each object of one of its arrays
+     * as soon as it is parsed, so that large pages (e.g., Jira issues) are never held in memory as a whole.
+     * Elements are added only once the whole response is read, so that retried requests don't add them twice.
+     * Errors of the mapper are not parsing errors of the response: they are rethrown as they are, once the response is read.
      *
-     * @param rd    the reader from which reading
-     * @return      a string with the content of the reader
-     * @throws IOException  in case of errors while reading from the reader
+     * @param url       the URL of the REST API
+     * @param arrayKey  the key of the array whose objects are mapped (e.g., issues)
+     * @param mapper    the mapper of the objects of the array
+     * @param elements  the list the mapped objects are added to, in order
+     * @return          the response from the API, without the mapped array
+     * @throws IOException  in case of errors while reading or parsing the response (e.g., malformed JSON)
+     */
+    public <T> JSONObject readJsonFromUrl(String url, String arrayKey, Function<JSONObject, T> mapper, List<T> elements) throws IOException {
+        List<T> parsed = new ArrayList<>();
+        AtomicReference<RuntimeException> mapperError = new AtomicReference<>();
+        JSONObject json = HttpClientManager.getInstance().get(url, Map.of(), body -> {
+            parsed.clear();
+            mapperError.set(null);
+            return streamJsonObject(new JSONTokener(toReader(body)), arrayKey, element -> {
+                // Once an element fails, the others are only parsed, so that the response is still read as a whole
+                if (mapperError.get() != null) return;
+                try {
+                    parsed.add(mapper.apply(element));
+                } catch (RuntimeException e) {
+                    mapperError.set(e);
+                }
+            });
+        });
+        if (mapperError.get() != null) throw mapperError.get();
+        elements.addAll(parsed);
+        return json;
+    }
+
+    /**
+     * Parses a JSON object member by member, streaming the objects of the given array instead of storing them
      */
-    private String readAll(Reader rd) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = rd.read()) != -1) {
-            sb.append((char) cp);
+    private static JSONObject streamJsonObject(JSONTokener tokener, String arrayKey, Consumer<JSONObject> consumer) {
+        if (tokener.nextClean() != '{') throw tokener.syntaxError("A JSONObject text must begin with '{'");
+        JSONObject object = new JSONObject();
+        if (tokener.nextClean() == '}') return object;
+        tokener.back();
+
+        while (true) {
+            String key = tokener.nextValue().toString();
+            if (tokener.nextClean() != ':') throw tokener.syntaxError("Expected a ':' after a key");
+            if (key.equals(arrayKey)) streamJsonArray(tokener, consumer);
+            else object.put(key, tokener.nextValue());
+
+            switch (tokener.nextClean()) {
+                case ',' -> {
+                    // Next member
+                }
+                case '}' -> {
+                    return object;
+                }
+                default -> throw tokener.syntaxError("Expected a ',' or '}'");
+            }
         }
-        return sb.toString();
+    }
+
+    private static void streamJsonArray(JSONTokener tokener, Consumer<JSONObject> consumer) {
+        if (tokener.nextClean() != '[') throw tokener.syntaxError("A JSONArray text must begin with '['");
+        if (tokener.nextClean() == ']') return;
+        tokener.back();
+
+        while (true) {
+            Object element = tokener.nextValue();
+            if (element instanceof JSONObject jsonObject) consumer.accept(jsonObject);
+
+            switch (tokener.nextClean()) {
+                case ',' -> {
+                    // Next element
+                }
+                case ']' -> {
+                    return;
+                }
+                default -> throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    private static Reader toReader(InputStream body) {
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,113 @@
+package it.uniroma2.dicii.maven;
+
+import it.uniroma2.dicii.maven.model.MavenModule;
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+public class MavenModuleDiscoverer {
+
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String SOURCE_ROOT = "src/main/java";
+
+    private final Path repoPath;
+
+    public MavenModuleDiscoverer(String repoPath) {
+        this.repoPath = Paths.get(repoPath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Discovers the modules of the project by recursively reading the {@code <modules>} lists of the root
+     * {@code pom.xml} and of its child POMs. Only modules with a production source root are returned.
+     * If the repository has no root POM (or no module declares sources), the whole repository is returned
+     * as a single flat module, matching the behavior of a non-modular analysis.
+     *
+     * @return the list of modules owning production sources
+     */
+    public List<MavenModule> discoverModules() {
+        Set<Path> moduleDirs = new LinkedHashSet<>();
+        collectModules(repoPath, moduleDirs);
+
+        List<MavenModule> modules = new ArrayList<>();
+        for (Path moduleDir : moduleDirs) {
+            Path sourceRoot = moduleDir.resolve(SOURCE_ROOT);
+            if (Files.isDirectory(sourceRoot))
+                modules.add(new MavenModule(toRelativePath(moduleDir), moduleDir, sourceRoot, toRelativePath(sourceRoot)));
+        }
+
+        if (modules.isEmpty()) {
+            log.warn("No Maven modules with sources found in {}. Treating the repository as a flat tree.", repoPath);
+            modules.add(new MavenModule("", repoPath, repoPath, ""));
+        }
+        log.info("Discovered {} module(s) with sources", modules.size());
+        return modules;
+    }
+
+    /**
+     * Adds the given module directory and, recursively, all of its declared sub-modules to the given set.
+     *
+     * @param moduleDir  the directory containing the module's {@code pom.xml}
+     * @param moduleDirs the set of discovered module directories
+     */
+    private void collectModules(Path moduleDir, Set<Path> moduleDirs) {
+        Path pom = moduleDir.resolve(POM_FILE_NAME);
+        if (!Files.isRegularFile(pom) || !moduleDirs.add(moduleDir)) return;
+
+        for (String module : readModuleList(pom)) {
+            Path childDir = moduleDir.resolve(module).normalize();
+            // A module entry may also point directly to a POM file
+            if (childDir.getFileName() != null && childDir.getFileName().toString().endsWith(".xml"))
+                childDir = childDir.getParent();
+            if (childDir.startsWith(repoPath)) collectModules(childDir, moduleDirs);
+            else log.warn("Module {} declared in {} is outside the repository. Skipping.", module, pom);
+        }
+    }
+
+    private String toRelativePath(Path path) {
+        return repoPath.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Reads all {@code <module>} entries declared in a POM, including the ones declared within profiles.
+     *
+     * @param pom the POM file to read
+     * @return the module entries, or an empty list if the POM cannot be parsed
+     */
+    private List<String> readModuleList(Path pom) {
+        List<String> modules = new ArrayList<>();
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(pom.toFile());
+
+            NodeList moduleNodes = document.getElementsByTagName("module");
+            for (int i = 0; i < moduleNodes.getLength(); i++) {
+                Element moduleElement = (Element) moduleNodes.item(i);
+                // Only considers entries of a <modules> list
+                if (moduleElement.getParentNode() != null && "modules".equals(moduleElement.getParentNode().getNodeName())) {
+                    String module = moduleElement.getTextContent().trim();
+                    if (!module.isEmpty() && !modules.contains(module)) modules.add(module);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unable to read modules from {}: {}", pom, e.getMessage());
+        }
+        return modules;
+    }
+
+}
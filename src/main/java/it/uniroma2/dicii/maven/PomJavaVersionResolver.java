@@ -0,0 +1,305 @@
+package it.uniroma2.dicii.maven;
+
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the Java version required by a project from its root {@code pom.xml} and its parent chain, without
+ * running Maven.
+ * <p>
+ * POMs are read with a streaming parser, collecting only properties, parent coordinates and the configuration of the
+ * compiler plugin. The version is the first one found among the {@code targetJdk}, {@code maven.compiler.release},
+ * {@code maven.compiler.target} and {@code maven.compiler.source} properties, and the {@code release}, {@code target}
+ * and {@code source} options of the compiler plugin, after property interpolation; child POMs override their parents.
+ * Parents are looked up at their relative path first, then in the local Maven repository. Profiles are not evaluated.
+ * </p><p>
+ * Results are memoized by the Git blob ids of the POMs of the chain, so that releases sharing the same POMs are
+ * resolved once.
+ * </p>
+ */
+@Slf4j
+public class PomJavaVersionResolver {
+
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String COMPILER_PLUGIN = "maven-compiler-plugin";
+    private static final List<String> VERSION_PROPERTIES = List.of("targetJdk", "maven.compiler.release", "maven.compiler.target", "maven.compiler.source");
+    private static final List<String> COMPILER_OPTIONS = List.of("release", "target", "source");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)}");
+    // Max number of parents followed, guarding against cycles
+    private static final int MAX_DEPTH = 10;
+
+    private final Path repoPath;
+    // Versions resolved by blob id of the root POM, validated against the blob ids of the whole chain
+    private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    public PomJavaVersionResolver(String repoPath) {
+        this.repoPath = Paths.get(repoPath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves the Java version required by the checked-out project
+     *
+     * @return the Java version (e.g., 1.8, 11), or null if it can't be resolved from the POMs
+     */
+    public String resolveJavaVersion() {
+        Path rootPom = repoPath.resolve(POM_FILE_NAME);
+        try {
+            byte[] rootContent = Files.readAllBytes(rootPom);
+            String rootBlobId = blobId(rootContent);
+            Resolution cached = resolutions.get(rootBlobId);
+            if (cached != null && cached.isValid()) {
+                log.debug("Java version {} resolved from cache (root pom blob {})", cached.version, rootBlobId);
+                return cached.version;
+            }
+
+            Resolution resolution = resolve(rootPom, rootContent);
+            resolutions.put(rootBlobId, resolution);
+            return resolution.version;
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Unable to resolve the Java version from {}: {}", rootPom, e.getMessage());
+            return null;
+        }
+    }
+
+    private Resolution resolve(Path rootPom, byte[] rootContent) throws IOException, XMLStreamException {
+        // POMs of the chain, from the root pom to the farthest ancestor
+        List<PomInfo> chain = new ArrayList<>();
+        Map<Path, String> blobIds = new HashMap<>();
+        Path pomPath = rootPom;
+        byte[] content = rootContent;
+        while (content != null && chain.size() < MAX_DEPTH) {
+            blobIds.put(pomPath, blobId(content));
+            PomInfo pom = parse(content);
+            chain.add(pom);
+            if (pom.parentArtifactId == null) break;
+
+            pomPath = findParentPom(pomPath, pom);
+            content = pomPath != null ? Files.readAllBytes(pomPath) : null;
+            if (pomPath == null)
+                log.debug("Parent {}:{}:{} not found, resolving without it", pom.parentGroupId, pom.parentArtifactId, pom.parentVersion);
+        }
+
+        // Properties of children override the ones of their parents
+        Map<String, String> properties = new HashMap<>();
+        Map<String, String> compilerOptions = new HashMap<>();
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            properties.putAll(chain.get(i).properties);
+            compilerOptions.putAll(chain.get(i).compilerOptions);
+        }
+        PomInfo root = chain.get(0);
+        if (root.version != null) properties.putIfAbsent("project.version", root.version);
+
+        String version = null;
+        for (String property : VERSION_PROPERTIES) {
+            version = interpolate(properties.get(property), properties);
+            if (version != null) break;
+        }
+        for (int i = 0; version == null && i < COMPILER_OPTIONS.size(); i++)
+            version = interpolate(compilerOptions.get(COMPILER_OPTIONS.get(i)), properties);
+
+        return new Resolution(version, blobIds);
+    }
+
+    /**
+     * Finds the POM of the parent, at its relative path or in the local Maven repository
+     */
+    private Path findParentPom(Path childPom, PomInfo child) {
+        String relativePath = child.parentRelativePath != null ? child.parentRelativePath.trim() : "../pom.xml";
+        if (!relativePath.isEmpty()) {
+            Path candidate = childPom.getParent().resolve(relativePath).normalize();
+            if (Files.isDirectory(candidate)) candidate = candidate.resolve(POM_FILE_NAME);
+            if (Files.isRegularFile(candidate)) {
+                // The POM at the relative path is the parent only if it has the declared coordinates
+                try {
+                    PomInfo candidateInfo = parse(Files.readAllBytes(candidate));
+                    if (child.parentArtifactId.equals(candidateInfo.artifactId)) return candidate;
+                } catch (IOException | XMLStreamException e) {
+                    log.debug("Unable to read candidate parent {}: {}", candidate, e.getMessage());
+                }
+            }
+        }
+
+        if (child.parentGroupId == null || child.parentVersion == null) return null;
+        Path repository = getLocalRepository();
+        if (repository == null) return null;
+        Path candidate = repository.resolve(child.parentGroupId.replace('.', '/')).resolve(child.parentArtifactId)
+                .resolve(child.parentVersion).resolve(child.parentArtifactId + "-" + child.parentVersion + ".pom");
+        return Files.isRegularFile(candidate) ? candidate : null;
+    }
+
+    private static Path getLocalRepository() {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String repository = properties.getProperty("m2.repository");
+        if (repository != null && Paths.get(repository.trim()).isAbsolute()) return Paths.get(repository.trim());
+        String m2Directory = properties.getProperty("m2.directory");
+        return m2Directory != null ? Paths.get(m2Directory, "repository") : null;
+    }
+
+    /**
+     * Replaces the ${...} placeholders of a value with the given properties
+     *
+     * @return the interpolated value, or null if the value is missing or a placeholder can't be resolved
+     */
+    private static String interpolate(String value, Map<String, String> properties) {
+        if (value == null) return null;
+        String result = value.trim();
+        // Each round resolves one level of nested placeholders
+        for (int round = 0; round < MAX_DEPTH && result.contains("${"); round++) {
+            Matcher matcher = PLACEHOLDER.matcher(result);
+            StringBuilder sb = new StringBuilder();
+            while (matcher.find()) {
+                String replacement = properties.get(matcher.group(1));
+                if (replacement == null) return null;
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement.trim()));
+            }
+            matcher.appendTail(sb);
+            result = sb.toString();
+        }
+        return result.isEmpty() || result.contains("${") ? null : result;
+    }
+
+    /**
+     * Reads the elements of a POM needed to resolve the Java version
+     */
+    private static PomInfo parse(byte[] content) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(content));
+
+        PomInfo pom = new PomInfo();
+        // Path of the current element, without the root, e.g., "build/plugins/plugin/configuration"
+        Deque<String> elements = new ArrayDeque<>();
+        String path = "";
+        String pluginArtifactId = null;
+        Map<String, String> pluginOptions = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (!elements.isEmpty() || !reader.getLocalName().equals("project")) {
+                        elements.push(path);
+                        path = path.isEmpty() ? reader.getLocalName() : path + "/" + reader.getLocalName();
+                    } else {
+                        elements.push("");
+                    }
+                    if (isPlugin(path)) {
+                        pluginArtifactId = null;
+                        pluginOptions.clear();
+                    }
+                    text.setLength(0);
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String value = text.toString().trim();
+                    switch (path) {
+                        case "artifactId" -> pom.artifactId = value;
+                        case "version" -> pom.version = value;
+                        case "parent/groupId" -> pom.parentGroupId = value;
+                        case "parent/artifactId" -> pom.parentArtifactId = value;
+                        case "parent/version" -> pom.parentVersion = value;
+                        case "parent/relativePath" -> pom.parentRelativePath = value;
+                        default -> {
+                            if (path.startsWith("properties/") && path.indexOf('/', "properties/".length()) < 0)
+                                pom.properties.put(path.substring("properties/".length()), value);
+                            else if (isPlugin(parentOf(path)) && path.endsWith("/artifactId"))
+                                pluginArtifactId = value;
+                            else if (isPlugin(parentOf(parentOf(path))) && parentOf(path).endsWith("/configuration"))
+                                pluginOptions.put(path.substring(path.lastIndexOf('/') + 1), value);
+                            else if (isPlugin(path) && COMPILER_PLUGIN.equals(pluginArtifactId))
+                                for (String option : COMPILER_OPTIONS)
+                                    if (pluginOptions.containsKey(option)) pom.compilerOptions.putIfAbsent(option, pluginOptions.get(option));
+                        }
+                    }
+                    path = elements.isEmpty() ? "" : elements.pop();
+                    text.setLength(0);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return pom;
+    }
+
+    private static boolean isPlugin(String path) {
+        return path.equals("build/plugins/plugin") || path.equals("build/pluginManagement/plugins/plugin");
+    }
+
+    private static String parentOf(String path) {
+        int separator = path.lastIndexOf('/');
+        return separator < 0 ? "" : path.substring(0, separator);
+    }
+
+    /**
+     * Computes the Git blob id of a file's content, as {@code git hash-object}
+     */
+    private static String blobId(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static class PomInfo {
+        private String artifactId;
+        private String version;
+        private String parentGroupId;
+        private String parentArtifactId;
+        private String parentVersion;
+        private String parentRelativePath;
+        private final Map<String, String> properties = new HashMap<>();
+        private final Map<String, String> compilerOptions = new HashMap<>();
+    }
+
+    private static class Resolution {
+        private final String version;
+        // Blob ids of the POMs of the chain the version was resolved from
+        private final Map<Path, String> blobIds;
+
+        private Resolution(String version, Map<Path, String> blobIds) {
+            this.version = version;
+            this.blobIds = blobIds;
+        }
+
+        /**
+         * @return whether all the POMs of the chain are unchanged
+         */
+        private boolean isValid() {
+            for (Map.Entry<Path, String> entry : blobIds.entrySet()) {
+                try {
+                    if (!entry.getValue().equals(blobId(Files.readAllBytes(entry.getKey())))) return false;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package it.uniroma2.dicii.maven.model;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * A Maven module of the analyzed project.
+ * The source root is the directory holding the module's production sources (i.e., {@code src/main/java});
+ * for non-Maven (flat) trees, the single root module uses the repository directory itself.
+ */
+@Data
+public class MavenModule {
+
+    // Module path relative to the repository root ("" for the root module)
+    private final String relativePath;
+
+    private final Path path;
+
+    private final Path sourceRoot;
+
+    // Source root path relative to the repository root ("" if the sources are the repository itself)
+    private final String relativeSourceRoot;
+
+    public String getName() {
+        return relativePath.isEmpty() ? "<root>" : relativePath;
+    }
+
+}
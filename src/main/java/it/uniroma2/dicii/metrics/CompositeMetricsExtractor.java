@@ -1,87 +1,203 @@
 package it.uniroma2.dicii.metrics;
 
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricTable;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
+import it.uniroma2.dicii.metrics.stream.MergeJoin;
+import it.uniroma2.dicii.metrics.stream.MethodRecordStream;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Runs a set of independent extractors on the same release.
+ * Each extractor writes into its own table, which is copied into the release's table as soon as the extractor
+ * completes; an extractor that fails or times out only leaves its own columns empty, without affecting the others.
+ * <p>
+ * If an executor is given, extractors run concurrently on it, each one bounded by its own timeout;
+ * otherwise, they run one after another and timeouts are ignored.
+ * </p><p>
+ * When streamed, all extractors run concurrently and their records are merge-joined as they arrive,
+ * so that only the records not yet joined are kept in memory.
+ * </p>
+ */
 @Slf4j
 public class CompositeMetricsExtractor implements MetricsExtractor {
 
     private final List<MetricsExtractor> extractors;
+    // Max duration of each extractor; null if unbounded
+    private final List<Duration> timeouts;
+    private final ExecutorService executor;
 
+    /**
+     * Creates a composite extractor running its extractors sequentially
+     */
     public CompositeMetricsExtractor() {
+        this(null);
+    }
+
+    /**
+     * @param executor the executor running the extractors concurrently; if null, extractors run sequentially
+     */
+    public CompositeMetricsExtractor(ExecutorService executor) {
         this.extractors = new ArrayList<>();
+        this.timeouts = new ArrayList<>();
+        this.executor = executor;
     }
 
     public void addExtractor(MetricsExtractor extractor) {
+        addExtractor(extractor, null);
+    }
+
+    /**
+     * @param extractor the extractor to run
+     * @param timeout   the max duration of the extractor, after which its results are discarded; if null, it is unbounded
+     */
+    public void addExtractor(MetricsExtractor extractor, Duration timeout) {
         this.extractors.add(extractor);
+        this.timeouts.add(timeout);
+    }
+
+    /**
+     * Streams the joined records of all extractors. Each extractor runs on its own thread, independently of the
+     * configured executor, since the merge-join needs every stream to make progress.
+     *
+     * @param files the files to analyze, sorted by relative path
+     * @param sink  the consumer of the joined records, receiving them in the canonical order
+     */
+    @Override
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
+        AtomicInteger threadsCount = new AtomicInteger();
+        ExecutorService streamsExecutor = Executors.newFixedThreadPool(Math.max(1, extractors.size()), r -> {
+            Thread thread = new Thread(r, "metrics-stream-" + threadsCount.incrementAndGet());
+            // Threads of timed out extractors must not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<MethodRecordStream> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < extractors.size(); i++) {
+                MetricsExtractor extractor = extractors.get(i);
+                log.info("Streaming extractor: {}", extractor.getName());
+                streams.add(MethodRecordStream.start(extractor.getName(), extractorSink -> extractor.streamMetrics(files, extractorSink), streamsExecutor, timeouts.get(i)));
+            }
+            int methodsCount = MergeJoin.mergeJoin(streams, sink);
+            log.info("Streamed metrics for {} methods", methodsCount);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while merging the extractors' records");
+            Thread.currentThread().interrupt();
+        } finally {
+            streamsExecutor.shutdownNow();
+        }
     }
 
     @Override
-    public List<MeasuredMethod> extractMetrics() {
-        Map<String, MeasuredMethod> mergedResults = new HashMap<>();
-
-        // Run all extractors
-        for (MetricsExtractor extractor : extractors) {
-            log.info("Running extractor: {}", extractor.getClass().getSimpleName());
-            List<MeasuredMethod> results = extractor.extractMetrics();
-
-            // Handle null results
-            if (results == null) {
-                log.error("Extractor {} returned null results", extractor.getClass().getSimpleName());
-                break;
+    public void extractMetrics(List<SourceFile> files, MetricTable table) {
+        List<ExtractorTask> tasks = new ArrayList<>();
+        for (MetricsExtractor extractor : extractors)
+            tasks.add(new ExtractorTask(extractor, files, new MetricTable(table.getSymbols()), table));
+
+        if (executor == null) runSequentially(tasks);
+        else runConcurrently(tasks);
+        log.info("Extracted metrics for {} methods", table.getRowCount());
+    }
+
+    private void runSequentially(List<ExtractorTask> tasks) {
+        for (ExtractorTask task : tasks) {
+            log.info("Running extractor: {}", task.getName());
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Extractor {} failed, its metrics are left empty: {}", task.getName(), e.getMessage(), e);
             }
+        }
+    }
+
+    private void runConcurrently(List<ExtractorTask> tasks) {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (ExtractorTask task : tasks) {
+            log.info("Submitting extractor: {}", task.getName());
+            futures.add(executor.submit(task));
+        }
+
+        // Waits for the extractors by deadline, so that each timeout is enforced as soon as it expires
+        List<Integer> waitOrder = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) waitOrder.add(i);
+        waitOrder.sort(Comparator.comparing(timeouts::get, Comparator.nullsLast(Comparator.naturalOrder())));
 
-            for (MeasuredMethod method : results) {
-                mergedResults.merge(method.getMethodName(), method, this::mergeMethods);
+        for (int i : waitOrder) {
+            ExtractorTask task = tasks.get(i);
+            Future<?> future = futures.get(i);
+            Duration timeout = timeouts.get(i);
+            try {
+                // Timeouts are measured from the submission, since extractors run in parallel
+                if (timeout == null) future.get();
+                else future.get(timeout.toNanos() - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                log.error("Extractor {} failed, its metrics are left empty: {}", task.getName(), e.getCause().getMessage(), e.getCause());
+            } catch (TimeoutException e) {
+                task.abandon();
+                future.cancel(true);
+                log.error("Extractor {} timed out after {}, its metrics are left empty", task.getName(), timeout);
+            } catch (InterruptedException e) {
+                log.error("Interrupted while waiting for extractor {}", task.getName());
+                tasks.forEach(ExtractorTask::abandon);
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                return;
             }
         }
-        return new ArrayList<>(mergedResults.values());
     }
 
     /**
-     * Merges incoming data into the existing method object.
-     * Logic: Overwrite ONLY if the existing value is null and the incoming value is non-null.
+     * Runs an extractor on its own table, and copies it into the release's table on completion,
+     * unless the extractor has been abandoned in the meantime (e.g., because of a timeout).
      */
-    private MeasuredMethod mergeMethods(MeasuredMethod existing, MeasuredMethod incoming) {
-        switch (incoming.getExtractedFrom()) {
-            case SONAR: {
-                existing.setBlockerSmellsCount(incoming.getBlockerSmellsCount());
-                existing.setMajorSmellsCount(incoming.getMajorSmellsCount());
-                existing.setCriticalSmellsCount(incoming.getCriticalSmellsCount());
-                existing.setMinorSmellsCount(incoming.getMinorSmellsCount());
-                existing.setInfoSmellsCount(incoming.getInfoSmellsCount());
-                existing.setDefectCount(incoming.getDefectCount());
-                break;
-            }
-            case CK: {
-                existing.setCyclomaticComplexity(incoming.getCyclomaticComplexity());
-                existing.setMaxNestingDepth(incoming.getMaxNestingDepth());
-                existing.setHasJavaDocs(incoming.isHasJavaDocs());
-                existing.setSourceLinesOfCode(incoming.getSourceLinesOfCode());
-                existing.setParametersCount(incoming.getParametersCount());
-                existing.setFanIn(incoming.getFanIn());
-                existing.setFanOut(incoming.getFanOut());
-                break;
-            }
-            case VCS: {
-                existing.setChurn(incoming.getChurn());
-                existing.setDeveloperCount(incoming.getDeveloperCount());
-                break;
-            }
-            case JAVA_PARSER: {
-                existing.setCognitiveComplexity(incoming.getCognitiveComplexity());
-                existing.setCommentDensity(incoming.getCommentDensity());
-                break;
-            }
-            default: {
-                log.warn("Unknown source for metrics: {}", incoming.getExtractedFrom());
-            }
+    private static class ExtractorTask implements Runnable {
+
+        private final MetricsExtractor extractor;
+        private final List<SourceFile> files;
+        private final MetricTable results;
+        private final MetricTable target;
+        private boolean abandoned;
+
+        private ExtractorTask(MetricsExtractor extractor, List<SourceFile> files, MetricTable results, MetricTable target) {
+            this.extractor = extractor;
+            this.files = files;
+            this.results = results;
+            this.target = target;
+        }
+
+        @Override
+        public void run() {
+            extractor.extractMetrics(files, results);
+            merge();
+        }
+
+        private synchronized void merge() {
+            if (abandoned) return;
+            target.copyFrom(results);
+            log.info("Extractor {} completed ({} methods)", getName(), results.getRowCount());
+        }
+
+        private synchronized void abandon() {
+            abandoned = true;
+        }
+
+        private String getName() {
+            return extractor.getName();
         }
-        return existing;
     }
-}
\ No newline at end of file
+}
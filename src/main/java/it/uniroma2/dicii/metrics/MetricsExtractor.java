@@ -1,14 +1,125 @@
 package it.uniroma2.dicii.metrics;
 
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.MetricTable;
+import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * An extractor of method metrics.
+ * <p>
+ * Extractors are services discovered through {@link java.util.ServiceLoader}, and live for a whole run:
+ * they are opened once, notified of each release before extracting its metrics, and closed at the end,
+ * so that they can keep state (e.g., caches or open repositories) across releases.
+ * Extraction may be invoked concurrently on disjoint sets of files of the same release.
+ * </p>
+ */
 public interface MetricsExtractor {
 
     /**
-     * Extracts the metrics from the repository using the default CK
+     * Called once, before the first release
+     *
+     * @param run the run the extractor takes part in
      */
-    List<MeasuredMethod> extractMetrics();
+    default void open(ExtractionRun run) {
+    }
+
+    /**
+     * Called at each release, after its checkout and before extracting its metrics
+     *
+     * @param snapshot         the release to be analyzed
+     * @param previousSnapshot the previous release, or null for the first one
+     */
+    default void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+    }
+
+    /**
+     * Called once, after the last release
+     */
+    default void close() {
+    }
+
+    /**
+     * Extracts the metrics of the given files, emitting a record for each measured method.
+     * Records must be emitted in the canonical order (see {@link MethodRecord#CANONICAL_ORDER}), only contain
+     * the columns owned by the extractor, and refer to the given files.
+     * <p>
+     * Extractors should emit the records of a file as soon as it is analyzed, so that memory is proportional to the
+     * methods of a single file. Extractors whose metrics depend on the whole set of files may buffer all of their
+     * records instead: the CK extractor emits them once all files are analyzed, since fan-in keeps changing
+     * until then.
+     * </p>
+     *
+     * @param files the files to analyze, sorted by relative path
+     * @param sink  the consumer of the records
+     */
+    void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink);
+
+    /**
+     * Extracts the metrics of the given files, writing them into the given table.
+     * Methods are identified through the table's symbol table, and only the columns owned by the extractor are written.
+     *
+     * @param files the files to analyze, sorted by relative path
+     * @param table the table receiving the measured methods
+     */
+    default void extractMetrics(List<SourceFile> files, MetricTable table) {
+        streamMetrics(files, table::addRecord);
+    }
+
+    /**
+     * @return the name of the extractor, used for logging, caching and configuration
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return the type of the extractor, owning its output columns; null for extractors composing other ones
+     */
+    default MetricsExtractorType getType() {
+        return null;
+    }
+
+    /**
+     * @return the inputs the extractor depends on
+     */
+    default Set<ExtractorInput> getInputs() {
+        return EnumSet.of(ExtractorInput.SOURCES);
+    }
+
+    /**
+     * @return the columns written by the extractor
+     */
+    default Set<MetricColumn> getOutputColumns() {
+        Set<MetricColumn> columns = EnumSet.noneOf(MetricColumn.class);
+        for (MetricColumn column : MetricColumn.values())
+            if (column.getOwner() != null && column.getOwner() == getType()) columns.add(column);
+        return columns;
+    }
+
+    /**
+     * @return whether the metrics of the methods of a module only depend on the files of that module, so that
+     * the modules of a release can be analyzed separately; extractors relating methods across modules (e.g., fan-in)
+     * must analyze all the files of a release at once
+     */
+    default boolean isModuleLocal() {
+        return true;
+    }
+
+    /**
+     * @return the cost of the extractor relative to the other ones (the higher, the slower), used for scheduling
+     */
+    default int getRelativeCost() {
+        return 1;
+    }
 
 }
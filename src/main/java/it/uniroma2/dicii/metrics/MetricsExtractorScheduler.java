@@ -0,0 +1,106 @@
+package it.uniroma2.dicii.metrics;
+
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Drives the lifecycle of the extractors registered as {@link MetricsExtractor} services.
+ * Extractors are loaded and opened once per run, and at each release the ones whose inputs are available
+ * are notified and composed, starting from the most expensive ones so that they are submitted first.
+ * Module-local extractors are wrapped so that they analyze each module separately, while the other ones
+ * analyze all the files of a release at once.
+ */
+@Slf4j
+public class MetricsExtractorScheduler implements Closeable {
+
+    private final List<MetricsExtractor> extractors;
+
+    private MetricsExtractorScheduler(List<MetricsExtractor> extractors) {
+        this.extractors = extractors;
+    }
+
+    /**
+     * Loads and opens all the registered extractors; extractors failing to open are discarded
+     *
+     * @param run the run the extractors take part in
+     * @return the scheduler of the loaded extractors
+     */
+    public static MetricsExtractorScheduler load(ExtractionRun run) {
+        List<MetricsExtractor> extractors = new ArrayList<>();
+        // Results of source-only extractors are reused for modules whose sources did not change
+        ModuleResultCache moduleResultCache = new ModuleResultCache();
+        for (MetricsExtractor loadedExtractor : ServiceLoader.load(MetricsExtractor.class)) {
+            MetricsExtractor extractor = loadedExtractor;
+            if (extractor.isModuleLocal()) {
+                // History-based metrics change between releases even for identical sources, and classpath-based ones
+                // along with the dependencies of the module, so they are never cached
+                boolean sourceOnly = extractor.getInputs().equals(EnumSet.of(ExtractorInput.SOURCES));
+                extractor = new ModuleParallelMetricsExtractor(extractor, sourceOnly ? moduleResultCache : null);
+            }
+            try {
+                extractor.open(run);
+                extractors.add(extractor);
+                log.info("Loaded extractor {} (inputs: {}, relative cost: {})", extractor.getName(), extractor.getInputs(), extractor.getRelativeCost());
+            } catch (RuntimeException e) {
+                log.error("Extractor {} failed to open, it is disabled: {}", extractor.getName(), e.getMessage(), e);
+            }
+        }
+        extractors.sort(Comparator.comparingInt(MetricsExtractor::getRelativeCost).reversed());
+        return new MetricsExtractorScheduler(extractors);
+    }
+
+    /**
+     * Notifies the extractors of a new release, and composes the ones able to analyze it.
+     * Extractors whose inputs are not provided by the release, or failing to prepare for it, are skipped.
+     *
+     * @param snapshot         the release to be analyzed
+     * @param previousSnapshot the previous release, or null for the first one
+     * @param executor         the executor running the extractors concurrently; if null, they run sequentially
+     * @param timeouts         the timeout of each extractor, by name; null if unbounded
+     * @return the extractor running all the available extractors on the release's files
+     */
+    public CompositeMetricsExtractor onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot, ExecutorService executor, Function<String, Duration> timeouts) {
+        CompositeMetricsExtractor compositeExtractor = new CompositeMetricsExtractor(executor);
+        for (MetricsExtractor extractor : extractors) {
+            List<ExtractorInput> missingInputs = extractor.getInputs().stream().filter(input -> !snapshot.provides(input)).toList();
+            if (!missingInputs.isEmpty()) {
+                log.error("Missing inputs {} for release {}. Cannot execute {} metrics extraction.", missingInputs, snapshot.getTagName(), extractor.getName());
+                continue;
+            }
+            try {
+                extractor.onRelease(snapshot, previousSnapshot);
+            } catch (RuntimeException e) {
+                log.error("Extractor {} failed to prepare for release {}, it is skipped: {}", extractor.getName(), snapshot.getTagName(), e.getMessage(), e);
+                continue;
+            }
+            compositeExtractor.addExtractor(extractor, timeouts.apply(extractor.getName()));
+        }
+        return compositeExtractor;
+    }
+
+    /**
+     * Closes all the extractors, after the last release
+     */
+    @Override
+    public void close() {
+        for (MetricsExtractor extractor : extractors) {
+            try {
+                extractor.close();
+            } catch (RuntimeException e) {
+                log.warn("Extractor {} failed to close: {}", extractor.getName(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package it.uniroma2.dicii.metrics;
+
+import it.uniroma2.dicii.maven.model.MavenModule;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.MetricTable;
+import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
+import it.uniroma2.dicii.metrics.stream.MethodRecordStream;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.vcsManagement.tree.GitTreeManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs an extractor separately on the files of each module of a multi-module project.
+ * Each module is analyzed as an independent task on a work-stealing pool, writing into its own table,
+ * and the per-module tables are copied into the release's table at the end. A module failure only drops the results of that module.
+ * Only extractors whose metrics of a module depend on the module's files alone can be wrapped (see {@link MetricsExtractor#isModuleLocal()}).
+ * <p>
+ * The wrapper lives for the whole run along with the wrapped extractor: its pool is created when opened,
+ * sized by the {@code metrics.extractors.threads} property, and shut down when closed.
+ * </p><p>
+ * When streamed, modules are analyzed on a bounded pool and their records are concatenated by source root:
+ * since source roots are disjoint path prefixes, the result is still in the canonical order. Streamed results
+ * are never cached, since caching would require keeping the whole module in memory.
+ * </p>
+ */
+@Slf4j
+public class ModuleParallelMetricsExtractor implements MetricsExtractor {
+
+    private static final String POM_FILE = "pom.xml";
+
+    private final MetricsExtractor extractor;
+    private final String extractorName;
+    private final ModuleResultCache cache;
+
+    private ExecutorService workStealingPool;
+
+    /**
+     * @param extractor the wrapped extractor, invoked concurrently on the files of each module
+     * @param cache     the cache of per-module results; if null, every module is always analyzed
+     */
+    public ModuleParallelMetricsExtractor(MetricsExtractor extractor, ModuleResultCache cache) {
+        this.extractor = extractor;
+        this.extractorName = extractor.getName();
+        this.cache = cache;
+    }
+
+    @Override
+    public void open(ExtractionRun run) {
+        extractor.open(run);
+        String threadsProperty = PropertiesManager.getInstance().getProperty("metrics.extractors.threads");
+        int threads = threadsProperty != null ? Integer.parseInt(threadsProperty.trim()) : Runtime.getRuntime().availableProcessors();
+        workStealingPool = Executors.newWorkStealingPool(Math.max(1, threads));
+    }
+
+    @Override
+    public void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+        extractor.onRelease(snapshot, previousSnapshot);
+    }
+
+    @Override
+    public void close() {
+        if (workStealingPool != null) workStealingPool.shutdownNow();
+        extractor.close();
+    }
+
+    @Override
+    public String getName() {
+        return extractorName;
+    }
+
+    @Override
+    public MetricsExtractorType getType() {
+        return extractor.getType();
+    }
+
+    @Override
+    public Set<ExtractorInput> getInputs() {
+        return extractor.getInputs();
+    }
+
+    @Override
+    public Set<MetricColumn> getOutputColumns() {
+        return extractor.getOutputColumns();
+    }
+
+    @Override
+    public int getRelativeCost() {
+        return extractor.getRelativeCost();
+    }
+
+    @Override
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
+        Map<MavenModule, List<SourceFile>> filesByModule = groupByModule(files);
+        List<MavenModule> sortedModules = new ArrayList<>(filesByModule.keySet());
+        sortedModules.sort(Comparator.comparing(m -> m.getRelativeSourceRoot() + "/"));
+
+        // Modules are consumed in order: a dedicated pool runs them in submission order, so that the module being
+        // consumed has always been started, while the following ones can only buffer a bounded number of records
+        int threads = Math.max(1, Math.min(sortedModules.size(), Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadsCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, extractorName + "-module-stream-" + threadsCount.incrementAndGet());
+            // Threads of stuck modules must not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<MethodRecordStream> streams = new ArrayList<>();
+        int methodsCount = 0;
+        try {
+            for (MavenModule module : sortedModules)
+                streams.add(MethodRecordStream.start(extractorName + "@" + module.getName(), moduleSink -> extractor.streamMetrics(filesByModule.get(module), moduleSink), executor, null));
+            for (MethodRecordStream stream : streams) {
+                for (MethodRecord methodRecord = stream.next(); methodRecord != null; methodRecord = stream.next()) {
+                    sink.accept(methodRecord);
+                    methodsCount++;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("{} interrupted while streaming modules", extractorName);
+            Thread.currentThread().interrupt();
+        } finally {
+            streams.forEach(MethodRecordStream::close);
+            executor.shutdownNow();
+        }
+        log.info("{} streamed metrics for {} methods over {} module(s)", extractorName, methodsCount, sortedModules.size());
+    }
+
+    @Override
+    public void extractMetrics(List<SourceFile> files, MetricTable table) {
+        Map<MavenModule, List<SourceFile>> filesByModule = groupByModule(files);
+        List<MavenModule> modules = new ArrayList<>(filesByModule.keySet());
+        Map<MavenModule, String> contentIds = cache != null ? resolveContentIds(modules) : Map.of();
+
+        List<Future<MetricTable>> futures = new ArrayList<>();
+        for (MavenModule module : modules)
+            futures.add(workStealingPool.submit(() -> extractModuleMetrics(module, filesByModule.get(module), contentIds.get(module), table)));
+
+        int methodsCount = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                MetricTable moduleTable = futures.get(i).get();
+                table.copyFrom(moduleTable);
+                methodsCount += moduleTable.getRowCount();
+            } catch (ExecutionException e) {
+                log.error("{} failed on module {}: {}", extractorName, modules.get(i).getName(), e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                log.error("{} interrupted while waiting for module {}", extractorName, modules.get(i).getName());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("{} extracted metrics for {} methods over {} module(s)", extractorName, methodsCount, modules.size());
+    }
+
+    /**
+     * Groups the files by module, keeping their order within each module
+     *
+     * @param files the files to group
+     * @return a map from module to its files
+     */
+    private Map<MavenModule, List<SourceFile>> groupByModule(List<SourceFile> files) {
+        Map<MavenModule, List<SourceFile>> filesByModule = new LinkedHashMap<>();
+        for (SourceFile file : files) filesByModule.computeIfAbsent(file.getModule(), m -> new ArrayList<>()).add(file);
+        return filesByModule;
+    }
+
+    /**
+     * Extracts the metrics of a single module, reusing the cached ones if the module sources and poms did not change
+     *
+     * @param module    the module to analyze
+     * @param files     the files of the module
+     * @param contentId the id of the module's sources and poms, or null if unknown
+     * @param table     the release's table, whose symbol table is shared by the module's table
+     * @return the table of the module's measured methods
+     */
+    private MetricTable extractModuleMetrics(MavenModule module, List<SourceFile> files, String contentId, MetricTable table) {
+        if (cache != null) {
+            MetricTable cached = cache.get(extractorName, module, contentId);
+            if (cached != null) {
+                log.info("{}: module {} unchanged, reusing {} cached methods", extractorName, module.getName(), cached.getRowCount());
+                return cached;
+            }
+        }
+
+        MetricTable moduleTable = new MetricTable(table.getSymbols());
+        extractor.extractMetrics(files, moduleTable);
+        if (cache != null) cache.put(extractorName, module, contentId, moduleTable);
+        log.debug("{}: module {} analyzed ({} methods)", extractorName, module.getName(), moduleTable.getRowCount());
+        return moduleTable;
+    }
+
+    /**
+     * Resolves the content id of each module at the current checkout, made of the tree id of the module's source root
+     * and the blob ids of the module's pom and of the root pom, since poms may change how sources are analyzed
+     *
+     * @param modules the modules to resolve
+     * @return a map from module to content id; modules whose ids can't be resolved are not mapped
+     */
+    private Map<MavenModule, String> resolveContentIds(List<MavenModule> modules) {
+        Map<MavenModule, String> contentIds = new HashMap<>();
+        try (GitTreeManager treeManager = new GitTreeManager()) {
+            String rootPomId = treeManager.getObjectIdAtHead(POM_FILE);
+            for (MavenModule module : modules) {
+                String treeId = treeManager.getObjectIdAtHead(module.getRelativeSourceRoot());
+                String pomPath = module.getRelativePath().isEmpty() ? POM_FILE : module.getRelativePath() + "/" + POM_FILE;
+                String pomId = treeManager.getObjectIdAtHead(pomPath);
+                if (treeId != null && pomId != null && rootPomId != null) contentIds.put(module, treeId + ":" + pomId + ":" + rootPomId);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to resolve module content ids, cache disabled for this release: {}", e.getMessage());
+        }
+        return contentIds;
+    }
+}
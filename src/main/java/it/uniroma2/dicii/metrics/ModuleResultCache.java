@@ -0,0 +1,68 @@
+package it.uniroma2.dicii.metrics;
+
+import it.uniroma2.dicii.maven.model.MavenModule;
+import it.uniroma2.dicii.metrics.model.MetricTable;
+import lombok.Data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the results of source-only extractors for each module across releases.
+ * Results are keyed by the content id of the module, made of the Git tree id of the module's source root and the
+ * blob ids of its pom and of the root pom: since Git ids are content hashes, a module whose sources and poms did not
+ * change between two releases shares the same id and doesn't need re-analysis.
+ * <p>
+ * Only extractors whose results of a module depend exclusively on the module's own sources (e.g., JavaParser) should
+ * use it. History-based metrics (e.g., churn) change between releases even for identical sources, while metrics
+ * depending on other modules (e.g., CK fan-in) or on the resolved classpath change along with them.
+ * </p><p>
+ * Since method ids are only valid within a release, each cached table has its own symbol table,
+ * and its methods are interned again in the symbol table of the release they are copied into.
+ * </p>
+ */
+public class ModuleResultCache {
+
+    private final Map<String, CachedResult> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Retrieves the cached results of an extractor for a module
+     *
+     * @param extractorName the name of the extractor that produced the results
+     * @param module        the analyzed module
+     * @param contentId     the current content id of the module
+     * @return the cached results, to be copied and never modified, or null if the module is not cached or its content changed
+     */
+    public MetricTable get(String extractorName, MavenModule module, String contentId) {
+        if (contentId == null) return null;
+        CachedResult cached = entries.get(buildKey(extractorName, module));
+        if (cached == null || !cached.getContentId().equals(contentId)) return null;
+        return cached.getResults();
+    }
+
+    /**
+     * Stores the results of an extractor for a module, replacing the ones of the previous release
+     *
+     * @param extractorName the name of the extractor that produced the results
+     * @param module        the analyzed module
+     * @param contentId     the current content id of the module
+     * @param results       the results to be cached
+     */
+    public void put(String extractorName, MavenModule module, String contentId, MetricTable results) {
+        if (contentId == null) return;
+        // Copies the results into a compact table, detached from the release's symbol table
+        MetricTable cached = new MetricTable();
+        cached.copyFrom(results);
+        entries.put(buildKey(extractorName, module), new CachedResult(contentId, cached));
+    }
+
+    private String buildKey(String extractorName, MavenModule module) {
+        return extractorName + "@" + module.getRelativePath();
+    }
+
+    @Data
+    private static class CachedResult {
+        private final String contentId;
+        private final MetricTable results;
+    }
+}
@@ -0,0 +1,193 @@
+package it.uniroma2.dicii.metrics.classpath;
+
+import it.uniroma2.dicii.cache.CacheManager;
+import it.uniroma2.dicii.maven.model.MavenModule;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the jars found in the repository, persisted across releases and runs.
+ * Each jar is identified by its path, size and last modification time; its content hash is only computed
+ * when one of these changes. The hash is used to put identical jars (e.g., the same dependency copied in
+ * several modules) on the classpath only once.
+ */
+@Slf4j
+public class JarIndex {
+
+    private static final String INDEX_FILE_NAME = "jar-index.tsv";
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of(".git", "src", "node_modules");
+
+    private final Path indexFile;
+    private final Map<String, JarEntry> entries;
+    private boolean dirty;
+
+    public JarIndex() {
+        Path cacheDirectory = CacheManager.getCacheDirectory("ck");
+        this.indexFile = cacheDirectory != null ? cacheDirectory.resolve(INDEX_FILE_NAME) : null;
+        this.entries = new HashMap<>();
+        load();
+    }
+
+    /**
+     * Resolves the classpath and sourcepath used by CK for the current checkout.
+     * The repository is scanned for jars skipping source and VCS directories; jars whose path, size and
+     * modification time match the index reuse the stored hash, the others are hashed and added to the index.
+     *
+     * @param repoPath the repository root
+     * @param modules  the modules of the project, whose source roots make up the sourcepath
+     * @return the resolved classpath
+     */
+    public synchronized ResolvedClasspath resolveClasspath(Path repoPath, List<MavenModule> modules) {
+        List<Path> jarPaths = findJars(repoPath);
+
+        Set<String> seenHashes = new HashSet<>();
+        List<String> jars = new ArrayList<>();
+        int hashed = 0;
+        for (Path jarPath : jarPaths) {
+            try {
+                String path = jarPath.toString();
+                long size = Files.size(jarPath);
+                long lastModified = Files.getLastModifiedTime(jarPath).toMillis();
+
+                JarEntry entry = entries.get(path);
+                if (entry == null || entry.getSize() != size || entry.getLastModified() != lastModified) {
+                    entry = new JarEntry(path, size, lastModified, hash(jarPath));
+                    entries.put(path, entry);
+                    dirty = true;
+                    hashed++;
+                }
+                // Identical jars found in several locations are added only once
+                if (seenHashes.add(entry.getHash())) jars.add(path);
+            } catch (IOException e) {
+                log.warn("Unable to index jar {}: {}", jarPath, e.getMessage());
+            }
+        }
+
+        // Forgets jars that no longer exist, so that the index does not grow indefinitely
+        Set<String> existing = new HashSet<>();
+        jarPaths.forEach(p -> existing.add(p.toString()));
+        if (entries.keySet().removeIf(p -> p.startsWith(repoPath.toString()) && !existing.contains(p))) dirty = true;
+
+        save();
+        log.info("Resolved classpath with {} jars ({} found, {} re-hashed)", jars.size(), jarPaths.size(), hashed);
+
+        String[] sourceRoots = modules.stream().map(m -> m.getSourceRoot().toString()).toArray(String[]::new);
+        return new ResolvedClasspath(jars.toArray(String[]::new), sourceRoots);
+    }
+
+    /**
+     * Finds all jars under the given directory, skipping source, VCS and hidden directories
+     *
+     * @param root the directory to scan
+     * @return the paths of the jars found
+     */
+    private List<Path> findJars(Path root) {
+        List<Path> jars = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                    if (!dir.equals(root) && (SKIPPED_DIRECTORIES.contains(name) || name.startsWith(".")))
+                        return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && file.toString().endsWith(".jar")) jars.add(file.toAbsolutePath());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Error scanning {} for jars: {}", root, e.getMessage());
+        }
+        jars.sort(null);
+        return jars;
+    }
+
+    /**
+     * Computes the SHA-1 hash of a file
+     *
+     * @param file the file to hash
+     * @return the hexadecimal representation of the hash
+     * @throws IOException if the file can't be read
+     */
+    private String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Loads the index from the cache directory, if present
+     */
+    private void load() {
+        if (indexFile == null || !Files.isRegularFile(indexFile)) return;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) continue;
+                entries.put(fields[0], new JarEntry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+            }
+            log.debug("Loaded {} entries from jar index {}", entries.size(), indexFile);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Unable to load jar index {}, rebuilding it: {}", indexFile, e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Persists the index to the cache directory, if it changed since the last save
+     */
+    private void save() {
+        if (indexFile == null || !dirty) return;
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+            for (JarEntry entry : entries.values())
+                writer.append(entry.getPath()).append('\t').append(String.valueOf(entry.getSize())).append('\t').append(String.valueOf(entry.getLastModified())).append('\t').append(entry.getHash()).append('\n');
+            dirty = false;
+        } catch (IOException e) {
+            log.warn("Unable to save jar index {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    @Data
+    private static class JarEntry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+    }
+}
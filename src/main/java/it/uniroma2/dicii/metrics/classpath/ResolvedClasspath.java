@@ -0,0 +1,16 @@
+package it.uniroma2.dicii.metrics.classpath;
+
+import lombok.Data;
+
+/**
+ * The environment used to resolve symbols while parsing sources with JDT:
+ * the jars on the classpath and the directories on the sourcepath.
+ */
+@Data
+public class ResolvedClasspath {
+
+    private final String[] jars;
+
+    private final String[] sourceRoots;
+
+}
@@ -4,55 +4,165 @@ import com.github.mauricioaniche.ck.CK;
 import com.github.mauricioaniche.ck.CKClassResult;
 import com.github.mauricioaniche.ck.CKMethodResult;
 import com.github.mauricioaniche.ck.CKNotifier;
+import com.github.mauricioaniche.ck.MetricsExecutor;
+import com.github.mauricioaniche.ck.util.MetricsFinder;
 import it.uniroma2.dicii.metrics.MetricsExtractor;
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.classpath.JarIndex;
+import it.uniroma2.dicii.metrics.classpath.ResolvedClasspath;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
 import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
-import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 public class CKMetricsExtractor implements MetricsExtractor {
 
+    // Java version used by JDT to parse sources, the same one used by CK
+    private static final String JDT_COMPLIANCE_LEVEL = JavaCore.VERSION_11;
 
-    private final String repoPath;
+    private Path repoPath;
+
+    // Jars used for symbol resolution are indexed once and kept across releases and runs
+    private JarIndex jarIndex;
+
+    // Classpath of the current release; if null, CK resolves it on its own by scanning the analyzed directory
+    private volatile ResolvedClasspath classpath;
+
+    // Java files of the current release out of the source index (e.g., tests), analyzed only for the fan-in they add
+    private volatile List<Path> callerFiles = List.of();
 
     private final Boolean useJars;
     private final Integer maxAtOnce;
     private final Boolean variablesAndFields;
 
+    /**
+     * Creates an extractor using jars, parsing all files within the same JDT environment and computing
+     * variable and field metrics
+     */
+    public CKMetricsExtractor() {
+        this(true, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * @param useJars            whether jars are used to resolve symbols
+     * @param maxAtOnce          the max number of files parsed within the same JDT environment
+     * @param variablesAndFields whether variable and field metrics are computed
+     */
     public CKMetricsExtractor(Boolean useJars, Integer maxAtOnce, Boolean variablesAndFields) {
-        repoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
         this.useJars = useJars;
         this.maxAtOnce = maxAtOnce;
         this.variablesAndFields = variablesAndFields;
     }
 
     @Override
-    public List<MeasuredMethod> extractMetrics() {
-        Map<String, CKMethodResult> extractedMetrics = extractMetricsWithCK(new CK(useJars, maxAtOnce, variablesAndFields));
-        return convertToListOfMeasuredMethods(extractedMetrics);
+    public String getName() {
+        return "CK";
+    }
+
+    @Override
+    public MetricsExtractorType getType() {
+        return MetricsExtractorType.CK;
+    }
+
+    @Override
+    public Set<ExtractorInput> getInputs() {
+        return EnumSet.of(ExtractorInput.SOURCES, ExtractorInput.CLASSPATH);
+    }
+
+    @Override
+    public int getRelativeCost() {
+        return 10;
+    }
+
+    /**
+     * CK counts the fan-in of a method over the callers found in the files analyzed so far,
+     * so calls from other modules are only counted if all modules are analyzed together
+     */
+    @Override
+    public boolean isModuleLocal() {
+        return false;
+    }
+
+    @Override
+    public void open(ExtractionRun run) {
+        repoPath = run.getRepoPath();
+        jarIndex = new JarIndex();
+    }
+
+    @Override
+    public void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+        // The same classpath is shared by all modules of the release
+        classpath = jarIndex.resolveClasspath(repoPath, snapshot.getModules());
+        callerFiles = snapshot.getSourceIndex().getOtherFiles();
+    }
+
+    @Override
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
+        extractMetricsWithCK(new CK(useJars, maxAtOnce, variablesAndFields), files, sink);
     }
 
     /**
-     * Extracts the metrics from the repository using the specified CK
+     * Extracts the metrics from the repository using the specified CK.
+     * Unlike the other extractors, records can only be emitted once all files have been analyzed
+     * (see {@link MetricsExtractor#streamMetrics(List, Consumer)}).
+     * <p>
+     * As when CK analyzed the whole repository, the Java files out of the source index (e.g., tests) are analyzed too,
+     * so that the fan-in of a method also counts its callers within them, but their records are dropped.
+     * </p>
      *
-     * @param ck the CK object to use for the extraction
+     * @param ck    the CK object to use for the extraction
+     * @param files the files to analyze
+     * @param sink  the consumer of the records, receiving them in the canonical order
      */
-    private Map<String, CKMethodResult> extractMetricsWithCK(CK ck) {
-        Map<String, CKMethodResult> methodResults = new HashMap<>();
+    private void extractMetricsWithCK(CK ck, List<SourceFile> files, Consumer<MethodRecord> sink) {
+        // CK reports absolute file paths, which are mapped back to the indexed files
+        Map<String, String> relativePaths = new HashMap<>();
+        for (SourceFile file : files)
+            relativePaths.put(file.getPath().toAbsolutePath().normalize().toString(), file.getRelativePath());
+        Set<String> callerPaths = new HashSet<>();
+        for (Path callerFile : callerFiles) callerPaths.add(callerFile.toAbsolutePath().normalize().toString());
+        List<Map.Entry<MethodRecord, CKMethodResult>> methodResults = new ArrayList<>();
 
-        ck.calculate(repoPath, new CKNotifier() {
+        CKNotifier notifier = new CKNotifier() {
             @Override
             public void notify(CKClassResult classResult) {
-                // Skip interfaces and /target directory
-                if (classResult.getType().equals("interface") || classResult.getFile().contains("/target/")) return;
+                // Skip interfaces
+                if (classResult.getType().equals("interface")) return;
+                String absolutePath = Paths.get(classResult.getFile()).toAbsolutePath().normalize().toString();
+                String relativePath = relativePaths.get(absolutePath);
+                // Records of files out of the index could neither be ordered nor joined with the other extractors' ones
+                if (relativePath == null) {
+                    if (callerPaths.contains(absolutePath)) return;
+                    log.warn("Skipping class {} of a file out of the source index: {}", classResult.getClassName(), classResult.getFile());
+                    return;
+                }
                 for (CKMethodResult methodResult : classResult.getMethods()) {
-                    methodResults.put(MethodNameGenerator.generateMethodName(methodResult.getQualifiedMethodName().split("/")[0], methodResult.getStartLine()), methodResult);
+                    // CK qualified names also include the parameter types (e.g., com.example.MyClass.method/1[int])
+                    String qualifiedName = methodResult.getQualifiedMethodName();
+                    int parametersStart = qualifiedName.indexOf('/');
+                    if (parametersStart >= 0) qualifiedName = qualifiedName.substring(0, parametersStart);
+                    int nameStart = qualifiedName.lastIndexOf('.') + 1;
+                    MethodRecord methodRecord = new MethodRecord(relativePath, methodResult.getStartLine(), qualifiedName.substring(0, nameStart), qualifiedName.substring(nameStart));
+                    methodResults.add(Map.entry(methodRecord, methodResult));
                 }
             }
 
@@ -60,15 +170,55 @@ public class CKMetricsExtractor implements MetricsExtractor {
             public void notifyError(String sourceFilePath, Exception e) {
                 log.error("Error analyzing file: {}. Exception: {} (cause: {})", sourceFilePath, e.getClass(), e.getMessage());
             }
-        });
+        };
+
+        if (files.isEmpty()) {
+            log.debug("No sources to analyze");
+            return;
+        }
+        Path[] javaFiles = Stream.concat(files.stream().map(SourceFile::getPath), callerFiles.stream()).toArray(Path[]::new);
+        if (classpath != null) calculateWithClasspath(classpath, javaFiles, notifier);
+        // Only the given files are analyzed, while jars and source directories are resolved by CK from the repository
+        else ck.calculate(repoPath, notifier, javaFiles);
+        methodResults.forEach(entry -> writeMethodResult(entry.getKey(), entry.getValue()));
+        methodResults.sort(Map.Entry.comparingByKey(MethodRecord.CANONICAL_ORDER));
+        methodResults.forEach(entry -> sink.accept(entry.getKey()));
         log.info("Successfully extracted metrics for {} methods", methodResults.size());
-        return methodResults;
     }
 
     /**
-     * Converts a map of extracted method metrics into a list of {@code MeasuredMethod} objects.
-     * The map keys represent the method names, and the values are {@code CKMethodResult} objects
-     * containing various metrics for the methods.
+     * Runs the CK metrics on the given files using the pre-resolved classpath, instead of letting CK scan
+     * the file system for jars and source directories. Apart from the environment, parsing is configured
+     * as within {@link CK#calculate(Path, CKNotifier, Path...)}.
+     *
+     * @param classpath the resolved classpath of the release
+     * @param javaFiles the files to analyze
+     * @param notifier  the notifier receiving the results of each class
+     */
+    private void calculateWithClasspath(ResolvedClasspath classpath, Path[] javaFiles, CKNotifier notifier) {
+        MetricsFinder finder = new MetricsFinder();
+        MetricsExecutor executor = new MetricsExecutor(finder::allClassLevelMetrics, () -> finder.allMethodLevelMetrics(variablesAndFields), notifier);
+        String[] jars = Boolean.TRUE.equals(useJars) ? classpath.getJars() : null;
+
+        for (int from = 0; from < javaFiles.length; from += maxAtOnce) {
+            int to = (int) Math.min((long) from + maxAtOnce, javaFiles.length);
+            String[] partition = new String[to - from];
+            for (int i = from; i < to; i++) partition[i - from] = javaFiles[i].toString();
+
+            // The language level is set by the compliance options, so the latest AST level parses sources as CK does
+            ASTParser parser = ASTParser.newParser(AST.JLS_Latest);
+            parser.setResolveBindings(true);
+            parser.setBindingsRecovery(true);
+            Map<String, String> options = JavaCore.getOptions();
+            JavaCore.setComplianceOptions(JDT_COMPLIANCE_LEVEL, options);
+            parser.setCompilerOptions(options);
+            parser.setEnvironment(jars, classpath.getSourceRoots(), null, true);
+            parser.createASTs(partition, null, new String[0], executor, null);
+        }
+    }
+
+    /**
+     * Writes the metrics of a method computed by CK into its record.
      * <p>
      * The requested metrics obtainable from the CK library are:
      * <ul>
@@ -82,26 +232,16 @@ public class CKMetricsExtractor implements MetricsExtractor {
      * </ul>
      * </p>
      *
-     * @param extractedMetrics a map where keys are method names and values are {@code CKMethodResult} objects
-     *                         containing metrics such as cyclomatic complexity, max nesting depth, fan-in, fan-out, etc.
-     * @return a list of {@code MeasuredMethod} objects populated with the corresponding metrics
+     * @param methodRecord the record receiving the metrics
+     * @param methodResult the {@code CKMethodResult} containing metrics such as cyclomatic complexity, max nesting depth, fan-in, fan-out, etc.
      */
-    private List<MeasuredMethod> convertToListOfMeasuredMethods(Map<String, CKMethodResult> extractedMetrics) {
-        List<MeasuredMethod> measuredMethods = new ArrayList<>();
-        MeasuredMethod measuredMethod;
-        for (Map.Entry<String, CKMethodResult> entry : extractedMetrics.entrySet()) {
-            measuredMethod = new MeasuredMethod();
-            measuredMethod.setExtractedFrom(MetricsExtractorType.CK);
-            measuredMethod.setMethodName(entry.getKey());
-            measuredMethod.setCyclomaticComplexity(entry.getValue().getWmc());
-            measuredMethod.setMaxNestingDepth(entry.getValue().getMaxNestedBlocks());
-            measuredMethod.setHasJavaDocs(entry.getValue().getHasJavadoc());
-            measuredMethod.setSourceLinesOfCode(entry.getValue().getLoc());
-            measuredMethod.setParametersCount(entry.getValue().getParametersQty());
-            measuredMethod.setFanIn(entry.getValue().getFanin());
-            measuredMethod.setFanOut(entry.getValue().getFanout());
-            measuredMethods.add(measuredMethod);
-        }
-        return measuredMethods;
+    private void writeMethodResult(MethodRecord methodRecord, CKMethodResult methodResult) {
+        methodRecord.setInt(MetricColumn.CYCLOMATIC_COMPLEXITY, methodResult.getWmc());
+        methodRecord.setInt(MetricColumn.MAX_NESTING_DEPTH, methodResult.getMaxNestedBlocks());
+        methodRecord.setBoolean(MetricColumn.HAS_JAVA_DOCS, methodResult.getHasJavadoc());
+        methodRecord.setInt(MetricColumn.SOURCE_LINES_OF_CODE, methodResult.getLoc());
+        methodRecord.setInt(MetricColumn.PARAMETERS_COUNT, methodResult.getParametersQty());
+        methodRecord.setInt(MetricColumn.FAN_IN, methodResult.getFanin());
+        methodRecord.setInt(MetricColumn.FAN_OUT, methodResult.getFanout());
     }
 }
@@ -0,0 +1,141 @@
+package it.uniroma2.dicii.metrics.impl;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.stmt.*;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import lombok.Getter;
+
+/**
+ * Visitor that computes the score based on SonarSource's Cognitive Complexity white paper.
+ * The nesting level is kept in a primitive field, incremented and decremented around nested structures,
+ * so that the same visitor can be reused for all methods of a file without boxing.
+ */
+@Getter
+class CognitiveComplexityVisitor extends VoidVisitorAdapter<Void> {
+
+    private int complexity = 0;
+    private int nesting = 0;
+
+    void reset() {
+        complexity = 0;
+        nesting = 0;
+    }
+
+    /**
+     * Visits a node one nesting level deeper
+     */
+    private void visitNested(Node n) {
+        nesting++;
+        n.accept(this, null);
+        nesting--;
+    }
+
+    @Override
+    public void visit(IfStmt n, Void arg) {
+        complexity += 1 + nesting;
+        super.visit(n, arg); // Visit condition
+
+        // The 'then' block gets increased nesting
+        visitNested(n.getThenStmt());
+
+        // Handle 'else'
+        if (n.getElseStmt().isPresent()) {
+            Statement elseStmt = n.getElseStmt().get();
+
+            // Optimization: "else if" is treated as a single structure (no extra nesting penalty usually)
+            // In JavaParser, "else if" is an IfStmt inside the elseStmt of the parent.
+            if (elseStmt.isIfStmt()) {
+                elseStmt.accept(this, arg); // Keep same nesting level for "else if"
+            } else {
+                complexity += 1 + nesting; // "else" costs +1 + current nesting
+                visitNested(elseStmt);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ForStmt n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(ForEachStmt n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(WhileStmt n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(DoStmt n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(CatchClause n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(SwitchEntry n, Void arg) {
+        // Cases usually don't increment nesting level in strictly structural views,
+        // but they DO add to complexity (+1 per case)
+        if (n.getLabels().isNonEmpty()) { // Don't count "default"
+            complexity += 1 + nesting;
+        }
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+
+    @Override
+    public void visit(BinaryExpr n, Void arg) {
+        // Sonar Rule: A sequence of binary operators adds to complexity.
+        // A && B && C => +1
+        // A && B || C => +2 (change of operator)
+
+        boolean isBooleanOp = n.getOperator() == BinaryExpr.Operator.AND || n.getOperator() == BinaryExpr.Operator.OR;
+
+        if (isBooleanOp) {
+            // Check if this is part of an existing sequence in the PARENT
+            boolean isSameAsParent = false;
+            if (n.getParentNode().isPresent() && n.getParentNode().get() instanceof BinaryExpr parent) {
+                if (parent.getOperator() == n.getOperator()) {
+                    isSameAsParent = true;
+                }
+            }
+
+            if (!isSameAsParent) {
+                complexity++;
+            }
+        }
+        super.visit(n, arg);
+    }
+
+    @Override
+    public void visit(ConditionalExpr n, Void arg) {
+        complexity += 1 + nesting;
+        nesting++;
+        super.visit(n, arg);
+        nesting--;
+    }
+}
@@ -0,0 +1,60 @@
+package it.uniroma2.dicii.metrics.impl;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.comments.Comment;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+
+/**
+ * The comments of a file, sorted by position, so that the comments within a range are found by binary search.
+ * Positions are encoded as {@code line << 32 | column}, preserving their order.
+ */
+class CommentIndex {
+
+    private final long[] begins;
+    private final long[] ends;
+    private final int[] lines;
+
+    /**
+     * @param comments the comments of the file, sorted by position
+     */
+    CommentIndex(SortedSet<Comment> comments) {
+        long[] sortedBegins = new long[comments.size()];
+        long[] sortedEnds = new long[comments.size()];
+        int[] sortedLines = new int[comments.size()];
+        int size = 0;
+        for (Comment c : comments) {
+            if (c.getBegin().isEmpty() || c.getEnd().isEmpty()) continue;
+            Position begin = c.getBegin().get();
+            Position end = c.getEnd().get();
+            sortedBegins[size] = encode(begin);
+            sortedEnds[size] = encode(end);
+            sortedLines[size] = end.line - begin.line + 1;
+            size++;
+        }
+        begins = size == sortedBegins.length ? sortedBegins : Arrays.copyOf(sortedBegins, size);
+        ends = size == sortedEnds.length ? sortedEnds : Arrays.copyOf(sortedEnds, size);
+        lines = size == sortedLines.length ? sortedLines : Arrays.copyOf(sortedLines, size);
+    }
+
+    /**
+     * @return the number of lines covered by the comments lying within the given range
+     */
+    int countLinesWithin(Position begin, Position end) {
+        long from = encode(begin);
+        long to = encode(end);
+        int i = Arrays.binarySearch(begins, from);
+        if (i < 0) i = -i - 1;
+
+        int count = 0;
+        // Comments don't overlap, so the ones starting within the range are adjacent
+        for (; i < begins.length && begins[i] <= to; i++)
+            if (ends[i] <= to) count += lines[i];
+        return count;
+    }
+
+    private static long encode(Position position) {
+        return ((long) position.line << 32) | position.column;
+    }
+}
@@ -1,78 +1,120 @@
 package it.uniroma2.dicii.metrics.impl;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.Position;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.comments.Comment;
-import com.github.javaparser.ast.expr.BinaryExpr;
-import com.github.javaparser.ast.expr.ConditionalExpr;
-import com.github.javaparser.ast.stmt.*;
-import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.ast.comments.CommentsCollection;
 import it.uniroma2.dicii.metrics.MetricsExtractor;
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
 import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
-import it.uniroma2.dicii.properties.PropertiesManager;
-import lombok.Getter;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Slf4j
 public class JavaParserMetricsExtractor implements MetricsExtractor {
 
-    private final String repoPath;
+    private SourceStore sourceStore;
 
-    public JavaParserMetricsExtractor() {
-        this.repoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
+    // Records of the files analyzed in the last releases, keyed by blob id and path; only unchanged files are kept
+    private final Map<String, List<MethodRecord>> recordsByBlob = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "JavaParser";
+    }
+
+    @Override
+    public MetricsExtractorType getType() {
+        return MetricsExtractorType.JAVA_PARSER;
+    }
+
+    @Override
+    public int getRelativeCost() {
+        return 3;
+    }
+
+    @Override
+    public void open(ExtractionRun run) {
+        sourceStore = run.getSourceStore();
+    }
+
+    @Override
+    public void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+        // Files changed since the last releases are evicted, since their records can't be reused anymore
+        Set<String> currentKeys = new HashSet<>();
+        for (SourceFile file : snapshot.getSourceIndex().getFiles()) currentKeys.add(buildCacheKey(file));
+        recordsByBlob.keySet().retainAll(currentKeys);
+    }
+
+    @Override
+    public void close() {
+        recordsByBlob.clear();
     }
 
     @Override
-    public List<MeasuredMethod> extractMetrics() {
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
         log.info("Extracting metrics from Java files...");
-        List<MeasuredMethod> results = new ArrayList<>();
-
-        try (Stream<Path> paths = Files.walk(Paths.get(repoPath))) {
-            paths.filter(p -> p.toString().endsWith(".java")).forEach(path -> {
-                try {
-                    CompilationUnit cu = StaticJavaParser.parse(path);
-                    String relativePath = getRelativePath(path);
-                    if (!relativePath.contains("src/test/java") && !relativePath.contains("/target/")) {
-                        String fullyQualifiedNamePrefix = relativePath.split("src/main/java/")[1].replace("/", ".").replace(".java", ".");
-
-                        cu.findAll(MethodDeclaration.class).forEach(method -> {
-                            // Only analyzes class methods, excluding interfaces
-                            if (method.getBody().isPresent()) {
-                                MeasuredMethod mm = new MeasuredMethod();
-                                mm.setExtractedFrom(MetricsExtractorType.JAVA_PARSER);
-                                int startLine = 0;
-                                if (method.getBegin().isPresent()) startLine = method.getBegin().get().line;
-                                mm.setMethodName(MethodNameGenerator.generateMethodName(fullyQualifiedNamePrefix + method.getNameAsString(), startLine));
-
-                                // Computes Comment Density and Cognitive Complexity
-                                mm.setCommentDensity(calculateCommentDensity(method));
-                                mm.setCognitiveComplexity(calculateCognitiveComplexity(method));
-
-                                results.add(mm);
-                            }
-                        });
+
+        // Files are already sorted, so only the methods of each file need to be sorted
+        for (SourceFile file : files) {
+            List<MethodRecord> cachedRecords = file.getBlobId() != null ? recordsByBlob.get(buildCacheKey(file)) : null;
+            if (cachedRecords != null) {
+                // Cached records are copied, since joined records are modified
+                cachedRecords.forEach(r -> sink.accept(r.copy()));
+                continue;
+            }
+
+            List<MethodRecord> fileRecords = new ArrayList<>();
+            try {
+                ParseResult<CompilationUnit> result = new JavaParser(StaticJavaParser.getParserConfiguration()).parse(sourceStore.read(file));
+                if (!result.isSuccessful() || result.getResult().isEmpty()) throw new ParseProblemException(result.getProblems());
+                CompilationUnit cu = result.getResult().get();
+                // Comments collected by the parser are already sorted, and are shared by all methods of the file along with the visitor
+                CommentIndex comments = new CommentIndex(result.getCommentsCollection().map(CommentsCollection::getComments).orElse(new TreeSet<>()));
+                CognitiveComplexityVisitor visitor = new CognitiveComplexityVisitor();
+                cu.findAll(MethodDeclaration.class).forEach(method -> {
+                    // Only analyzes class methods, excluding interfaces
+                    if (method.getBody().isPresent()) {
+                        int startLine = 0;
+                        if (method.getBegin().isPresent()) startLine = method.getBegin().get().line;
+                        MethodRecord methodRecord = new MethodRecord(file.getRelativePath(), startLine, file.getFullyQualifiedNamePrefix(), method.getNameAsString());
+
+                        // Computes Comment Density and Cognitive Complexity
+                        methodRecord.setDouble(MetricColumn.COMMENT_DENSITY, calculateCommentDensity(method, comments));
+                        methodRecord.setInt(MetricColumn.COGNITIVE_COMPLEXITY, calculateCognitiveComplexity(method, visitor));
+                        fileRecords.add(methodRecord);
                     }
-                } catch (IOException e) {
-                    log.warn("Error parsing file {}: {}", path, e.getMessage());
-                }
-            });
-        } catch (IOException e) {
-            log.error("Error walking project files", e);
+                });
+            } catch (IOException | ParseProblemException e) {
+                log.warn("Error parsing file {}: {}", file.getRelativePath(), e.getMessage());
+            }
+            fileRecords.sort(MethodRecord.CANONICAL_ORDER);
+            if (file.getBlobId() != null) recordsByBlob.put(buildCacheKey(file), fileRecords.stream().map(MethodRecord::copy).toList());
+            fileRecords.forEach(sink);
         }
-        return results;
+    }
+
+    private String buildCacheKey(SourceFile file) {
+        return file.getBlobId() + ":" + file.getRelativePath();
     }
 
     /**
@@ -81,163 +123,50 @@ public class JavaParserMetricsExtractor implements MetricsExtractor {
      * (including both inline comments and Javadocs comments, if any) to the total
      * number of lines covered by the method.
      *
-     * @param method the method for which the comment density is to be calculated.
-     *               It must be a valid {@code MethodDeclaration} containing
-     *               location information (start and end lines).
+     * @param method   the method for which the comment density is to be calculated.
+     *                 It must be a valid {@code MethodDeclaration} containing
+     *                 location information (start and end lines).
+     * @param comments the comments of the method's file
      * @return the comment density as a {@code double} value ranging from 0.0 to 1.0.
      * Returns 0.0 if the method is invalid or has no lines of code.
      */
-    private double calculateCommentDensity(MethodDeclaration method) {
+    static double calculateCommentDensity(MethodDeclaration method, CommentIndex comments) {
         if (method.getBegin().isEmpty() || method.getEnd().isEmpty()) return 0.0;
 
-        int startLine = method.getBegin().get().line;
-        int endLine = method.getEnd().get().line;
-        int totalLines = endLine - startLine + 1;
+        Position begin = method.getBegin().get();
+        Position end = method.getEnd().get();
+        int totalLines = end.line - begin.line + 1;
 
         if (totalLines == 0) return 0.0;
 
-        // 1. Add internal comments
-        Set<Comment> comments = new HashSet<>(method.getAllContainedComments());
+        // 1. Count the lines of internal comments, i.e., the ones within the method's range
+        int commentLines = comments.countLinesWithin(begin, end);
 
-        // 2. Add attached Javadoc (if any)
-        method.getComment().ifPresent(comments::add);
-
-        // 3. Count unique lines covered by comments
-        int commentLines = comments.stream().mapToInt(c -> {
-            if (c.getBegin().isPresent() && c.getEnd().isPresent()) {
-                return c.getEnd().get().line - c.getBegin().get().line + 1;
-            }
-            return 0;
-        }).sum();
+        // 2. Add attached Javadoc (if any), unless already counted, i.e., lying outside the method's range
+        if (method.getComment().isPresent()) {
+            Comment javadoc = method.getComment().get();
+            if (javadoc.getBegin().isPresent() && javadoc.getEnd().isPresent() && (javadoc.getBegin().get().isBefore(begin) || javadoc.getBegin().get().isAfter(end)))
+                commentLines += javadoc.getEnd().get().line - javadoc.getBegin().get().line + 1;
+        }
 
-        // 4. Calculate Density (0.0 to 1.0)
+        // 3. Calculate Density (0.0 to 1.0)
         // Note: We use totalLines as the denominator to represent "Density within the total space"
         return (double) commentLines / totalLines;
     }
 
-    /**
-     * Converts the given absolute path into a relative path with respect to the repository's root directory.
-     *
-     * @param path the absolute path of the file or directory to be converted to a relative path
-     * @return the relative path as a string, calculated from the repository's root directory
-     */
-    private String getRelativePath(Path path) {
-        // e.g., src/main/java/com/example/MyClass.java
-        return new File(repoPath).toURI().relativize(path.toUri()).getPath();
-    }
-
     /**
      * Calculates Cognitive Complexity.
      * Rules:
      * - +1 for breaks in linear flow (if, else, for, while, do, catch, switch, etc.)
      * - +1 for boolean sequences (&&, ||)
      * - +Nesting Level for each structure that increases nesting.
+     *
+     * @param method  the method to analyze
+     * @param visitor the visitor to reuse, reset before visiting the method
      */
-    private int calculateCognitiveComplexity(MethodDeclaration method) {
-        CognitiveComplexityVisitor visitor = new CognitiveComplexityVisitor();
-        visitor.visit(method, 0); // Start with nesting level 0
+    static int calculateCognitiveComplexity(MethodDeclaration method, CognitiveComplexityVisitor visitor) {
+        visitor.reset(); // Start with nesting level 0
+        visitor.visit(method, null);
         return visitor.getComplexity();
     }
-
-    /**
-     * Visitor that computes the score based on SonarSource's Cognitive Complexity white paper.
-     */
-    @Getter
-    private static class CognitiveComplexityVisitor extends VoidVisitorAdapter<Integer> {
-
-        private int complexity = 0;
-
-        @Override
-        public void visit(IfStmt n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting); // Visit condition
-
-            // The 'then' block gets increased nesting
-            n.getThenStmt().accept(this, nesting + 1);
-
-            // Handle 'else'
-            if (n.getElseStmt().isPresent()) {
-                Statement elseStmt = n.getElseStmt().get();
-
-                // Optimization: "else if" is treated as a single structure (no extra nesting penalty usually)
-                // In JavaParser, "else if" is an IfStmt inside the elseStmt of the parent.
-                if (elseStmt.isIfStmt()) {
-                    elseStmt.accept(this, nesting); // Keep same nesting level for "else if"
-                } else {
-                    complexity += 1 + nesting; // "else" costs +1 + current nesting
-                    elseStmt.accept(this, nesting + 1);
-                }
-            }
-        }
-
-        @Override
-        public void visit(ForStmt n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(ForEachStmt n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(WhileStmt n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(DoStmt n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(CatchClause n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(SwitchEntry n, Integer nesting) {
-            // Cases usually don't increment nesting level in strictly structural views,
-            // but they DO add to complexity (+1 per case)
-            if (n.getLabels().isNonEmpty()) { // Don't count "default"
-                complexity += 1 + nesting;
-            }
-            super.visit(n, nesting + 1);
-        }
-
-        @Override
-        public void visit(BinaryExpr n, Integer nesting) {
-            // Sonar Rule: A sequence of binary operators adds to complexity.
-            // A && B && C => +1
-            // A && B || C => +2 (change of operator)
-
-            boolean isBooleanOp = n.getOperator() == BinaryExpr.Operator.AND || n.getOperator() == BinaryExpr.Operator.OR;
-
-            if (isBooleanOp) {
-                // Check if this is part of an existing sequence in the PARENT
-                boolean isSameAsParent = false;
-                if (n.getParentNode().isPresent() && n.getParentNode().get() instanceof BinaryExpr parent) {
-                    if (parent.getOperator() == n.getOperator()) {
-                        isSameAsParent = true;
-                    }
-                }
-
-                if (!isSameAsParent) {
-                    complexity++;
-                }
-            }
-            super.visit(n, nesting);
-        }
-
-        @Override
-        public void visit(ConditionalExpr n, Integer nesting) {
-            complexity += 1 + nesting;
-            super.visit(n, nesting + 1);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,143 +1,127 @@
 package it.uniroma2.dicii.metrics.impl;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.MethodDeclaration;
+import it.uniroma2.dicii.analysis.SonarIssueIndex;
 import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
 import it.uniroma2.dicii.metrics.MetricsExtractor;
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
 import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
-import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.JavaMethodScanner;
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import it.uniroma2.dicii.metrics.source.model.MethodSpan;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 public class SonarMetricsExtractor implements MetricsExtractor {
 
-    private final String repoPath;
-    private final List<SonarAnalysisResult> sonarIssues;
+    private SourceStore sourceStore;
 
-    /**
-     * @param sonarIssues The raw list of issues retrieved from SonarCloud for this specific version.
-     */
-    public SonarMetricsExtractor(List<SonarAnalysisResult> sonarIssues) {
-        this.repoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
-        this.sonarIssues = sonarIssues;
+    // The issues retrieved from SonarCloud for the current release, indexed by file
+    private volatile SonarIssueIndex sonarIssues;
+
+    @Override
+    public String getName() {
+        return "Sonar";
     }
 
     @Override
-    public List<MeasuredMethod> extractMetrics() {
-        List<MeasuredMethod> results = new ArrayList<>();
+    public MetricsExtractorType getType() {
+        return MetricsExtractorType.SONAR;
+    }
 
-        if (sonarIssues == null || sonarIssues.isEmpty()) {
-            return results;
-        }
+    @Override
+    public Set<ExtractorInput> getInputs() {
+        return EnumSet.of(ExtractorInput.SOURCES, ExtractorInput.SONAR_ISSUES);
+    }
 
-        // 1. Walk through all files in the repository
-        try (Stream<Path> paths = Files.walk(Paths.get(repoPath))) {
-            paths.filter(p -> p.toString().endsWith(".java")).forEach(path -> {
-                try {
-                    File file = path.toFile();
-                    String relativePath = getRelativePath(path);
-                    if (!relativePath.contains("src/test/java") && !relativePath.contains("/target/")) {
-                        String fullyQualifiedNamePrefix = relativePath.split("src/main/java/")[1].replace("/", ".").replace(".java", ".");
-
-                        // 2. Parse the file to find Method Boundaries
-                        CompilationUnit cu = StaticJavaParser.parse(file);
-
-                        // 3. Filter Sonar issues belonging to this file
-                        // Note: Sonar 'component' keys usually look like "projectKey:src/main/java/..."
-                        // We check if the component key contains our relative path.
-                        List<SonarAnalysisResult> fileIssues = sonarIssues.stream().filter(issue -> issue.getComponent().endsWith(relativePath)).toList();
-
-                        if (fileIssues.isEmpty()) return;
-
-                        // 4. Map Issues to Methods
-                        cu.findAll(MethodDeclaration.class).forEach(method -> mapIssuesToMethods(fullyQualifiedNamePrefix, method, fileIssues, results));
-                    }
-                } catch (Exception e) {
-                    log.warn("Error processing file for Sonar metrics: {}", path, e);
-                }
-            });
-        } catch (IOException e) {
-            log.error("Failed to walk project files", e);
-        }
-        return results;
+    @Override
+    public int getRelativeCost() {
+        return 2;
     }
 
-    /**
-     * Maps a list of sonar analysis issues to the methods in the source code.
-     * For each issue within the method's line range, the smell count is incremented
-     * based on the severity level, and the results are stored in a list of measured methods.
-     *
-     * @param method     the method being analyzed, including its start and end line numbers
-     * @param fileIssues a list of issues reported by the Sonar analysis tool for the file
-     * @param results    a list where the resulting measured methods, including metrics and smells, will be added
-     */
-    private void mapIssuesToMethods(String fullyQualifiedMethodNamePrefix, MethodDeclaration method, List<SonarAnalysisResult> fileIssues, List<MeasuredMethod> results) {
-        if (method.getBegin().isPresent() && method.getEnd().isPresent()) {
-            // Only analyzes class methods, excluding interfaces
-            if (method.getBody().isPresent()) {
-                int startLine = method.getBegin().get().line;
-                int endLine = method.getEnd().get().line;
-
-                MeasuredMethod mm = new MeasuredMethod();
-                mm.setExtractedFrom(MetricsExtractorType.SONAR);
-                mm.setBuggy(false); // Assuming non-buggy methods by default
-                mm.setMethodName(MethodNameGenerator.generateMethodName(fullyQualifiedMethodNamePrefix + method.getNameAsString(), startLine));
-
-                // Count smells strictly within this method's body
-                for (SonarAnalysisResult issue : fileIssues)
-                    if (issue.getLine() >= startLine && issue.getLine() <= endLine) {
-                        if (issue.getType().equals("CODE_SMELL")) incrementSmellCount(mm, issue.getSeverity());
-                        if (issue.getType().equals("BUG")) {
-                            mm.incrementDefectCount();
-                            mm.setBuggy(true); // Sets buggy=true if any defect is found
-                        }
-                    }
-                results.add(mm);
+    @Override
+    public void open(ExtractionRun run) {
+        sourceStore = run.getSourceStore();
+    }
+
+    @Override
+    public void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+        // Issues are indexed once per release, and shared by the extractions of all modules
+        List<SonarAnalysisResult> results = snapshot.getSonarResults();
+        sonarIssues = results == null || results.isEmpty() ? null : SonarIssueIndex.build(results);
+    }
+
+    @Override
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
+        SonarIssueIndex sonarIssues = this.sonarIssues;
+        if (sonarIssues == null) {
+            return;
+        }
+
+        // Files are already sorted, so only the methods of each file need to be sorted
+        List<MethodRecord> fileRecords = new ArrayList<>();
+        int[] counts = new int[SonarIssueIndex.KINDS];
+
+        // 1. Iterate over all production files in the repository
+        for (SourceFile file : files) {
+            // 2. Files without issues are not scanned at all
+            if (!sonarIssues.hasIssues(file.getRelativePath())) continue;
+            fileRecords.clear();
+            try {
+                // 3. Scan the file to find Method Boundaries; no AST is needed
+                // 4. Map Issues to Methods
+                for (MethodSpan method : JavaMethodScanner.scan(sourceStore.read(file))) mapIssuesToMethods(file, method, sonarIssues, counts, fileRecords);
+            } catch (Exception e) {
+                log.warn("Error processing file for Sonar metrics: {}", file.getRelativePath(), e);
             }
+            fileRecords.sort(MethodRecord.CANONICAL_ORDER);
+            fileRecords.forEach(sink);
         }
     }
 
     /**
-     * Increments the specified smell count in a {@code MeasuredMethod} object based on the given severity level.
-     * Smell severities are mapped to specific counters: BLOCKER, CRITICAL, MAJOR, MINOR, INFO.
-     * Fallback logic is applied for unspecified severities.
+     * Maps the issues of a file to one of its methods.
+     * The issues within the method's line range are counted by kind, and the smell counts are set according to
+     * their severity.
      *
-     * @param mm       the {@code MeasuredMethod} whose smell count will be incremented
-     * @param severity the severity level of the smell (e.g., "BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO")
+     * @param file        the file containing the method
+     * @param method      the method being analyzed, including its start and end line numbers
+     * @param sonarIssues the issues of the release
+     * @param counts      a buffer receiving the number of issues of each kind
+     * @param records     the list where the resulting records, including metrics and smells, will be added
      */
-    private void incrementSmellCount(MeasuredMethod mm, String severity) {
-        // Map Sonar Severity strings to MeasuredMethod fields
-        // Severities: BLOCKER, CRITICAL, MAJOR, MINOR, INFO
-        switch (severity.toUpperCase()) {
-            case "BLOCKER" -> mm.incrementBlockerSmellsCount();
-            case "CRITICAL" ->
-                    mm.incrementCriticalSmellsCount(); // Mapping Critical -> Major if you lack a Critical field
-            case "MAJOR" -> mm.incrementMajorSmellsCount();
-            case "MINOR" -> mm.incrementMinorSmellsCount();
-            case "INFO" -> mm.incrementInfoSmellsCount();
-            default -> log.warn("Unknown Sonar smell severity: {}. Skipping.", severity);
-        }
+    private void mapIssuesToMethods(SourceFile file, MethodSpan method, SonarIssueIndex sonarIssues, int[] counts, List<MethodRecord> records) {
+        // Only class methods are found, excluding interfaces
+        int startLine = method.getStartLine();
+        int endLine = method.getEndLine();
+
+        MethodRecord methodRecord = new MethodRecord(file.getRelativePath(), startLine, file.getFullyQualifiedNamePrefix(), method.getName());
+
+        // Count smells strictly within this method's body
+        sonarIssues.countIssues(file.getRelativePath(), startLine, endLine, counts);
+        setSmellCount(methodRecord, MetricColumn.BLOCKER_SMELLS_COUNT, counts[SonarIssueIndex.BLOCKER]);
+        setSmellCount(methodRecord, MetricColumn.CRITICAL_SMELLS_COUNT, counts[SonarIssueIndex.CRITICAL]);
+        setSmellCount(methodRecord, MetricColumn.MAJOR_SMELLS_COUNT, counts[SonarIssueIndex.MAJOR]);
+        setSmellCount(methodRecord, MetricColumn.MINOR_SMELLS_COUNT, counts[SonarIssueIndex.MINOR]);
+        setSmellCount(methodRecord, MetricColumn.INFO_SMELLS_COUNT, counts[SonarIssueIndex.INFO]);
+        if (counts[SonarIssueIndex.BUG] > 0) methodRecord.setInt(MetricColumn.DEFECT_COUNT, counts[SonarIssueIndex.BUG]);
+        records.add(methodRecord);
     }
 
     /**
-     * Converts the given absolute path into a relative path with respect to the repository's root directory.
-     *
-     * @param path the absolute path of the file or directory to be converted to a relative path
-     * @return the relative path as a string, calculated from the repository's root directory
+     * Sets a smell count of a method, writing the column only if any smell was found, as when incrementing it
      */
-    private String getRelativePath(Path path) {
-        // e.g., src/main/java/com/example/MyClass.java
-        return new File(repoPath).toURI().relativize(path.toUri()).getPath();
+    private void setSmellCount(MethodRecord methodRecord, MetricColumn column, int count) {
+        if (count > 0) methodRecord.setInt(column, count);
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,17 @@
 package it.uniroma2.dicii.metrics.impl;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.MethodDeclaration;
 import it.uniroma2.dicii.metrics.MetricsExtractor;
-import it.uniroma2.dicii.metrics.model.MeasuredMethod;
+import it.uniroma2.dicii.metrics.model.ExtractionRun;
+import it.uniroma2.dicii.metrics.model.ExtractorInput;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import it.uniroma2.dicii.metrics.model.MethodRecord;
 import it.uniroma2.dicii.metrics.model.MetricsExtractorType;
-import it.uniroma2.dicii.properties.PropertiesManager;
+import it.uniroma2.dicii.metrics.model.ReleaseSnapshot;
+import it.uniroma2.dicii.metrics.source.JavaMethodScanner;
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import it.uniroma2.dicii.metrics.source.model.MethodSpan;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.jgit.api.BlameCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.blame.BlameResult;
@@ -19,111 +22,204 @@ import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Slf4j
 public class VCSMetricsExtractor implements MetricsExtractor {
 
-    private final String repoPath;
-    private final String previousCommitId; // Essential for Churn calculation
+    private SourceStore sourceStore;
 
-    public VCSMetricsExtractor(String previousCommitId) {
-        this.repoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
-        this.previousCommitId = previousCommitId;
+    // Opened once for the whole run, since JGit repositories can be shared by concurrent readers
+    private Repository repository;
+    private Git git;
+
+    // Trees of the current and previous release; the previous one is null for the first release
+    private volatile ObjectId currentTree;
+    private volatile ObjectId previousTree; // Essential for Churn calculation
+
+    // Author of each line of the files blamed in the last releases, keyed by blob id and path.
+    // Unchanged files are not blamed again, at the cost of ignoring changes reverted between two releases.
+    private final Map<String, String[]> authorsByBlob = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "VCS";
     }
 
     @Override
-    public List<MeasuredMethod> extractMetrics() {
-        List<MeasuredMethod> results = new ArrayList<>();
-
-        try (Repository repository = new FileRepositoryBuilder().setGitDir(new File(repoPath + "/.git")).build(); Git git = new Git(repository)) {
-
-            // 1. Walk all Java non-test files in the current checkout
-            try (Stream<Path> paths = Files.walk(Paths.get(repoPath))) {
-                paths.filter(p -> p.toString().endsWith(".java") && !p.toString().toLowerCase().contains("test") && !p.toString().contains("/target/")).forEach(path -> {
-                    try {
-                        // 2. Parse the file to find Methods and their line numbers
-                        CompilationUnit cu = StaticJavaParser.parse(path);
-                        String relativePath = getRelativePath(path);
-                        if (!relativePath.contains("src/test/java")) {
-                            String fullyQualifiedNamePrefix = relativePath.split("src/main/java/")[1].replace("/", ".").replace(".java", ".");
-
-                            cu.findAll(MethodDeclaration.class).forEach(method -> {
-                                if (method.getBegin().isPresent() && method.getEnd().isPresent()) {
-                                    // Only analyzes class methods, excluding interfaces
-                                    if (method.getBody().isPresent()) {
-                                        int startLine = method.getBegin().get().line;
-                                        int endLine = method.getEnd().get().line;
-
-                                        MeasuredMethod mm = new MeasuredMethod();
-                                        mm.setExtractedFrom(MetricsExtractorType.VCS);
-                                        // Ensure this naming matches your CK naming for the merge to work
-                                        mm.setMethodName(MethodNameGenerator.generateMethodName(fullyQualifiedNamePrefix + method.getNameAsString(), startLine));
-
-                                        // 3. Calculate Developer Count (Lifetime - via Blame)
-                                        mm.setDeveloperCount(calculateDeveloperCount(git, relativePath, startLine, endLine));
-
-                                        // 4. Calculate Churn (Process - via Diff vs. Previous Commit)
-                                        if (previousCommitId != null) {
-                                            mm.setChurn(calculateChurn(repository, relativePath, startLine, endLine));
-                                        }
-                                        results.add(mm);
-                                    }
-                                }
-                            });
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to process file for VCS metrics: {}", path, e);
-                    }
-                });
-            }
+    public MetricsExtractorType getType() {
+        return MetricsExtractorType.VCS;
+    }
+
+    @Override
+    public Set<ExtractorInput> getInputs() {
+        return EnumSet.of(ExtractorInput.SOURCES, ExtractorInput.HISTORY);
+    }
+
+    @Override
+    public int getRelativeCost() {
+        return 8;
+    }
+
+    @Override
+    public void open(ExtractionRun run) {
+        sourceStore = run.getSourceStore();
+        try {
+            repository = new FileRepositoryBuilder().setGitDir(run.getRepoPath().resolve(".git").toFile()).build();
+            git = new Git(repository);
+        } catch (IOException e) {
+            log.error("Failed to open repository {}: {}", run.getRepoPath(), e.getMessage(), e);
+        }
+    }
 
+    @Override
+    public void onRelease(ReleaseSnapshot snapshot, ReleaseSnapshot previousSnapshot) {
+        if (repository == null) return;
+        try {
+            currentTree = repository.resolve(snapshot.getCommitId() + "^{tree}");
+            previousTree = previousSnapshot != null ? repository.resolve(previousSnapshot.getCommitId() + "^{tree}") : null;
         } catch (IOException e) {
-            log.error("VCS Extraction failed", e);
+            log.warn("Failed to resolve the trees of release {}: {}", snapshot.getTagName(), e.getMessage());
+            currentTree = null;
+            previousTree = null;
         }
 
-        return results;
+        // Files changed since the last releases are evicted, since their blame can't be reused anymore
+        Set<String> currentKeys = new HashSet<>();
+        for (SourceFile file : snapshot.getSourceIndex().getFiles()) currentKeys.add(buildCacheKey(file));
+        authorsByBlob.keySet().retainAll(currentKeys);
+    }
+
+    @Override
+    public void close() {
+        authorsByBlob.clear();
+        if (git != null) git.close();
+        if (repository != null) repository.close();
+    }
+
+    @Override
+    public void streamMetrics(List<SourceFile> files, Consumer<MethodRecord> sink) {
+        if (repository == null) {
+            log.error("VCS Extraction failed: repository not available");
+            return;
+        }
+
+        // 1. Iterate over all production files in the current checkout
+        for (SourceFile file : files) {
+            // Files are already sorted, so only the methods of each file need to be sorted
+            List<MethodRecord> fileRecords = new ArrayList<>();
+            try {
+                // 2. Scan the file to find Methods and their line numbers; no AST is needed
+                List<MethodSpan> methods = JavaMethodScanner.scan(sourceStore.read(file));
+                String relativePath = file.getRelativePath();
+                // Blame and diff are computed once per file, and shared by all its methods
+                String[] authors = getLineAuthors(file);
+                List<Edit> edits = previousTree != null ? getEdits(relativePath) : List.of();
+
+                // Only class methods are found, excluding interfaces
+                for (MethodSpan method : methods) {
+                    int startLine = method.getStartLine();
+                    int endLine = method.getEndLine();
+
+                    // Ensure this naming matches your CK naming for the merge to work
+                    MethodRecord methodRecord = new MethodRecord(relativePath, startLine, file.getFullyQualifiedNamePrefix(), method.getName());
+
+                    // 3. Calculate Developer Count (Lifetime - via Blame)
+                    methodRecord.setInt(MetricColumn.DEVELOPER_COUNT, calculateDeveloperCount(authors, startLine, endLine));
+
+                    // 4. Calculate Churn (Process - via Diff vs. Previous Commit)
+                    if (previousTree != null) {
+                        methodRecord.setInt(MetricColumn.CHURN, calculateChurn(edits, startLine, endLine));
+                    }
+                    fileRecords.add(methodRecord);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to process file for VCS metrics: {}", file.getRelativePath(), e);
+            }
+            fileRecords.sort(MethodRecord.CANONICAL_ORDER);
+            fileRecords.forEach(sink);
+        }
+    }
+
+    private String buildCacheKey(SourceFile file) {
+        return file.getBlobId() + ":" + file.getRelativePath();
+    }
+
+    /**
+     * Returns the author of each line of a file, blaming it only if it changed since the last releases
+     *
+     * @param file the file to blame
+     * @return the authors' names indexed by 0-indexed line, or an empty array if an error occurs during the operation
+     */
+    private String[] getLineAuthors(SourceFile file) {
+        if (file.getBlobId() == null) return blame(file.getRelativePath());
+        return authorsByBlob.computeIfAbsent(buildCacheKey(file), k -> blame(file.getRelativePath()));
+    }
+
+    private String[] blame(String path) {
+        try {
+            log.debug("Blaming file {}", path);
+            BlameResult result = git.blame().setFilePath(path).call();
+            if (result == null) return new String[0];
+
+            String[] authors = new String[result.getResultContents().size()];
+            for (int i = 0; i < authors.length; i++) authors[i] = result.getSourceAuthor(i).getName();
+            return authors;
+        } catch (GitAPIException e) {
+            log.warn("Failed to calculate developer count for file {}: {}", path, e.getMessage());
+            return new String[0];
+        }
     }
 
     /**
      * Calculates the number of unique developers who have contributed to a specific range of lines
      * within a given file in a Git repository.
      *
-     * @param git       the Git object to interact with the repository
-     * @param path      the path of the file in the repository to analyze
+     * @param authors   the author of each line of the file, 0-indexed
      * @param startLine the starting line of the range to analyze (inclusive), 1-indexed
      * @param endLine   the ending line of the range to analyze (inclusive), 1-indexed
-     * @return the count of unique developers who authored the specified range of lines, or 0 if an error occurs during the operation
+     * @return the count of unique developers who authored the specified range of lines
      */
-    private int calculateDeveloperCount(Git git, String path, int startLine, int endLine) {
-        try {
-            log.debug("Calculating developer count for file {} (rows {}-{})", path, startLine, endLine);
-            BlameCommand blame = git.blame().setFilePath(path);
-            BlameResult result = blame.call();
-            if (result == null) return 0;
-
-            Set<String> developers = new HashSet<>();
-            // Blame is 0-indexed, AST is 1-indexed
-            for (int i = startLine - 1; i < endLine; i++) {
-                if (i < result.getResultContents().size()) {
-                    developers.add(result.getSourceAuthor(i).getName());
-                }
-            }
-            return developers.size();
-        } catch (GitAPIException e) {
-            log.warn("Failed to calculate developer count for file {}: {}", path, e.getMessage());
-            return 0;
+    private int calculateDeveloperCount(String[] authors, int startLine, int endLine) {
+        Set<String> developers = new HashSet<>();
+        // Blame is 0-indexed, AST is 1-indexed
+        for (int i = startLine - 1; i < endLine && i < authors.length; i++) {
+            developers.add(authors[i]);
+        }
+        return developers.size();
+    }
+
+    /**
+     * Returns the edits made to a file since the previous release
+     *
+     * @param path the path of the file in the repository
+     * @return the edits, or an empty list if an error occurs during the operation
+     */
+    private List<Edit> getEdits(String path) {
+        log.debug("Calculating churn for file {}", path);
+        try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            formatter.setRepository(repository);
+            formatter.setDiffComparator(RawTextComparator.DEFAULT);
+            formatter.setPathFilter(PathFilter.create(path));
+
+            List<Edit> edits = new ArrayList<>();
+            for (DiffEntry entry : formatter.scan(previousTree, currentTree))
+                edits.addAll(formatter.toFileHeader(entry).toEditList());
+            return edits;
+        } catch (IOException e) {
+            log.warn("Failed to calculate churn for file {}: {}", path, e.getMessage());
+            return List.of();
         }
     }
 
@@ -131,45 +227,23 @@ public class VCSMetricsExtractor implements MetricsExtractor {
      * Calculates the churn metric for a specific section of a file within a Git repository.
      * The churn metric is defined as the sum of lines added and deleted within the specified range of lines.
      *
-     * @param repo      the Git repository to analyze
-     * @param path      the path of the file in the repository for which churn is being calculated
+     * @param edits     the edits made to the file since the previous release
      * @param startLine the starting line of the section to analyze
      * @param endLine   the ending line of the section to analyze
      * @return the churn value, which is the sum of lines added and deleted within the specified section
      */
-    private int calculateChurn(Repository repo, String path, int startLine, int endLine) {
-        log.debug("Calculating churn for file {} (rows {}-{})", path, startLine, endLine);
-        if (previousCommitId == null) return 0;
-        try {
-            ObjectId oldHead = repo.resolve(previousCommitId + "^{tree}");
-            ObjectId newHead = repo.resolve("HEAD^{tree}");
-
-            try (DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
-                formatter.setRepository(repo);
-                formatter.setDiffComparator(RawTextComparator.DEFAULT);
-                formatter.setPathFilter(org.eclipse.jgit.treewalk.filter.PathFilter.create(path));
-
-                List<DiffEntry> diffs = formatter.scan(oldHead, newHead);
-                int churn = 0;
-
-                for (DiffEntry entry : diffs) {
-                    // Determine edited lines from the "Hunks"
-                    for (Edit edit : formatter.toFileHeader(entry).toEditList()) {
-                        // We only care if the edit overlaps with our method's current lines
-                        // Note: This is an approximation. Ideally, we map lines back.
-                        // But for simple churn, checking overlap with current method bounds is a standard heuristic.
-                        if (isOverlapping(edit, startLine, endLine)) {
-                            // Churn = Lines Added + Lines Deleted
-                            churn += (edit.getEndB() - edit.getBeginB()) + (edit.getEndA() - edit.getBeginA());
-                        }
-                    }
-                }
-                return churn;
+    private int calculateChurn(List<Edit> edits, int startLine, int endLine) {
+        int churn = 0;
+        for (Edit edit : edits) {
+            // We only care if the edit overlaps with our method's current lines
+            // Note: This is an approximation. Ideally, we map lines back.
+            // But for simple churn, checking overlap with current method bounds is a standard heuristic.
+            if (isOverlapping(edit, startLine, endLine)) {
+                // Churn = Lines Added + Lines Deleted
+                churn += (edit.getEndB() - edit.getBeginB()) + (edit.getEndA() - edit.getBeginA());
             }
-        } catch (IOException e) {
-            log.warn("Failed to calculate churn for file {}: {}", path, e.getMessage());
-            return 0;
         }
+        return churn;
     }
 
     /**
@@ -187,14 +261,4 @@ public class VCSMetricsExtractor implements MetricsExtractor {
         int editEnd = edit.getEndB() + 1;
         return Math.max(startLine, editStart) <= Math.min(endLine, editEnd);
     }
-
-    /**
-     * Computes the relative path of the given {@code path} with respect to the repository path.
-     *
-     * @param path the full path to be converted to a relative path
-     * @return the relative path as a {@code String}, or an empty string if the path cannot be relativized
-     */
-    private String getRelativePath(Path path) {
-        return new File(repoPath).toURI().relativize(path.toUri()).getPath();
-    }
 }
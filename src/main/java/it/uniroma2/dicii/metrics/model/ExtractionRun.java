@@ -0,0 +1,22 @@
+package it.uniroma2.dicii.metrics.model;
+
+import it.uniroma2.dicii.metrics.source.SourceStore;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * A run of the extractors over the releases of a project, shared by all extractors when they are opened
+ */
+@Data
+public class ExtractionRun {
+
+    private final String projectName;
+
+    // Root of the analyzed repository, whose working tree is checked out at each release
+    private final Path repoPath;
+
+    // Contents of the source files, read once and shared by all extractors across releases
+    private final SourceStore sourceStore;
+
+}
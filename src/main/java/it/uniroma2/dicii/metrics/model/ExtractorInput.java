@@ -0,0 +1,19 @@
+package it.uniroma2.dicii.metrics.model;
+
+/**
+ * The inputs an extractor may depend on; an extractor is only scheduled on releases providing all of its inputs
+ */
+public enum ExtractorInput {
+
+    // Production sources of the release
+    SOURCES,
+
+    // Jars and source roots used to resolve symbols
+    CLASSPATH,
+
+    // Git history up to the release, and the previous release for process metrics
+    HISTORY,
+
+    // Issues found by the Sonar analysis of the release
+    SONAR_ISSUES
+}
@@ -0,0 +1,152 @@
+package it.uniroma2.dicii.metrics.model;
+
+import lombok.Getter;
+
+import java.util.Comparator;
+
+/**
+ * The metrics of a single method, as streamed by an extractor.
+ * Records are emitted in the canonical order, i.e., by file path, start line and name, so that the records
+ * of different extractors can be joined by merging their streams.
+ * <p>
+ * The fully qualified name of the method is kept as the prefix of its file, shared by all the file's methods,
+ * and the simple name of the method, so that extractors don't build it for every method they measure.
+ * </p>
+ */
+@Getter
+public class MethodRecord {
+
+    public static final Comparator<MethodRecord> CANONICAL_ORDER = Comparator.comparing(MethodRecord::getRelativePath)
+            .thenComparingInt(MethodRecord::getStartLine)
+            .thenComparing(MethodRecord::compareQualifiedNames);
+
+    private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+    // Path of the method's file, relative to the repository root
+    private final String relativePath;
+    private final int startLine;
+    // Prefix of the fully qualified name, up to the last dot (e.g., com.example.MyClass.)
+    private final String namePrefix;
+    // Simple name of the method (e.g., myMethod)
+    private final String name;
+
+    // Values indexed by column ordinal; doubles are only allocated when written
+    private final int[] intValues;
+    private double[] doubleValues;
+    // Bit mask of the written columns
+    private long writtenColumns;
+
+    /**
+     * @param relativePath the path of the method's file, relative to the repository root
+     * @param startLine    the line the method declaration starts at
+     * @param namePrefix   the prefix of the method's fully qualified name, up to the last dot (e.g., com.example.MyClass.)
+     * @param name         the simple name of the method (e.g., myMethod)
+     */
+    public MethodRecord(String relativePath, int startLine, String namePrefix, String name) {
+        this.relativePath = relativePath;
+        this.startLine = startLine;
+        this.namePrefix = namePrefix;
+        this.name = name;
+        this.intValues = new int[COLUMNS.length];
+    }
+
+    /**
+     * @return the fully qualified name of the method (e.g., com.example.MyClass.myMethod), built at each call
+     */
+    public String getQualifiedName() {
+        return namePrefix + name;
+    }
+
+    public void setInt(MetricColumn column, int value) {
+        intValues[column.ordinal()] = value;
+        markWritten(column);
+    }
+
+    public void setDouble(MetricColumn column, double value) {
+        if (doubleValues == null) doubleValues = new double[COLUMNS.length];
+        doubleValues[column.ordinal()] = value;
+        markWritten(column);
+    }
+
+    public void setBoolean(MetricColumn column, boolean value) {
+        setInt(column, value ? 1 : 0);
+    }
+
+    public void increment(MetricColumn column) {
+        intValues[column.ordinal()]++;
+        markWritten(column);
+    }
+
+    public int getInt(MetricColumn column) {
+        return intValues[column.ordinal()];
+    }
+
+    public double getDouble(MetricColumn column) {
+        return doubleValues == null ? 0.0 : doubleValues[column.ordinal()];
+    }
+
+    public boolean getBoolean(MetricColumn column) {
+        return getInt(column) != 0;
+    }
+
+    public boolean isWritten(MetricColumn column) {
+        return (writtenColumns & (1L << column.ordinal())) != 0;
+    }
+
+    /**
+     * Copies the columns written in another record of the same method into this one
+     *
+     * @param other the record to merge
+     */
+    public void merge(MethodRecord other) {
+        for (MetricColumn column : COLUMNS) {
+            if (!other.isWritten(column)) continue;
+            if (column.getType() == MetricColumn.Type.DOUBLE) setDouble(column, other.getDouble(column));
+            else setInt(column, other.getInt(column));
+        }
+    }
+
+    /**
+     * Creates a copy of this record, so that cached records are not modified while joining
+     *
+     * @return a new record with the same method and values
+     */
+    public MethodRecord copy() {
+        MethodRecord copy = new MethodRecord(relativePath, startLine, namePrefix, name);
+        System.arraycopy(intValues, 0, copy.intValues, 0, intValues.length);
+        if (doubleValues != null) copy.doubleValues = doubleValues.clone();
+        copy.writtenColumns = writtenColumns;
+        return copy;
+    }
+
+    /**
+     * @param other another record
+     * @return whether the other record refers to the same method
+     */
+    public boolean isSameMethod(MethodRecord other) {
+        return startLine == other.startLine && relativePath.equals(other.relativePath) && compareQualifiedNames(this, other) == 0;
+    }
+
+    /**
+     * Compares the fully qualified names of two records as strings, without building them
+     */
+    private static int compareQualifiedNames(MethodRecord first, MethodRecord second) {
+        if (first.namePrefix.equals(second.namePrefix)) return first.name.compareTo(second.name);
+        int firstLength = first.namePrefix.length() + first.name.length();
+        int secondLength = second.namePrefix.length() + second.name.length();
+        for (int i = 0; i < Math.min(firstLength, secondLength); i++) {
+            char firstChar = first.qualifiedNameCharAt(i);
+            char secondChar = second.qualifiedNameCharAt(i);
+            if (firstChar != secondChar) return firstChar - secondChar;
+        }
+        return firstLength - secondLength;
+    }
+
+    private char qualifiedNameCharAt(int index) {
+        return index < namePrefix.length() ? namePrefix.charAt(index) : name.charAt(index - namePrefix.length());
+    }
+
+    private void markWritten(MetricColumn column) {
+        writtenColumns |= 1L << column.ordinal();
+    }
+}
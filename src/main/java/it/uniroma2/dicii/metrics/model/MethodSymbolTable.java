@@ -0,0 +1,125 @@
+package it.uniroma2.dicii.metrics.model;
+
+import it.uniroma2.dicii.metrics.impl.MethodNameGenerator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-release symbol table of the measured methods.
+ * Each method identity, i.e., its fully qualified name and start line, is interned once and mapped to a dense
+ * integer id, so that results can be merged by array indexing instead of building and hashing the full method name
+ * for every extractor.
+ * <p>
+ * Methods are looked up by the name prefix of their file, shared by all the file's methods, and their simple name,
+ * so the fully qualified name is never built to look up a method. The table is thread-safe, since extractors may run
+ * concurrently: lookups of interned methods don't lock, and only new methods are assigned an id under the lock.
+ * </p>
+ */
+public class MethodSymbolTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // For each name prefix and simple name, the (start line, id) pairs of its methods; overloads are usually few
+    private final Map<String, Map<String, int[]>> idsByPrefix;
+    // Method identities by id, replaced when growing; the entries below size are published by writing size
+    private volatile String[] namePrefixes;
+    private volatile String[] names;
+    private volatile int[] startLines;
+    private volatile int size;
+
+    public MethodSymbolTable() {
+        this.idsByPrefix = new ConcurrentHashMap<>();
+        this.namePrefixes = new String[INITIAL_CAPACITY];
+        this.names = new String[INITIAL_CAPACITY];
+        this.startLines = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the id of the given method, assigning a new one if the method was never interned before
+     *
+     * @param namePrefix the prefix of the method's fully qualified name, up to the last dot (e.g., com.example.MyClass.)
+     * @param name       the simple name of the method (e.g., method)
+     * @param startLine  the line the method declaration starts at
+     * @return the method id, between 0 (inclusive) and {@link #size()} (exclusive)
+     */
+    public int intern(String namePrefix, String name, int startLine) {
+        Map<String, int[]> idsByName = idsByPrefix.get(namePrefix);
+        if (idsByName == null) idsByName = idsByPrefix.computeIfAbsent(namePrefix, prefix -> new ConcurrentHashMap<>());
+        int id = findId(idsByName.get(name), startLine);
+        if (id >= 0) return id;
+
+        synchronized (this) {
+            int[] pairs = idsByName.get(name);
+            id = findId(pairs, startLine);
+            if (id >= 0) return id;
+
+            id = size;
+            if (id == startLines.length) {
+                namePrefixes = Arrays.copyOf(namePrefixes, id * 2);
+                names = Arrays.copyOf(names, id * 2);
+                startLines = Arrays.copyOf(startLines, id * 2);
+            }
+            namePrefixes[id] = namePrefix;
+            names[id] = name;
+            startLines[id] = startLine;
+            size = id + 1;
+
+            if (pairs == null) pairs = new int[]{startLine, id};
+            else {
+                pairs = Arrays.copyOf(pairs, pairs.length + 2);
+                pairs[pairs.length - 2] = startLine;
+                pairs[pairs.length - 1] = id;
+            }
+            idsByName.put(name, pairs);
+            return id;
+        }
+    }
+
+    private static int findId(int[] pairs, int startLine) {
+        if (pairs != null) {
+            for (int i = 0; i < pairs.length; i += 2)
+                if (pairs[i] == startLine) return pairs[i + 1];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of interned methods
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getNamePrefix(int id) {
+        Objects.checkIndex(id, size);
+        return namePrefixes[id];
+    }
+
+    public String getName(int id) {
+        Objects.checkIndex(id, size);
+        return names[id];
+    }
+
+    public String getQualifiedName(int id) {
+        return getNamePrefix(id) + getName(id);
+    }
+
+    public int getStartLine(int id) {
+        Objects.checkIndex(id, size);
+        return startLines[id];
+    }
+
+    /**
+     * Builds the unique name of a method, as written to the dataset
+     *
+     * @param id the method id
+     * @return the method name in the format "package.Class.method#startLine"
+     */
+    public String getMethodName(int id) {
+        return MethodNameGenerator.generateMethodName(getQualifiedName(id), getStartLine(id));
+    }
+
+}
@@ -0,0 +1,63 @@
+package it.uniroma2.dicii.metrics.model;
+
+import lombok.Getter;
+
+/**
+ * The columns of a {@link MetricTable}, in the same order as they are written to the dataset.
+ * Each column is owned by the extractor type that computes it, if any, and is stored with a primitive type.
+ */
+@Getter
+public enum MetricColumn {
+
+    // Complexity metrics
+    CYCLOMATIC_COMPLEXITY("CyC", MetricsExtractorType.CK, Type.INT),
+    COGNITIVE_COMPLEXITY("CoC", MetricsExtractorType.JAVA_PARSER, Type.INT),
+    MAX_NESTING_DEPTH("MND", MetricsExtractorType.CK, Type.INT),
+    HAS_JAVA_DOCS("JD", MetricsExtractorType.CK, Type.BOOLEAN),
+
+    // Size metrics
+    SOURCE_LINES_OF_CODE("SLOC", MetricsExtractorType.CK, Type.INT),
+    PARAMETERS_COUNT("NP", MetricsExtractorType.CK, Type.INT),
+    COMMENT_DENSITY("CD", MetricsExtractorType.JAVA_PARSER, Type.DOUBLE),
+
+    // Coupling metrics
+    FAN_IN("FI", MetricsExtractorType.CK, Type.INT),
+    FAN_OUT("FO", MetricsExtractorType.CK, Type.INT),
+
+    // History metrics
+    CHURN("CH", MetricsExtractorType.VCS, Type.INT),
+    DEFECT_COUNT("PD", MetricsExtractorType.SONAR, Type.INT),
+    DEVELOPER_COUNT("DC", MetricsExtractorType.VCS, Type.INT),
+
+    // Smells metrics
+    BLOCKER_SMELLS_COUNT("BS", MetricsExtractorType.SONAR, Type.INT),
+    CRITICAL_SMELLS_COUNT("HS", MetricsExtractorType.SONAR, Type.INT),
+    MAJOR_SMELLS_COUNT("MS", MetricsExtractorType.SONAR, Type.INT),
+    MINOR_SMELLS_COUNT("LS", MetricsExtractorType.SONAR, Type.INT),
+    INFO_SMELLS_COUNT("IS", MetricsExtractorType.SONAR, Type.INT),
+
+    // Buggyness flag, the label of the dataset; not computed by any extractor
+    BUGGY("buggy", null, Type.BOOLEAN);
+
+    /**
+     * The primitive type used to store the values of a column
+     */
+    public enum Type {
+        INT,
+        DOUBLE,
+        // Stored as 0/1 integers
+        BOOLEAN
+    }
+
+    // The column name within the dataset header
+    private final String label;
+    // The extractor type computing the column, or null if no extractor computes it
+    private final MetricsExtractorType owner;
+    private final Type type;
+
+    MetricColumn(String label, MetricsExtractorType owner, Type type) {
+        this.label = label;
+        this.owner = owner;
+        this.type = type;
+    }
+}
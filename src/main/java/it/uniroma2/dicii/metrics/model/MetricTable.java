@@ -0,0 +1,187 @@
+package it.uniroma2.dicii.metrics.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Columnar table of the metrics measured in a release.
+ * Rows are indexed by the method ids of a {@link MethodSymbolTable}, and each {@link MetricColumn} is stored as a
+ * single primitive array, allocated the first time the column is written. The records of an extractor are written
+ * into their own table, so merging the results of different extractors only requires copying whole columns.
+ * <p>
+ * Writes are not thread-safe: extractors running concurrently write into their own tables sharing the same
+ * symbol table, which are then merged with {@link #copyFrom(MetricTable)}.
+ * </p>
+ */
+public class MetricTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+    @Getter
+    private final MethodSymbolTable symbols;
+
+    // Values indexed by column ordinal and method id; a column is null until it is written
+    private final int[][] intColumns;
+    private final double[][] doubleColumns;
+
+    // Whether a row was added for each method id
+    private boolean[] rows;
+    @Getter
+    private int rowCount;
+
+    /**
+     * Creates a table with its own symbol table
+     */
+    public MetricTable() {
+        this(new MethodSymbolTable());
+    }
+
+    /**
+     * @param symbols the symbol table the row ids refer to
+     */
+    public MetricTable(MethodSymbolTable symbols) {
+        this.symbols = symbols;
+        this.intColumns = new int[COLUMNS.length][];
+        this.doubleColumns = new double[COLUMNS.length][];
+        this.rows = new boolean[Math.max(INITIAL_CAPACITY, symbols.size())];
+    }
+
+    /**
+     * Adds the row of a method, if not already present. Values of a row must be set only after adding it.
+     *
+     * @param id the method id
+     */
+    public void addRow(int id) {
+        if (id >= rows.length) grow(id + 1);
+        if (!rows[id]) {
+            rows[id] = true;
+            rowCount++;
+        }
+    }
+
+    public boolean hasRow(int id) {
+        return id >= 0 && id < rows.length && rows[id];
+    }
+
+    /**
+     * Returns the first row id greater than or equal to the given one, so that rows can be iterated in id order
+     *
+     * @param fromId the id the search starts from
+     * @return the id of the next row, or -1 if there are no more rows
+     */
+    public int nextRow(int fromId) {
+        for (int id = Math.max(fromId, 0); id < rows.length; id++)
+            if (rows[id]) return id;
+        return -1;
+    }
+
+    public void setInt(MetricColumn column, int id, int value) {
+        intColumn(column)[id] = value;
+    }
+
+    public void setDouble(MetricColumn column, int id, double value) {
+        doubleColumn(column)[id] = value;
+    }
+
+    public void setBoolean(MetricColumn column, int id, boolean value) {
+        intColumn(column)[id] = value ? 1 : 0;
+    }
+
+    public void increment(MetricColumn column, int id) {
+        intColumn(column)[id]++;
+    }
+
+    public int getInt(MetricColumn column, int id) {
+        int[] values = intColumns[column.ordinal()];
+        return values == null ? 0 : values[id];
+    }
+
+    public double getDouble(MetricColumn column, int id) {
+        double[] values = doubleColumns[column.ordinal()];
+        return values == null ? 0.0 : values[id];
+    }
+
+    public boolean getBoolean(MetricColumn column, int id) {
+        return getInt(column, id) != 0;
+    }
+
+    /**
+     * Adds the row of a streamed method, setting only the columns written in the record
+     *
+     * @param record the method record
+     */
+    public void addRecord(MethodRecord record) {
+        int id = symbols.intern(record.getNamePrefix(), record.getName(), record.getStartLine());
+        addRow(id);
+        for (MetricColumn column : COLUMNS) {
+            if (!record.isWritten(column)) continue;
+            if (column.getType() == MetricColumn.Type.DOUBLE) setDouble(column, id, record.getDouble(column));
+            else setInt(column, id, record.getInt(column));
+        }
+    }
+
+    /**
+     * Copies all the rows of another table into this one, overwriting only the columns written in the source.
+     * Rows are matched by id if both tables share the same symbol table, or re-interned by method otherwise.
+     *
+     * @param source the table to copy
+     */
+    public synchronized void copyFrom(MetricTable source) {
+        // Maps each source id to the id within this table
+        int[] targetIds = new int[source.rows.length];
+        for (int id = 0; id < source.rows.length; id++) {
+            if (!source.rows[id]) continue;
+            targetIds[id] = source.symbols == symbols ? id : symbols.intern(source.symbols.getNamePrefix(id), source.symbols.getName(id), source.symbols.getStartLine(id));
+            addRow(targetIds[id]);
+        }
+
+        for (MetricColumn column : COLUMNS) {
+            int[] sourceInts = source.intColumns[column.ordinal()];
+            if (sourceInts != null) {
+                int[] targetInts = intColumn(column);
+                for (int id = 0; id < sourceInts.length; id++)
+                    if (source.rows[id]) targetInts[targetIds[id]] = sourceInts[id];
+            }
+            double[] sourceDoubles = source.doubleColumns[column.ordinal()];
+            if (sourceDoubles != null) {
+                double[] targetDoubles = doubleColumn(column);
+                for (int id = 0; id < sourceDoubles.length; id++)
+                    if (source.rows[id]) targetDoubles[targetIds[id]] = sourceDoubles[id];
+            }
+        }
+    }
+
+    private int[] intColumn(MetricColumn column) {
+        int[] values = intColumns[column.ordinal()];
+        if (values == null) {
+            values = new int[rows.length];
+            intColumns[column.ordinal()] = values;
+        }
+        return values;
+    }
+
+    private double[] doubleColumn(MetricColumn column) {
+        double[] values = doubleColumns[column.ordinal()];
+        if (values == null) {
+            values = new double[rows.length];
+            doubleColumns[column.ordinal()] = values;
+        }
+        return values;
+    }
+
+    /**
+     * Grows the rows and all the allocated columns, at least doubling their capacity
+     *
+     * @param minCapacity the min number of rows the table must hold
+     */
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, rows.length * 2);
+        rows = Arrays.copyOf(rows, capacity);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (intColumns[i] != null) intColumns[i] = Arrays.copyOf(intColumns[i], capacity);
+            if (doubleColumns[i] != null) doubleColumns[i] = Arrays.copyOf(doubleColumns[i], capacity);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package it.uniroma2.dicii.metrics.model;
+
+import it.uniroma2.dicii.analysis.model.SonarAnalysisResult;
+import it.uniroma2.dicii.maven.model.MavenModule;
+import it.uniroma2.dicii.metrics.source.SourceIndex;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The state of the repository at a release, as seen by the extractors
+ */
+@Data
+public class ReleaseSnapshot {
+
+    private final String tagName;
+
+    private final String commitId;
+
+    private final List<MavenModule> modules;
+
+    private final SourceIndex sourceIndex;
+
+    // Issues found by Sonar at the release; null or empty if the analysis failed
+    private final List<SonarAnalysisResult> sonarResults;
+
+    /**
+     * @param input an input an extractor may depend on
+     * @return whether the release provides the given input
+     */
+    public boolean provides(ExtractorInput input) {
+        return switch (input) {
+            case SOURCES, CLASSPATH, HISTORY -> true;
+            case SONAR_ISSUES -> sonarResults != null && !sonarResults.isEmpty();
+        };
+    }
+}
@@ -0,0 +1,365 @@
+package it.uniroma2.dicii.metrics.source;
+
+import it.uniroma2.dicii.metrics.source.model.MethodSpan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds the methods declared in a Java source by tokenizing it, without building its AST.
+ * Extractors that only need the name and the line range of each method (e.g., to map blame or Sonar issues)
+ * can use it instead of a full parse, which is several times slower and allocates a whole syntax tree.
+ * <p>
+ * Comments and literals are skipped by the lexer, and declarations are recognized by tracking braces:
+ * a brace opens either a type body (classes, interfaces, enums, records, anonymous classes and enum constants),
+ * whose members are split on semicolons and closed braces, or a block of code. A member followed by a body is a
+ * method if it has a parameter list and no initializer; constructors, initializers and lambdas are not methods.
+ * As for JavaParser, methods declared within anonymous and local classes are found as well.
+ * </p>
+ */
+public class JavaMethodScanner {
+
+    // Token kinds other than symbols, which are identified by their own character
+    private static final int IDENTIFIER = -1;
+    private static final int LITERAL = -2;
+
+    private static final String[] MODIFIERS = {"public", "protected", "private", "static", "final", "abstract", "synchronized", "native", "strictfp", "default"};
+
+    private final CharSequence source;
+
+    // Tokens, stored as parallel arrays
+    private int[] kinds = new int[256];
+    private int[] lines = new int[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int size;
+
+    private JavaMethodScanner(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * @param source the content of a Java source file
+     * @return the methods with a body, in declaration order
+     */
+    public static List<MethodSpan> scan(CharSequence source) {
+        JavaMethodScanner scanner = new JavaMethodScanner(source);
+        scanner.tokenize();
+        return scanner.findMethods();
+    }
+
+    private void tokenize() {
+        int line = 1;
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (c == '\r') {
+                line++;
+                i += i + 1 < length && source.charAt(i + 1) == '\n' ? 2 : 1;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = indexOf("*/", i + 2);
+                line += countLines(i, end);
+                i = end;
+            } else if (c == '"' || c == '\'') {
+                int start = i;
+                int end = c == '"' && startsWith("\"\"\"", i) ? indexOf("\"\"\"", i + 3) : skipQuoted(c, i + 1);
+                addToken(LITERAL, line, start, end);
+                line += countLines(start, end);
+                i = end;
+            } else if (Character.isJavaIdentifierPart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) i++;
+                addToken(IDENTIFIER, line, start, i);
+            } else {
+                addToken(c, line, i, i + 1);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the index following the closing quote of a string or char literal, or the end of its line if unclosed
+     */
+    private int skipQuoted(char quote, int from) {
+        int i = from;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\') i += 2;
+            else if (c == quote) return i + 1;
+            else if (c == '\n' || c == '\r') return i;
+            else i++;
+        }
+        return source.length();
+    }
+
+    /**
+     * @return the index following the first unescaped occurrence of the given delimiter, or the end of the source
+     */
+    private int indexOf(String delimiter, int from) {
+        for (int i = from; i < source.length(); i++) {
+            if (source.charAt(i) == '\\') i++;
+            else if (startsWith(delimiter, i)) return i + delimiter.length();
+        }
+        return source.length();
+    }
+
+    private boolean startsWith(String prefix, int from) {
+        if (from + prefix.length() > source.length()) return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (source.charAt(from + i) != prefix.charAt(i)) return false;
+        return true;
+    }
+
+    private int countLines(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 >= to || source.charAt(i + 1) != '\n'))) count++;
+        }
+        return count;
+    }
+
+    private void addToken(int kind, int line, int start, int end) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        kinds[size] = kind;
+        lines[size] = line;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    private List<MethodSpan> findMethods() {
+        List<MethodSpan> methods = new ArrayList<>();
+        Deque<Context> contexts = new ArrayDeque<>();
+        // The compilation unit is handled as a type body, whose members are the type declarations
+        contexts.push(new Context(true, null, false, null, true, 0));
+
+        for (int i = 0; i < size; i++) {
+            Context context = contexts.peek();
+            switch (kinds[i]) {
+                case '(' -> context.parenDepth++;
+                case ')' -> context.parenDepth = Math.max(0, context.parenDepth - 1);
+                case ';' -> {
+                    if (context.parenDepth == 0) {
+                        context.memberStart = i + 1;
+                        context.enumConstants = false;
+                    }
+                }
+                case ',' -> {
+                    if (context.typeBody && context.enumConstants && context.parenDepth == 0) context.memberStart = i + 1;
+                }
+                case '{' -> contexts.push(openBody(context, i));
+                case '}' -> {
+                    if (contexts.size() == 1) continue;
+                    Context closed = contexts.pop();
+                    if (closed.method != null) methods.add(new MethodSpan(closed.method, closed.methodStartLine, lines[i]));
+                    Context parent = contexts.peek();
+                    // Blocks within code and member bodies end a statement or member, while other blocks
+                    // (e.g., array values of annotations) are part of the enclosing member
+                    if (!parent.typeBody || closed.endsMember) {
+                        parent.memberStart = i + 1;
+                        parent.parenDepth = 0;
+                    }
+                }
+                default -> {
+                    // Identifiers and literals are only inspected when a body is opened
+                }
+            }
+        }
+        // Methods are emitted when closed, so nested ones come first
+        methods.sort((a, b) -> Integer.compare(a.getStartLine(), b.getStartLine()));
+        return methods;
+    }
+
+    /**
+     * Classifies the body opened by the brace at the given index, according to the tokens preceding it
+     */
+    private Context openBody(Context context, int brace) {
+        int from = context.memberStart;
+        if (isAnonymousClass(from, brace)) return new Context(true, null, false, null, false, brace + 1);
+
+        if (context.typeBody && context.enumConstants && context.parenDepth == 0)
+            return new Context(true, null, false, null, false, brace + 1);
+
+        int typeName = findTypeName(from, brace);
+        if (typeName >= 0)
+            return new Context(true, text(typeName), isIdentifier(typeName - 1, "enum"), null, true, brace + 1);
+
+        if (context.typeBody && context.parenDepth == 0) {
+            int name = findMethodName(from, brace);
+            if (name >= 0 && !isConstructor(from, name, context.typeName)) {
+                Context method = new Context(false, null, false, text(name), true, brace + 1);
+                method.methodStartLine = lines[from];
+                return method;
+            }
+            // Constructors, initializers and field values
+            return new Context(false, null, false, null, true, brace + 1);
+        }
+        return new Context(false, null, false, null, false, brace + 1);
+    }
+
+    /**
+     * @return whether the tokens end with an instance creation (e.g., {@code new Type<>(args)}), followed by a class body
+     */
+    private boolean isAnonymousClass(int from, int to) {
+        int i = to - 1;
+        if (i < from || kinds[i] != ')') return false;
+        i = skipBackwards(i, '(', ')', from);
+        i--;
+        if (i >= from && kinds[i] == '>') i = skipBackwards(i, '<', '>', from) - 1;
+        if (i < from || kinds[i] != IDENTIFIER) return false;
+        while (i - 2 >= from && kinds[i - 1] == '.' && kinds[i - 2] == IDENTIFIER) i -= 2;
+        return isIdentifier(i - 1, "new") && i - 1 >= from;
+    }
+
+    /**
+     * @return the index of the token opening the group closed at the given index, or -1 if unbalanced
+     */
+    private int skipBackwards(int close, int openKind, int closeKind, int from) {
+        int depth = 0;
+        for (int i = close; i >= from; i--) {
+            if (kinds[i] == closeKind) depth++;
+            else if (kinds[i] == openKind && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the name of the type declared by the tokens, or -1 if they don't declare a type
+     */
+    private int findTypeName(int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to - 1; i++) {
+            if (kinds[i] == '(') depth++;
+            else if (kinds[i] == ')') depth--;
+            else if (depth == 0 && kinds[i + 1] == IDENTIFIER && (i == from || kinds[i - 1] != '.')) {
+                if (isIdentifier(i, "class") || isIdentifier(i, "interface") || isIdentifier(i, "enum")) return i + 1;
+                // Records are only recognized by their header, since "record" is not a reserved word
+                if (isIdentifier(i, "record") && i + 2 < to && (kinds[i + 2] == '(' || kinds[i + 2] == '<')) return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the name of the method declared by the tokens, or -1 if they don't declare a method
+     */
+    private int findMethodName(int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            if (kinds[i] == '=' && depth == 0) return -1;
+            if (kinds[i] == '(') {
+                if (depth == 0 && i > from && kinds[i - 1] == IDENTIFIER && !isAnnotationName(from, i - 1)) {
+                    int close = skipForwards(i, to);
+                    if (close < 0) return -1;
+                    // Elements of annotation types may have an array as default value
+                    for (int j = close + 1; j < to; j++)
+                        if (isIdentifier(j, "default")) return -1;
+                    return i - 1;
+                }
+                depth++;
+            } else if (kinds[i] == ')') {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tells constructors apart from methods, which may be named after their class as well but have a return type
+     *
+     * @return whether the name at the given index is the one of a constructor
+     */
+    private boolean isConstructor(int from, int name, String typeName) {
+        if (!text(name).equals(typeName)) return false;
+        int i = name - 1;
+        // Type parameters (e.g., <T> MyClass(T t)) are skipped, unlike the type arguments of a return type (e.g., List<T> MyClass())
+        if (i >= from && kinds[i] == '>') i = skipBackwards(i, '<', '>', from) - 1;
+        if (i < from) return true;
+        if (kinds[i] == ')') return true; // Annotation with arguments
+        if (kinds[i] != IDENTIFIER) return false;
+        return isAnnotationName(from, i) || isModifier(i);
+    }
+
+    private boolean isModifier(int i) {
+        for (String modifier : MODIFIERS)
+            if (isIdentifier(i, modifier)) return true;
+        return false;
+    }
+
+    /**
+     * @return the index of the parenthesis closing the one at the given index, or -1 if unbalanced
+     */
+    private int skipForwards(int open, int to) {
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            if (kinds[i] == '(') depth++;
+            else if (kinds[i] == ')' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the identifier at the given index names an annotation (e.g., {@code @Foo} or {@code @a.b.Foo})
+     */
+    private boolean isAnnotationName(int from, int i) {
+        while (i - 2 >= from && kinds[i - 1] == '.' && kinds[i - 2] == IDENTIFIER) i -= 2;
+        return i - 1 >= from && kinds[i - 1] == '@';
+    }
+
+    private boolean isIdentifier(int i, String word) {
+        if (i < 0 || i >= size || kinds[i] != IDENTIFIER || ends[i] - starts[i] != word.length()) return false;
+        for (int j = 0; j < word.length(); j++)
+            if (source.charAt(starts[i] + j) != word.charAt(j)) return false;
+        return true;
+    }
+
+    private String text(int i) {
+        return source.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /**
+     * A body opened by a brace
+     */
+    private static class Context {
+        // Whether the body contains members (i.e., it belongs to a type) rather than code
+        private final boolean typeBody;
+        // Name of the type, used to tell constructors apart; null for anonymous classes and code
+        private final String typeName;
+        // Name of the method, if the body is a method's one
+        private final String method;
+        // Whether closing the body also ends the enclosing member
+        private final boolean endsMember;
+        private int methodStartLine;
+        // Whether the constants of an enum are being scanned
+        private boolean enumConstants;
+        // Index of the first token of the current member or statement
+        private int memberStart;
+        private int parenDepth;
+
+        private Context(boolean typeBody, String typeName, boolean enumConstants, String method, boolean endsMember, int memberStart) {
+            this.typeBody = typeBody;
+            this.typeName = typeName;
+            this.enumConstants = enumConstants;
+            this.method = method;
+            this.endsMember = endsMember;
+            this.memberStart = memberStart;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package it.uniroma2.dicii.metrics.source;
+
+import it.uniroma2.dicii.maven.model.MavenModule;
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Index of the production source files of a release, built once per release and shared by all extractors,
+ * so that the repository is traversed a single time and every extractor analyzes the same set of files.
+ * <p>
+ * A file is indexed if it is a Java file under a {@code src/main/java} directory and not within a {@code target}
+ * directory. Files are ordered by relative path.
+ * </p><p>
+ * The other Java files of the release (e.g., tests) are not indexed, but their paths are kept for the extractors
+ * whose metrics also depend on the code referring to the indexed files (e.g., the fan-in computed by CK).
+ * </p>
+ */
+@Slf4j
+public class SourceIndex {
+
+    private static final String SOURCE_ROOT = "src/main/java/";
+    private static final String JAVA_EXTENSION = ".java";
+
+    private final List<SourceFile> files;
+    private final Map<String, SourceFile> filesByRelativePath;
+    private final Map<MavenModule, List<SourceFile>> filesByModule;
+
+    // Absolute paths of the Java files out of the index, sorted
+    private final List<Path> otherFiles;
+
+    private SourceIndex(List<SourceFile> files, List<Path> otherFiles, List<MavenModule> modules) {
+        this.files = Collections.unmodifiableList(files);
+        this.otherFiles = Collections.unmodifiableList(otherFiles);
+        this.filesByRelativePath = new HashMap<>();
+        this.filesByModule = new LinkedHashMap<>();
+        modules.forEach(m -> filesByModule.put(m, new ArrayList<>()));
+        for (SourceFile file : files) {
+            filesByRelativePath.put(file.getRelativePath(), file);
+            filesByModule.get(file.getModule()).add(file);
+        }
+    }
+
+    /**
+     * Builds the index of the release currently checked out, walking the tree of the HEAD commit.
+     * If the repository can't be read, the working tree is walked instead, and files have no blob id.
+     *
+     * @param repoPath the repository root
+     * @param modules  the modules of the project; each file is assigned to the module owning its source root
+     * @return the source index
+     */
+    public static SourceIndex build(Path repoPath, List<MavenModule> modules) {
+        List<SourceFile> files = new ArrayList<>();
+        List<Path> otherFiles = new ArrayList<>();
+        try {
+            walkHeadTree(repoPath, modules, files, otherFiles);
+        } catch (IOException e) {
+            log.warn("Unable to walk the Git tree ({}). Walking the working tree instead.", e.getMessage());
+            files.clear();
+            otherFiles.clear();
+            walkWorkingTree(repoPath, modules, files, otherFiles);
+        }
+        files.sort(Comparator.comparing(SourceFile::getRelativePath));
+        Collections.sort(otherFiles);
+        log.info("Indexed {} source files ({} other Java files)", files.size(), otherFiles.size());
+        return new SourceIndex(files, otherFiles, modules);
+    }
+
+    public List<SourceFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the absolute paths of the Java files of the release that are not indexed (e.g., tests),
+     * excluding the ones within {@code target} directories
+     */
+    public List<Path> getOtherFiles() {
+        return otherFiles;
+    }
+
+    /**
+     * @param module a module of the project
+     * @return the files belonging to the given module
+     */
+    public List<SourceFile> getFiles(MavenModule module) {
+        return filesByModule.getOrDefault(module, List.of());
+    }
+
+    /**
+     * @param relativePath the path of a file, relative to the repository root
+     * @return the indexed file, or null if the file is not indexed
+     */
+    public SourceFile getFile(String relativePath) {
+        return filesByRelativePath.get(relativePath);
+    }
+
+    private static void walkHeadTree(Path repoPath, List<MavenModule> modules, List<SourceFile> files, List<Path> otherFiles) throws IOException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(new File(repoPath + "/.git")).build(); RevWalk revWalk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader(); TreeWalk treeWalk = new TreeWalk(reader)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) throw new IOException("HEAD can't be resolved");
+            RevCommit commit = revWalk.parseCommit(head);
+
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathSuffixFilter.create(JAVA_EXTENSION));
+            while (treeWalk.next()) {
+                String relativePath = treeWalk.getPathString();
+                MavenModule module = findModule(relativePath, modules);
+                if (!isProductionSource(relativePath) || module == null) {
+                    if (!isBuildOutput(relativePath)) otherFiles.add(repoPath.resolve(relativePath));
+                    continue;
+                }
+                ObjectId blobId = treeWalk.getObjectId(0);
+                long size = reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+                files.add(new SourceFile(repoPath.resolve(relativePath), relativePath, toFullyQualifiedNamePrefix(relativePath), module, blobId.getName(), size));
+            }
+        }
+    }
+
+    private static void walkWorkingTree(Path repoPath, List<MavenModule> modules, List<SourceFile> files, List<Path> otherFiles) {
+        try (Stream<Path> paths = Files.walk(repoPath)) {
+            paths.filter(p -> p.toString().endsWith(JAVA_EXTENSION)).forEach(path -> {
+                String relativePath = repoPath.relativize(path).toString().replace('\\', '/');
+                MavenModule module = findModule(relativePath, modules);
+                if (!isProductionSource(relativePath) || module == null) {
+                    if (!isBuildOutput(relativePath)) otherFiles.add(path);
+                    return;
+                }
+                try {
+                    files.add(new SourceFile(path, relativePath, toFullyQualifiedNamePrefix(relativePath), module, null, Files.size(path)));
+                } catch (IOException e) {
+                    log.warn("Unable to index file {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("Error walking project files", e);
+        }
+    }
+
+    /**
+     * @param relativePath the path of a file, relative to the repository root
+     * @return whether the file is a production source, i.e., under {@code src/main/java} and not within {@code target}
+     */
+    private static boolean isProductionSource(String relativePath) {
+        return (relativePath.startsWith(SOURCE_ROOT) || relativePath.contains("/" + SOURCE_ROOT)) && !isBuildOutput(relativePath);
+    }
+
+    /**
+     * @param relativePath the path of a file, relative to the repository root
+     * @return whether the file is within a {@code target} directory, e.g., a generated source
+     */
+    private static boolean isBuildOutput(String relativePath) {
+        return relativePath.startsWith("target/") || relativePath.contains("/target/");
+    }
+
+    /**
+     * Finds the module owning the given file, i.e., the one with the longest source root containing it
+     *
+     * @param relativePath the path of a file, relative to the repository root
+     * @param modules      the modules of the project
+     * @return the owning module, or null if no module contains the file
+     */
+    private static MavenModule findModule(String relativePath, List<MavenModule> modules) {
+        MavenModule owner = null;
+        for (MavenModule module : modules) {
+            String sourceRoot = module.getRelativeSourceRoot();
+            boolean contains = sourceRoot.isEmpty() || relativePath.startsWith(sourceRoot + "/");
+            if (contains && (owner == null || sourceRoot.length() > owner.getRelativeSourceRoot().length()))
+                owner = module;
+        }
+        return owner;
+    }
+
+    /**
+     * Converts the path of a source file into the prefix of its methods' fully qualified names,
+     * e.g., {@code module/src/main/java/com/example/MyClass.java} into {@code com.example.MyClass.}
+     *
+     * @param relativePath the path of a file, relative to the repository root
+     * @return the fully qualified name prefix
+     */
+    private static String toFullyQualifiedNamePrefix(String relativePath) {
+        String classPath = relativePath.substring(relativePath.indexOf(SOURCE_ROOT) + SOURCE_ROOT.length(), relativePath.length() - JAVA_EXTENSION.length());
+        return classPath.replace('/', '.') + ".";
+    }
+
+}
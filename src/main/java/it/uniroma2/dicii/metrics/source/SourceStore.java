@@ -0,0 +1,127 @@
+package it.uniroma2.dicii.metrics.source;
+
+import it.uniroma2.dicii.metrics.source.model.SourceFile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Contents of the analyzed source files, shared by all extractors of a run.
+ * Each file is read and decoded from UTF-8 once, and its content is kept until the least recently used files
+ * exceed the max number of cached chars. Since contents are keyed by blob id, files unchanged between two releases
+ * are not read again; files without a blob id (i.e., not tracked) are read at every request.
+ * <p>
+ * Concurrent requests of the same file wait for a single read.
+ * </p>
+ */
+@Slf4j
+public class SourceStore {
+
+    private final long maxChars;
+
+    // Contents by blob id and path, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long cachedChars;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxChars the max number of chars kept in memory
+     */
+    public SourceStore(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Returns the content of a source file, reading it only if not cached
+     *
+     * @param file the file to read
+     * @return the decoded content of the file
+     * @throws IOException if the file can't be read
+     */
+    public String read(SourceFile file) throws IOException {
+        if (file.getBlobId() == null) return decode(file);
+
+        String key = file.getBlobId() + ":" + file.getRelativePath();
+        Entry entry;
+        boolean loader = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(new FutureTask<>(() -> decode(file)));
+                entries.put(key, entry);
+                loader = true;
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+
+        if (loader) {
+            entry.content.run();
+            loaded(key, entry);
+        }
+        try {
+            return entry.content.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file.getRelativePath(), e);
+        }
+    }
+
+    /**
+     * Accounts for a file just read, evicting the least recently used files if the store is full.
+     * Files that failed to be read are removed, so that they are read again at the next request.
+     */
+    private synchronized void loaded(String key, Entry entry) {
+        try {
+            entry.chars = entry.content.get().length();
+        } catch (ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            entries.remove(key, entry);
+            return;
+        }
+        cachedChars += entry.chars;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedChars > maxChars && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            // Files still being read are not accounted yet, and the file just read is always kept
+            if (eldest.getValue() == entry || !eldest.getValue().content.isDone()) continue;
+            cachedChars -= eldest.getValue().chars;
+            iterator.remove();
+        }
+    }
+
+    private String decode(SourceFile file) throws IOException {
+        // Malformed input is replaced, as when parsers decode the file on their own
+        return new String(Files.readAllBytes(file.getPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Logs the hit rate of the store
+     */
+    public synchronized void logStatistics() {
+        log.info("Source store: {} files cached ({} chars), {} hits, {} misses", entries.size(), cachedChars, hits, misses);
+    }
+
+    private static class Entry {
+        private final FutureTask<String> content;
+        // Length of the content, set once read
+        private long chars;
+
+        private Entry(FutureTask<String> content) {
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package it.uniroma2.dicii.metrics.source.model;
+
+import lombok.Data;
+
+/**
+ * The position of a method with a body within its source file, as found by the {@code JavaMethodScanner}.
+ * Lines are 1-indexed, and the method starts at its first annotation or modifier, excluding its Javadoc.
+ */
+@Data
+public class MethodSpan {
+
+    // Simple name of the method (e.g., myMethod)
+    private final String name;
+
+    private final int startLine;
+
+    // Line of the closing brace of the method's body
+    private final int endLine;
+
+}
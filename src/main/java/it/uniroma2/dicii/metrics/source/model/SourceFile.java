@@ -0,0 +1,31 @@
+package it.uniroma2.dicii.metrics.source.model;
+
+import it.uniroma2.dicii.maven.model.MavenModule;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * A production source file of the analyzed release, with all the information extractors need to
+ * name its methods and to look it up in Git and in the Sonar results.
+ */
+@Data
+public class SourceFile {
+
+    // Absolute path of the file in the working tree
+    private final Path path;
+
+    // Path relative to the repository root, using '/' as separator (e.g., module/src/main/java/com/example/MyClass.java)
+    private final String relativePath;
+
+    // Prefix of the fully qualified name of the file's methods (e.g., com.example.MyClass.)
+    private final String fullyQualifiedNamePrefix;
+
+    private final MavenModule module;
+
+    // Id of the Git blob at the checked-out commit, or null if the file is not tracked
+    private final String blobId;
+
+    private final long size;
+
+}
@@ -0,0 +1,81 @@
+package it.uniroma2.dicii.metrics.stream;
+
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * K-way merge-join of record streams sorted in the canonical order.
+ * At each step the smallest head among all streams is taken, and merged with the heads of the other streams
+ * referring to the same method; the joined record is then emitted, so that only the heads of the streams are
+ * kept in memory.
+ */
+@Slf4j
+public class MergeJoin {
+
+    private MergeJoin() {
+    }
+
+    /**
+     * Merges the given streams, emitting a single record for each method
+     *
+     * @param streams the streams to join, each one sorted in the canonical order
+     * @param sink    the consumer of the joined records, receiving them in the canonical order
+     * @return the number of emitted records
+     * @throws InterruptedException if interrupted while waiting for a stream; all streams are closed
+     */
+    public static int mergeJoin(List<MethodRecordStream> streams, Consumer<MethodRecord> sink) throws InterruptedException {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::getRecord, MethodRecord.CANONICAL_ORDER));
+        int emitted = 0;
+        try {
+            for (MethodRecordStream stream : streams) advance(new Head(stream), heads);
+
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                MethodRecord joined = head.getRecord();
+                advance(head, heads);
+                // Records of the same method are adjacent, since streams are sorted
+                while (!heads.isEmpty() && heads.peek().getRecord().isSameMethod(joined)) {
+                    Head other = heads.poll();
+                    joined.merge(other.getRecord());
+                    advance(other, heads);
+                }
+                sink.accept(joined);
+                emitted++;
+            }
+        } finally {
+            // Streams still open (e.g., on interruption) are stopped
+            for (MethodRecordStream stream : streams) stream.close();
+        }
+        return emitted;
+    }
+
+    /**
+     * Reads the next record of the head's stream, and puts the head back in the queue unless the stream ended
+     */
+    private static void advance(Head head, PriorityQueue<Head> heads) throws InterruptedException {
+        MethodRecord previous = head.getRecord();
+        head.record = head.stream.next();
+        if (head.record == null) return;
+        if (previous != null && MethodRecord.CANONICAL_ORDER.compare(previous, head.record) > 0)
+            log.warn("{} emitted record {} out of order", head.stream.getName(), head.record.getQualifiedName());
+        heads.add(head);
+    }
+
+    private static class Head {
+        private final MethodRecordStream stream;
+        private MethodRecord record;
+
+        private Head(MethodRecordStream stream) {
+            this.stream = stream;
+        }
+
+        private MethodRecord getRecord() {
+            return record;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.uniroma2.dicii.metrics.stream;
+
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A stream of method records produced by a task running on an executor.
+ * Records are handed over through a bounded queue, so that a producer can't get ahead of the consumer
+ * by more than the queue capacity, and memory doesn't depend on the size of the analyzed codebase.
+ * <p>
+ * If the producer fails or exceeds its deadline, the stream ends early and the remaining records are dropped.
+ * </p>
+ */
+@Slf4j
+public class MethodRecordStream {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Marks the end of the stream within the queue
+    private static final MethodRecord END_OF_STREAM = new MethodRecord("", 0, "", "");
+
+    @Getter
+    private final String name;
+    private final BlockingQueue<MethodRecord> queue;
+    // Deadline in System.nanoTime() terms, or Long.MAX_VALUE if unbounded
+    private final long deadline;
+    private Future<?> producer;
+    private volatile boolean closed;
+    private boolean ended;
+
+    private MethodRecordStream(String name, long deadline) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.deadline = deadline;
+    }
+
+    /**
+     * Starts a producer on the given executor and returns the stream of its records
+     *
+     * @param name     the name of the producer, used for logging
+     * @param producer the task emitting the records, in canonical order, to the given sink
+     * @param executor the executor running the producer
+     * @param timeout  the max duration of the producer; if null, it is unbounded
+     * @return the stream of the produced records
+     */
+    public static MethodRecordStream start(String name, Consumer<Consumer<MethodRecord>> producer, ExecutorService executor, Duration timeout) {
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : Long.MAX_VALUE;
+        MethodRecordStream stream = new MethodRecordStream(name, deadline);
+        stream.producer = executor.submit(() -> {
+            try {
+                producer.accept(stream::offer);
+            } catch (RuntimeException e) {
+                log.error("{} failed, its remaining records are missing: {}", name, e.getMessage(), e);
+            } finally {
+                stream.offer(END_OF_STREAM);
+            }
+        });
+        return stream;
+    }
+
+    /**
+     * Returns the next record, waiting for the producer if needed
+     *
+     * @return the next record, or null if the stream ended
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public MethodRecord next() throws InterruptedException {
+        if (ended) return null;
+        MethodRecord record = deadline == Long.MAX_VALUE ? queue.take() : queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (record == null) {
+            log.error("{} timed out, its remaining records are missing", name);
+            close();
+            return null;
+        }
+        if (record == END_OF_STREAM) {
+            ended = true;
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Stops the producer and drops any record not consumed yet
+     */
+    public void close() {
+        ended = true;
+        closed = true;
+        if (producer != null) producer.cancel(true);
+        queue.clear();
+    }
+
+    /**
+     * Hands a record over to the consumer, blocking while the queue is full.
+     * Records are silently dropped once the stream is closed.
+     */
+    private void offer(MethodRecord record) {
+        try {
+            while (!closed)
+                if (queue.offer(record, 100, TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException e) {
+            closed = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+}
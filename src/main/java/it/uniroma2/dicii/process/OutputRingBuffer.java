@@ -0,0 +1,46 @@
+package it.uniroma2.dicii.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last lines written by a process, so that its output is bounded in memory and logged only if needed
+ */
+public class OutputRingBuffer {
+
+    private final String[] lines;
+    // Index of the next line to write
+    private int next;
+    private long totalLines;
+
+    /**
+     * @param capacity the max number of lines kept
+     */
+    public OutputRingBuffer(int capacity) {
+        this.lines = new String[Math.max(1, capacity)];
+    }
+
+    public synchronized void add(String line) {
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        totalLines++;
+    }
+
+    /**
+     * @return the kept lines, from the oldest to the newest
+     */
+    public synchronized List<String> getLines() {
+        int size = (int) Math.min(totalLines, lines.length);
+        List<String> tail = new ArrayList<>(size);
+        int start = totalLines > lines.length ? next : 0;
+        for (int i = 0; i < size; i++) tail.add(lines[(start + i) % lines.length]);
+        return tail;
+    }
+
+    /**
+     * @return the number of lines written, including the ones no longer kept
+     */
+    public synchronized long getTotalLines() {
+        return totalLines;
+    }
+}
@@ -0,0 +1,186 @@
+package it.uniroma2.dicii.process;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An external process started by a {@link ProcessRunner}
+ */
+@Slf4j
+public class ProcessExecution {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+    private static final Path PROC = Path.of("/proc");
+    private static final AtomicInteger THREADS_COUNT = new AtomicInteger();
+
+    private final String name;
+    private final Process process;
+    private final OutputRingBuffer output;
+    private final Duration timeout;
+    private final long startNanos = System.nanoTime();
+    private final CompletableFuture<ProcessResult> result = new CompletableFuture<>();
+    private final ScheduledFuture<?> sampling;
+    private final ScheduledFuture<?> timeoutTask;
+
+    private volatile boolean timedOut;
+    private volatile boolean cancelled;
+    // Max CPU time and memory of the process tree, as sampled
+    private long cpuNanos;
+    private long peakRssBytes;
+
+    ProcessExecution(String name, Process process, OutputRingBuffer output, Duration timeout) {
+        this.name = name;
+        this.process = process;
+        this.output = output;
+        this.timeout = timeout;
+        this.sampling = ProcessRunner.MONITOR.scheduleWithFixedDelay(this::sample, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        this.timeoutTask = timeout != null ? ProcessRunner.MONITOR.schedule(this::expire, timeout.toMillis(), TimeUnit.MILLISECONDS) : null;
+
+        // Virtual threads are not available on the targeted Java version, so output is drained by a daemon thread
+        Thread drainer = new Thread(this::drain, "process-output-" + name + "-" + THREADS_COUNT.incrementAndGet());
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * @return the outcome of the process, completed when it ends
+     */
+    public CompletableFuture<ProcessResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Waits for the process to end; the process is killed if the current thread is interrupted
+     *
+     * @return the outcome of the process
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ProcessResult waitFor() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to wait for process " + name, e.getCause());
+        }
+    }
+
+    /**
+     * Kills the process and its descendants
+     */
+    public void cancel() {
+        if (result.isDone()) return;
+        cancelled = true;
+        kill();
+    }
+
+    private void expire() {
+        if (result.isDone()) return;
+        log.warn("Process {} timed out after {}s, killing it", name, timeout.toSeconds());
+        timedOut = true;
+        kill();
+    }
+
+    private void kill() {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private void drain() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                if (log.isTraceEnabled()) log.trace("[{}] {}", name, line);
+            }
+        } catch (IOException e) {
+            log.debug("Output of process {} closed: {}", name, e.getMessage());
+        }
+
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        finish(exitCode);
+    }
+
+    private void finish(int exitCode) {
+        sampling.cancel(false);
+        if (timeoutTask != null) timeoutTask.cancel(false);
+
+        ProcessResult processResult;
+        synchronized (this) {
+            processResult = new ProcessResult(name, exitCode, timedOut, cancelled, Duration.ofNanos(System.nanoTime() - startNanos),
+                    Duration.ofNanos(cpuNanos), peakRssBytes, output.getLines());
+        }
+        ProcessStatistics.getInstance().record(processResult);
+
+        if (processResult.isSuccessful()) {
+            log.info("{} completed in {}s (CPU {}s, peak RSS {} MB, {} output lines)", name, processResult.getWallTime().toSeconds(),
+                    processResult.getCpuTime().toSeconds(), processResult.getPeakRssBytes() / (1024 * 1024), output.getTotalLines());
+        } else {
+            // Only the tail of the output of failed processes is logged
+            List<String> tail = processResult.getOutputTail();
+            log.error("{} failed with exit code {}{} after {}s, last {} of {} output lines:", name, exitCode,
+                    timedOut ? " (timed out)" : cancelled ? " (cancelled)" : "", processResult.getWallTime().toSeconds(), tail.size(), output.getTotalLines());
+            for (String line : tail) log.error("[{}] {}", name, line);
+        }
+        result.complete(processResult);
+    }
+
+    /**
+     * Samples the CPU time and the memory of the process and its descendants
+     */
+    private void sample() {
+        if (!process.isAlive()) return;
+        List<ProcessHandle> handles = new ArrayList<>();
+        handles.add(process.toHandle());
+        process.descendants().forEach(handles::add);
+
+        long cpu = 0;
+        long rss = 0;
+        for (ProcessHandle handle : handles) {
+            cpu += handle.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+            rss += readRssBytes(handle.pid());
+        }
+        synchronized (this) {
+            cpuNanos = Math.max(cpuNanos, cpu);
+            peakRssBytes = Math.max(peakRssBytes, rss);
+        }
+    }
+
+    /**
+     * @return the resident memory of a process, read from /proc, or 0 if not available
+     */
+    private static long readRssBytes(long pid) {
+        Path status = PROC.resolve(pid + "/status");
+        if (!Files.isReadable(status)) return 0;
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                // e.g., "VmRSS:     123456 kB"
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The process may have ended in the meantime
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,29 @@
+package it.uniroma2.dicii.process;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The outcome of an external process and the resources it used.
+ * CPU time and peak memory are sampled while the process runs, and account for the process and its descendants.
+ */
+@Data
+public class ProcessResult {
+
+    private final String name;
+    private final int exitCode;
+    private final boolean timedOut;
+    private final boolean cancelled;
+    private final Duration wallTime;
+    // Zero if it can't be sampled on the current platform
+    private final Duration cpuTime;
+    private final long peakRssBytes;
+    // Last lines written by the process, on stdout and stderr
+    private final List<String> outputTail;
+
+    public boolean isSuccessful() {
+        return exitCode == 0 && !timedOut && !cancelled;
+    }
+}
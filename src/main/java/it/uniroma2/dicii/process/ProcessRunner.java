@@ -0,0 +1,120 @@
+package it.uniroma2.dicii.process;
+
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Runs external processes (e.g., Maven builds and Sonar scans) without logging each line they write.
+ * <p>
+ * The output of a process is drained by a dedicated thread into a ring buffer holding its last lines, which are
+ * logged only if the process fails; otherwise, a single line summarizes the run. Processes may be bounded by a
+ * timeout, after which they are killed along with their descendants, and may run with a lower CPU priority and a
+ * CPU time limit. The wall time, CPU time and peak memory of each process are accounted in {@link ProcessStatistics}.
+ * </p><p>
+ * Limits are read from the {@code process.<name>.<limit>} properties, falling back to {@code process.<limit>}:
+ * {@code timeout.minutes}, {@code niceness} and {@code cpu.minutes}. Containerized work runs outside the process tree
+ * of the Docker client, so it is neither accounted nor limited by the runner.
+ * </p>
+ */
+@Slf4j
+public class ProcessRunner {
+
+    private static final int DEFAULT_OUTPUT_LINES = 200;
+    private static final boolean UNIX = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    // Samples the resources of the running processes and enforces their timeouts
+    static final ScheduledExecutorService MONITOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "process-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final List<String> command;
+    private final File directory;
+    private final int outputLines;
+
+    // Max time the process may run, or null if unbounded
+    @Setter
+    private Duration timeout;
+    // Niceness the process runs with (0 keeps the current priority)
+    @Setter
+    private int niceness;
+    // Max CPU time of the process, or null if unbounded
+    @Setter
+    private Duration cpuLimit;
+
+    /**
+     * @param name      the name of the process, used in logs, statistics and property names (e.g., Maven)
+     * @param command   the command and its arguments
+     * @param directory the working directory
+     */
+    public ProcessRunner(String name, List<String> command, File directory) {
+        this.name = name;
+        this.command = List.copyOf(command);
+        this.directory = directory;
+
+        String minutes = getProperty("timeout.minutes");
+        this.timeout = minutes != null ? Duration.ofMinutes(Long.parseLong(minutes.trim())) : null;
+        String niceness = getProperty("niceness");
+        this.niceness = niceness != null ? Integer.parseInt(niceness.trim()) : 0;
+        String cpuMinutes = getProperty("cpu.minutes");
+        this.cpuLimit = cpuMinutes != null ? Duration.ofMinutes(Long.parseLong(cpuMinutes.trim())) : null;
+        String lines = PropertiesManager.getInstance().getProperty("process.output.lines");
+        this.outputLines = lines != null ? Integer.parseInt(lines.trim()) : DEFAULT_OUTPUT_LINES;
+    }
+
+    /**
+     * Starts the process, without waiting for it
+     *
+     * @return the running process
+     * @throws IOException if the process can't be started
+     */
+    public ProcessExecution start() throws IOException {
+        List<String> fullCommand = buildCommand();
+        log.debug("Executing command: {}", fullCommand);
+        ProcessBuilder pb = new ProcessBuilder(fullCommand);
+        if (directory != null) pb.directory(directory);
+        pb.redirectErrorStream(true);
+        return new ProcessExecution(name, pb.start(), new OutputRingBuffer(outputLines), timeout);
+    }
+
+    /**
+     * Runs the process, waiting for it to end; the process is killed if the current thread is interrupted
+     *
+     * @return the outcome of the process
+     * @throws IOException          if the process can't be started
+     * @throws InterruptedException if interrupted while waiting for the process
+     */
+    public ProcessResult run() throws IOException, InterruptedException {
+        return start().waitFor();
+    }
+
+    /**
+     * Wraps the command so that it runs with the configured priority and CPU time limit
+     */
+    private List<String> buildCommand() {
+        List<String> fullCommand = new ArrayList<>();
+        if (UNIX && niceness != 0) fullCommand.addAll(List.of("nice", "-n", String.valueOf(niceness)));
+        if (UNIX && cpuLimit != null)
+            fullCommand.addAll(List.of("sh", "-c", "ulimit -t " + Math.max(1, cpuLimit.toSeconds()) + " && exec \"$@\"", "sh"));
+        fullCommand.addAll(command);
+        return fullCommand;
+    }
+
+    private String getProperty(String key) {
+        PropertiesManager properties = PropertiesManager.getInstance();
+        String value = properties.getProperty("process." + name.toLowerCase(Locale.ROOT) + "." + key);
+        return value != null ? value : properties.getProperty("process." + key);
+    }
+}
@@ -0,0 +1,52 @@
+package it.uniroma2.dicii.process;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accounts the resources used by the external processes of the run, by process name
+ */
+@Slf4j
+public class ProcessStatistics {
+
+    private static final ProcessStatistics INSTANCE = new ProcessStatistics();
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private ProcessStatistics() {
+    }
+
+    public static ProcessStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void record(ProcessResult result) {
+        Entry entry = entries.computeIfAbsent(result.getName(), k -> new Entry());
+        entry.processes++;
+        if (!result.isSuccessful()) entry.failures++;
+        entry.wallMillis += result.getWallTime().toMillis();
+        entry.cpuMillis += result.getCpuTime().toMillis();
+        entry.peakRssBytes = Math.max(entry.peakRssBytes, result.getPeakRssBytes());
+    }
+
+    /**
+     * Logs the resources used by the processes run so far
+     */
+    public synchronized void logStatistics() {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            log.info("Processes {}: {} run ({} failed), wall time {}s, CPU time {}s, peak RSS {} MB", e.getKey(), entry.processes,
+                    entry.failures, entry.wallMillis / 1000, entry.cpuMillis / 1000, entry.peakRssBytes / (1024 * 1024));
+        }
+    }
+
+    private static class Entry {
+        private int processes;
+        private int failures;
+        private long wallMillis;
+        private long cpuMillis;
+        private long peakRssBytes;
+    }
+}
@@ -0,0 +1,64 @@
+package it.uniroma2.dicii.vcsManagement.commit;
+
+import it.uniroma2.dicii.process.ProcessResult;
+import it.uniroma2.dicii.process.ProcessRunner;
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages linked worktrees of the project repository, so that several commits are checked out at the same time
+ * without touching the main working tree.
+ * <p>
+ * Worktrees are created and checked out through the Git command line, since JGit doesn't support them; they are
+ * detached, and kept across runs so that their build outputs are reused.
+ * </p>
+ */
+@Slf4j
+public class GitWorktreeManager {
+
+    private final String projectRepoPath;
+
+    public GitWorktreeManager() {
+        this.projectRepoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
+    }
+
+    /**
+     * Checks out a commit in a worktree, creating the worktree if needed.
+     * Local changes of the worktree are discarded, while ignored files (e.g., build outputs) are kept.
+     *
+     * @param worktree the directory of the worktree
+     * @param commitId the commit ID to which the worktree is checked out
+     * @throws IOException if the commit can't be checked out
+     */
+    public void checkOutWorktreeAtCommit(Path worktree, String commitId) throws IOException {
+        try {
+            if (Files.exists(worktree.resolve(".git"))) {
+                runGit(worktree.toFile(), "checkout", "--detach", "--force", commitId);
+                runGit(worktree.toFile(), "clean", "-fd");
+            } else {
+                // Worktrees whose directory was deleted are still registered until pruned
+                runGit(new File(projectRepoPath), "worktree", "prune");
+                runGit(new File(projectRepoPath), "worktree", "add", "--detach", "--force", worktree.toString(), commitId);
+            }
+            log.info("Checked out worktree {} to commit: {}", worktree, commitId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking out worktree " + worktree, e);
+        }
+    }
+
+    private void runGit(File directory, String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(arguments));
+        ProcessResult result = new ProcessRunner("Git", command, directory).run();
+        if (!result.isSuccessful())
+            throw new IOException("git " + String.join(" ", arguments) + " exited with error code: " + result.getExitCode());
+    }
+}
@@ -0,0 +1,107 @@
+package it.uniroma2.dicii.vcsManagement.tree;
+
+import it.uniroma2.dicii.properties.PropertiesManager;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+@Slf4j
+public class GitTreeManager implements AutoCloseable {
+
+    private final Repository repository;
+
+    /**
+     * Creates a new Git Tree Manager for the project repository
+     *
+     * @throws IOException if the repository can't be accessed
+     */
+    public GitTreeManager() throws IOException {
+        String repoPath = PropertiesManager.getInstance().getProperty("project.repo.path");
+        this.repository = new FileRepositoryBuilder().setGitDir(new File(repoPath + "/.git")).build();
+    }
+
+    /**
+     * Retrieves the id of the Git object (tree or blob) found at the given path in the currently checked-out commit.
+     * Since Git object ids are content hashes, two releases share the same id for a path if and only if
+     * the content under that path is identical.
+     *
+     * @param relativePath the path relative to the repository root; an empty path denotes the root tree
+     * @return the object id, or null if the path does not exist at HEAD or the repository can't be read
+     */
+    public String getObjectIdAtHead(String relativePath) {
+        try {
+            ObjectId head = repository.resolve("HEAD");
+            return head == null ? null : getObjectIdAtCommit(head, relativePath);
+        } catch (IOException e) {
+            log.warn("Unable to resolve object id for path {}: {}", relativePath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the id of the Git object (tree or blob) found at the given path in the given commit,
+     * regardless of the commit checked out in the repository (e.g., for commits checked out in worktrees)
+     *
+     * @param commitId     the id of the commit
+     * @param relativePath the path relative to the repository root; an empty path denotes the root tree
+     * @return the object id, or null if the path does not exist in the commit or the repository can't be read
+     */
+    public String getObjectIdAtCommit(String commitId, String relativePath) {
+        try {
+            return getObjectIdAtCommit(ObjectId.fromString(commitId), relativePath);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Unable to resolve object id for path {} at commit {}: {}", relativePath, commitId, e.getMessage());
+            return null;
+        }
+    }
+
+    private String getObjectIdAtCommit(ObjectId commitId, String relativePath) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(commitId);
+            if (relativePath == null || relativePath.isEmpty()) return commit.getTree().getName();
+
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, relativePath, commit.getTree())) {
+                return treeWalk == null ? null : treeWalk.getObjectId(0).getName();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the files changed between two commits, detecting renames
+     *
+     * @param oldCommitId the id of the older commit
+     * @param newCommitId the id of the newer commit
+     * @return the changes from the older to the newer commit
+     * @throws IOException if the commits can't be read
+     */
+    public List<DiffEntry> getChanges(String oldCommitId, String newCommitId) throws IOException {
+        try (RevWalk walk = new RevWalk(repository);
+             DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            RevCommit oldCommit = walk.parseCommit(ObjectId.fromString(oldCommitId));
+            RevCommit newCommit = walk.parseCommit(ObjectId.fromString(newCommitId));
+            formatter.setRepository(repository);
+            formatter.setDetectRenames(true);
+            return formatter.scan(oldCommit.getTree(), newCommit.getTree());
+        }
+    }
+
+    /**
+     * Closes the Git repository
+     */
+    @Override
+    public void close() {
+        repository.close();
+    }
+
+}
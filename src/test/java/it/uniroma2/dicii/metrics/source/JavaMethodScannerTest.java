@@ -0,0 +1,302 @@
+package it.uniroma2.dicii.metrics.source;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the methods found by {@link JavaMethodScanner} match, by name and line range, the method declarations
+ * with a body found by JavaParser, which the scanner replaces.
+ */
+class JavaMethodScannerTest {
+
+    private static final JavaParser PARSER = new JavaParser(new ParserConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17));
+
+    @Test
+    void findsGenericMethods() {
+        assertSameSpans("""
+                package p;
+
+                import java.util.*;
+
+                public class Generics<K extends Comparable<? super K>, V> {
+                    private final Map<K, List<V>> values = new HashMap<>();
+
+                    public <T extends Comparable<? super T>> List<T> sort(Map<String, List<T>> input) {
+                        List<T> result = new ArrayList<>();
+                        int shifted = 8 >> 1 >>> 1;
+                        return result;
+                    }
+
+                    <T> Generics(T seed) {
+                    }
+
+                    public Generics() {
+                        this(null);
+                    }
+
+                    public List<V>[] buckets() {
+                        return null;
+                    }
+
+                    static <A, B extends List<? extends A>> Map<A, B> index(B values) {
+                        return Collections.emptyMap();
+                    }
+
+                    public Generics<K, V> Generics() {
+                        return this;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void findsAnnotatedMethods() {
+        assertSameSpans("""
+                package p;
+
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public class Annotated {
+
+                    /**
+                     * Javadoc with { braces }
+                     */
+                    @Override
+                    @Deprecated(since = "1.0", forRemoval = true)
+                    public String toString() {
+                        return "{";
+                    }
+
+                    @SuppressWarnings({"unchecked"}) @Deprecated
+                    public void singleLine() { }
+
+                    @Target({ElementType.METHOD, ElementType.TYPE})
+                    @interface Marker {
+                        String value() default "{";
+                        String[] names() default {"a", "b"};
+                    }
+
+                    public @interface Nested {
+                        int[] ids() default {};
+                    }
+
+                    @Marker(value = "x")
+                    Annotated(int value) {
+                    }
+
+                    public void parameters(@Deprecated final int a, @SuppressWarnings("x") String... b) {
+                        char open = '{';
+                        char quote = '"';
+                        String s = "}\\"{";
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void ignoresLambdas() {
+        assertSameSpans("""
+                package p;
+
+                import java.util.*;
+                import java.util.function.*;
+
+                public class Lambdas {
+                    private final Runnable field = () -> {
+                        System.out.println("field");
+                    };
+                    private final Function<Integer, Supplier<Integer>> curried = x -> () -> {
+                        return x + 1;
+                    };
+
+                    public void forEach(List<Boolean> values) {
+                        values.forEach(value -> {
+                            if (value) {
+                                System.out.println(value);
+                            }
+                        });
+                        Comparator<String> byLength = (a, b) -> {
+                            return Integer.compare(a.length(), b.length());
+                        };
+                    }
+
+                    public Runnable make() {
+                        return () -> { };
+                    }
+
+                    static {
+                        Runnable r = () -> { };
+                    }
+
+                    {
+                        Runnable r = () -> { };
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void skipsTextBlocksAndComments() {
+        assertSameSpans("""
+                package p;
+
+                public class Texts {
+                    private static final String JSON = \"""
+                            { "key": "value", "nested": { "void fake() {": 1 } }
+                            \\\""" still within the block
+                            \""";
+
+                    // void commented() {
+                    /* public void alsoCommented() { } */
+
+                    public String json() {
+                        String block = \"""
+                                public void inBlock() {
+                                }
+                                \""";
+                        return JSON + block;
+                    }
+
+                    public int afterBlock() {
+                        return 1;
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void findsMethodsOfNestedAndAnonymousClasses() {
+        assertSameSpans("""
+                package p;
+
+                public class Outer {
+
+                    public void outer() {
+                        Runnable anonymous = new Runnable() {
+                            @Override
+                            public void run() {
+                                class Local {
+                                    void local() {
+                                    }
+                                }
+                            }
+                        };
+                        Object generic = new java.util.ArrayList<String>(10) {
+                            @Override
+                            public boolean add(String s) {
+                                return super.add(s);
+                            }
+                        };
+                    }
+
+                    static class Nested {
+                        int nested() {
+                            return 0;
+                        }
+
+                        class Inner {
+                            void inner() {
+                            }
+                        }
+                    }
+
+                    interface Shape {
+                        double area();
+
+                        default String describe() {
+                            return "shape";
+                        }
+
+                        static Shape unit() {
+                            return () -> 1;
+                        }
+                    }
+
+                    enum Operation {
+                        PLUS("+") {
+                            @Override
+                            int apply(int a, int b) {
+                                return a + b;
+                            }
+                        },
+                        MINUS("-") {
+                            @Override
+                            int apply(int a, int b) {
+                                return a - b;
+                            }
+                        };
+
+                        private final String symbol;
+
+                        Operation(String symbol) {
+                            this.symbol = symbol;
+                        }
+
+                        abstract int apply(int a, int b);
+
+                        String symbol() {
+                            return symbol;
+                        }
+                    }
+
+                    record Point(int x, int y) {
+                        Point {
+                            if (x < 0) throw new IllegalArgumentException();
+                        }
+
+                        int sum() {
+                            return x + y;
+                        }
+                    }
+
+                    abstract static class Base {
+                        abstract void template();
+
+                        native void nativeMethod();
+
+                        final void concrete() {
+                        }
+                    }
+                }
+                """);
+    }
+
+    @Test
+    void findsMethodsWithWindowsLineEndings() {
+        assertSameSpans("package p;\r\n\r\npublic class Crlf {\r\n    void first() {\r\n    }\r\n\r\n    void second() {\r\n        /* a\r\n           b */\r\n    }\r\n}\r\n");
+    }
+
+    /**
+     * Checks that the scanner finds the same methods as JavaParser, with the same line ranges
+     */
+    private static void assertSameSpans(String source) {
+        ParseResult<CompilationUnit> result = PARSER.parse(source);
+        assertTrue(result.isSuccessful(), () -> "Invalid test source: " + result.getProblems());
+
+        List<String> expected = result.getResult().orElseThrow().findAll(MethodDeclaration.class).stream()
+                .filter(method -> method.getBody().isPresent())
+                .sorted(Comparator.comparingInt(method -> method.getBegin().orElseThrow().line))
+                .map(method -> format(method.getNameAsString(), method.getBegin().orElseThrow().line, method.getEnd().orElseThrow().line))
+                .toList();
+        List<String> actual = JavaMethodScanner.scan(source).stream()
+                .map(span -> format(span.getName(), span.getStartLine(), span.getEndLine()))
+                .toList();
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    private static String format(String name, int startLine, int endLine) {
+        return name + "@" + startLine + "-" + endLine;
+    }
+}
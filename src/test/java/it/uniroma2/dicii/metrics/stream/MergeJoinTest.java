@@ -0,0 +1,184 @@
+package it.uniroma2.dicii.metrics.stream;
+
+import it.uniroma2.dicii.metrics.model.MethodRecord;
+import it.uniroma2.dicii.metrics.model.MetricColumn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MergeJoinTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "merge-join-test");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void joinsRecordsOfTheSameMethod() throws InterruptedException {
+        MethodRecordStream ck = stream("CK", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.CYCLOMATIC_COMPLEXITY, 2));
+            sink.accept(record("B.java", 5, "b", MetricColumn.CYCLOMATIC_COMPLEXITY, 4));
+        }, null);
+        MethodRecordStream vcs = stream("VCS", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.CHURN, 7));
+            sink.accept(record("B.java", 5, "b", MetricColumn.CHURN, 9));
+        }, null);
+
+        List<MethodRecord> joined = mergeJoin(ck, vcs);
+
+        assertEquals(List.of("A.java:3:p.a", "B.java:5:p.b"), keys(joined));
+        assertEquals(2, joined.get(0).getInt(MetricColumn.CYCLOMATIC_COMPLEXITY));
+        assertEquals(7, joined.get(0).getInt(MetricColumn.CHURN));
+        assertEquals(4, joined.get(1).getInt(MetricColumn.CYCLOMATIC_COMPLEXITY));
+        assertEquals(9, joined.get(1).getInt(MetricColumn.CHURN));
+    }
+
+    @Test
+    void keepsMethodsMissingFromSomeStreams() throws InterruptedException {
+        MethodRecordStream ck = stream("CK", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.CYCLOMATIC_COMPLEXITY, 2));
+            sink.accept(record("C.java", 1, "c", MetricColumn.CYCLOMATIC_COMPLEXITY, 5));
+        }, null);
+        MethodRecordStream vcs = stream("VCS", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.CHURN, 7));
+            sink.accept(record("B.java", 5, "b", MetricColumn.CHURN, 9));
+        }, null);
+        MethodRecordStream empty = stream("Sonar", sink -> {
+        }, null);
+
+        List<MethodRecord> joined = mergeJoin(ck, vcs, empty);
+
+        assertEquals(List.of("A.java:3:p.a", "B.java:5:p.b", "C.java:1:p.c"), keys(joined));
+        assertFalse(joined.get(1).isWritten(MetricColumn.CYCLOMATIC_COMPLEXITY));
+        assertEquals(9, joined.get(1).getInt(MetricColumn.CHURN));
+        assertEquals(5, joined.get(2).getInt(MetricColumn.CYCLOMATIC_COMPLEXITY));
+        assertFalse(joined.get(2).isWritten(MetricColumn.CHURN));
+    }
+
+    @Test
+    void tellsApartMethodsSharingFileAndLine() throws InterruptedException {
+        MethodRecordStream first = stream("First", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.FAN_IN, 1));
+            sink.accept(record("A.java", 3, "b", MetricColumn.FAN_IN, 2));
+        }, null);
+        MethodRecordStream second = stream("Second", sink -> sink.accept(record("A.java", 3, "b", MetricColumn.FAN_OUT, 3)), null);
+
+        List<MethodRecord> joined = mergeJoin(first, second);
+
+        assertEquals(List.of("A.java:3:p.a", "A.java:3:p.b"), keys(joined));
+        assertFalse(joined.get(0).isWritten(MetricColumn.FAN_OUT));
+        assertEquals(2, joined.get(1).getInt(MetricColumn.FAN_IN));
+        assertEquals(3, joined.get(1).getInt(MetricColumn.FAN_OUT));
+    }
+
+    @Test
+    void collapsesDuplicateRecordsIntoOneRow() throws InterruptedException {
+        // A stream emitting the same method twice (e.g., overloads on one line) must not produce two dataset rows
+        MethodRecordStream duplicated = stream("Duplicated", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.FAN_IN, 1));
+            sink.accept(record("A.java", 3, "a", MetricColumn.FAN_OUT, 2));
+            sink.accept(record("B.java", 1, "b", MetricColumn.FAN_IN, 3));
+        }, null);
+        MethodRecordStream other = stream("Other", sink -> sink.accept(record("A.java", 3, "a", MetricColumn.CHURN, 4)), null);
+
+        List<MethodRecord> joined = mergeJoin(duplicated, other);
+
+        assertEquals(List.of("A.java:3:p.a", "B.java:1:p.b"), keys(joined));
+        assertEquals(1, joined.get(0).getInt(MetricColumn.FAN_IN));
+        assertEquals(2, joined.get(0).getInt(MetricColumn.FAN_OUT));
+        assertEquals(4, joined.get(0).getInt(MetricColumn.CHURN));
+    }
+
+    @Test
+    void dropsTheRemainingRecordsOfATimedOutStream() {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        MethodRecordStream stuck = stream("Stuck", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.FAN_IN, 1));
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+            }
+            sink.accept(record("C.java", 1, "c", MetricColumn.FAN_IN, 2));
+        }, Duration.ofMillis(200));
+        MethodRecordStream healthy = stream("Healthy", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.CHURN, 7));
+            sink.accept(record("B.java", 5, "b", MetricColumn.CHURN, 9));
+            sink.accept(record("C.java", 1, "c", MetricColumn.CHURN, 4));
+        }, null);
+
+        List<MethodRecord> joined = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> mergeJoin(stuck, healthy));
+
+        assertEquals(List.of("A.java:3:p.a", "B.java:5:p.b", "C.java:1:p.c"), keys(joined));
+        assertEquals(1, joined.get(0).getInt(MetricColumn.FAN_IN));
+        assertFalse(joined.get(2).isWritten(MetricColumn.FAN_IN));
+        assertEquals(4, joined.get(2).getInt(MetricColumn.CHURN));
+        // The stuck producer is stopped instead of being left running
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> interrupted.await());
+    }
+
+    @Test
+    void keepsTheRecordsEmittedBeforeAFailure() throws InterruptedException {
+        MethodRecordStream failing = stream("Failing", sink -> {
+            sink.accept(record("A.java", 3, "a", MetricColumn.FAN_IN, 1));
+            throw new IllegalStateException("Broken extractor");
+        }, null);
+        MethodRecordStream healthy = stream("Healthy", sink -> sink.accept(record("B.java", 5, "b", MetricColumn.CHURN, 9)), null);
+
+        List<MethodRecord> joined = mergeJoin(failing, healthy);
+
+        assertEquals(List.of("A.java:3:p.a", "B.java:5:p.b"), keys(joined));
+    }
+
+    @Test
+    void emitsNothingWithoutStreams() throws InterruptedException {
+        assertTrue(mergeJoin().isEmpty());
+    }
+
+    private MethodRecordStream stream(String name, Consumer<Consumer<MethodRecord>> producer, Duration timeout) {
+        return MethodRecordStream.start(name, producer, executor, timeout);
+    }
+
+    private static List<MethodRecord> mergeJoin(MethodRecordStream... streams) throws InterruptedException {
+        List<MethodRecord> joined = new ArrayList<>();
+        int emitted = MergeJoin.mergeJoin(List.of(streams), joined::add);
+        assertEquals(joined.size(), emitted);
+        return joined;
+    }
+
+    private static MethodRecord record(String relativePath, int startLine, String name, MetricColumn column, int value) {
+        MethodRecord methodRecord = new MethodRecord(relativePath, startLine, "p.", name);
+        methodRecord.setInt(column, value);
+        return methodRecord;
+    }
+
+    private static List<String> keys(List<MethodRecord> records) {
+        return records.stream().map(r -> r.getRelativePath() + ":" + r.getStartLine() + ":" + r.getQualifiedName()).toList();
+    }
+}